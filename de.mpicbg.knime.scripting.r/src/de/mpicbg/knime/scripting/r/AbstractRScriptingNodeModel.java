@@ -6,10 +6,17 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.apache.commons.lang3.ArrayUtils;
 import org.knime.core.data.BooleanValue;
@@ -42,6 +49,7 @@ import org.rosuda.REngine.REXPGenericVector;
 import org.rosuda.REngine.REXPInteger;
 import org.rosuda.REngine.REXPLogical;
 import org.rosuda.REngine.REXPMismatchException;
+import org.rosuda.REngine.REXPNull;
 import org.rosuda.REngine.REXPString;
 import org.rosuda.REngine.RList;
 import org.rosuda.REngine.Rserve.RConnection;
@@ -56,10 +64,17 @@ import de.mpicbg.knime.scripting.core.AbstractScriptingNodeModel;
 import de.mpicbg.knime.scripting.core.ScriptingModelConfig;
 import de.mpicbg.knime.scripting.core.TemplateCache;
 import de.mpicbg.knime.scripting.core.exceptions.KnimeScriptingException;
+import de.mpicbg.knime.scripting.r.data.QueuedCommandSink;
+import de.mpicbg.knime.scripting.r.data.RChunkPlanner;
+import de.mpicbg.knime.scripting.r.data.RChunkPlanner.ChunkPlan;
+import de.mpicbg.knime.scripting.r.data.RCommandSink;
 import de.mpicbg.knime.scripting.r.data.RDataColumn;
 import de.mpicbg.knime.scripting.r.data.RDataFrameContainer;
+import de.mpicbg.knime.scripting.r.data.RDataFrameContainer.MissingStringMode;
+import de.mpicbg.knime.scripting.r.data.RFileTransferCodec;
 import de.mpicbg.knime.scripting.r.node.snippet.RSnippetNodeDialog;
 import de.mpicbg.knime.scripting.r.port.RPortObject2;
+import de.mpicbg.knime.scripting.r.port.RWorkspace;
 import de.mpicbg.knime.scripting.r.prefs.RPreferenceInitializer;
 
 public abstract class AbstractRScriptingNodeModel extends AbstractScriptingNodeModel {
@@ -110,14 +125,19 @@ public abstract class AbstractRScriptingNodeModel extends AbstractScriptingNodeM
 
 	/** connection to R-server */
 	protected RConnection m_con = null;
+	
+	/** generic input of the current execution (null if there is none) */
+	private RPortObject2 m_genericIn = null;
+	
+	/** maximum number of prepared R commands per table for parallel push */
+	private static final int PUSH_QUEUE_CAPACITY = 4;
 
 	/**
-	 * reset the connection member variable to null after closing
+	 * hand the connection back to the {@link RConnectionPool} and reset the member variable to null
 	 */
 	protected void closeRConnection() {
 		if(m_con != null) {
-			if(m_con.isConnected())
-				m_con.close();
+			RConnectionPool.getInstance().release(m_con);
 			m_con = null;
 		}
 	}
@@ -159,34 +179,62 @@ public abstract class AbstractRScriptingNodeModel extends AbstractScriptingNodeM
 	 */
 	protected void pushInputToR(PortObject[] inData, ExecutionContext exec) 
 			throws KnimeScriptingException, CanceledExecutionException {
+		pushInputToR(inData, exec, false);
+	}
+
+	/**
+	 * main method to push available input to R
+	 * NOTE: method does not close the connection in case of exceptions
+	 * 
+	 * @param inData
+	 * @param exec
+	 * @param loadAllObjects	load all objects of the generic input, otherwise only objects needed by the script
+	 * @throws KnimeScriptingException
+	 * @throws CanceledExecutionException
+	 */
+	protected void pushInputToR(PortObject[] inData, ExecutionContext exec, boolean loadAllObjects) 
+			throws KnimeScriptingException, CanceledExecutionException {
 
 		ScriptingModelConfig cfg = getNodeCfg();
 		int chunkInSize = -1;
 		if(cfg.useChunkSettings())
-			chunkInSize = getChunkIn(((SettingsModelIntegerBounded) this.getModelSetting(CHUNK_IN)).getIntValue(), inData);
+			chunkInSize = ((SettingsModelIntegerBounded) this.getModelSetting(CHUNK_IN)).getIntValue();
 
 		exec.setMessage("Transfer to R");
 		ExecutionMonitor transferToExec = exec.createSubProgress(1.0/2);
 
 		assert m_con == null;
 
-		m_con = RUtils.createConnection();
-
 		// assign ports to R variable names
 		Map<String, PortObject> inPorts = createPortMapping(inData);
 
+		// input tables which are still available in the R session of an upstream node (session-resident mode)
+		Set<String> residentIn = new HashSet<String>();
+		m_con = claimResidentSession(inPorts, residentIn);
+		if(m_con == null)
+			m_con = RConnectionPool.getInstance().borrow();
+
 		int nInTables = getNumberOfUsedInputPorts(inData, true);
-		int gIdx = getGenericIndex(inPorts);
+		m_genericIn = (RPortObject2) inPorts.get("generic");
+		// nodes without script (e.g. open in R) need all objects
+		String script = loadAllObjects || !cfg.useScriptSettings() ? null : prepareScript();
 		
 		pushFlowVariablesToR(getAvailableFlowVariables(), transferToExec);
+		
+		if(nInTables - residentIn.size() > 1 && isParallelPush()) {
+			for(String in : residentIn)
+				pushTablePropertiesToR(((BufferedDataTable) inPorts.get(in)).getSpec(), in, transferToExec);
+			Map<String, PortObject> pushPorts = new TreeMap<String, PortObject>(inPorts);
+			pushPorts.keySet().removeAll(residentIn);
+			pushTablesInParallel(pushPorts, script, transferToExec, chunkInSize);
+			return;
+		}
 
 		// capture all exception to close the R connection in that case
 		try {
 			// generic input to push first
-			if(gIdx >= 0) {
-				File gWorkspaceFile = ((RPortObject2)inData[gIdx]).getFile();
-				RUtils.loadWorkspace(gWorkspaceFile, m_con);
-			}
+			if(m_genericIn != null)
+				m_genericIn.loadWorkspace(m_con, script);
 
 			// push all KNIME data tables
 			for(String in : inPorts.keySet()) {
@@ -194,7 +242,11 @@ public abstract class AbstractRScriptingNodeModel extends AbstractScriptingNodeM
 				PortObject pObj = inPorts.get(in);
 				if(pObj != null) {
 					if(BufferedDataTable.TYPE.acceptsPortObject(pObj)) {
-						pushTableToR((BufferedDataTable) pObj, in, transferToExec.createSubProgress(1/nInTables), chunkInSize);
+						if(residentIn.contains(in))
+							// data frame is already available
+							pushTablePropertiesToR(((BufferedDataTable) pObj).getSpec(), in, transferToExec);
+						else
+							pushTableToR((BufferedDataTable) pObj, in, transferToExec.createSubProgress(1/nInTables), chunkInSize);
 					}
 				}
 			}
@@ -203,6 +255,157 @@ public abstract class AbstractRScriptingNodeModel extends AbstractScriptingNodeM
 		}
 	}
 	
+	/**
+	 * takes over the R session of an upstream node which still holds (some of) the input tables
+	 * @param inPorts		R variable name => port object
+	 * @param residentIn	filled with the R variable names of the input tables available in the session
+	 * @return connection of the session, null if session-resident mode is disabled or no input table is resident
+	 */
+	private RConnection claimResidentSession(Map<String, PortObject> inPorts, Set<String> residentIn) {
+		if(!RSessionRegistry.isEnabled()) return null;
+		
+		Map<String, Integer> tableIds = new LinkedHashMap<String, Integer>();
+		for(String in : inPorts.keySet()) {
+			PortObject pObj = inPorts.get(in);
+			if(pObj != null && BufferedDataTable.TYPE.acceptsPortObject(pObj))
+				tableIds.put(in, ((BufferedDataTable) pObj).getBufferedTableId());
+		}
+		if(tableIds.isEmpty()) return null;
+		
+		RConnection con = RSessionRegistry.getInstance().claim(tableIds, residentIn);
+		if(con != null)
+			logger.info("Use R session of upstream node, no transfer of " + residentIn);
+		return con;
+	}
+	
+	/**
+	 * push all KNIME tables to R while converting them concurrently<br/>
+	 * unchanged tables are loaded from the table cache on the R server first (see {@link RTableCache}),
+	 * for the remaining tables one worker per table (limited by the number of processors) prepares the R data, 
+	 * the calling thread loads the generic input and sends the prepared data to R in port order
+	 * 
+	 * @param inPorts			R variable name => port object
+	 * @param script			script to load the needed objects of the generic input for, all objects if null
+	 * @param exec
+	 * @param chunkInSize
+	 * @throws KnimeScriptingException
+	 * @throws CanceledExecutionException
+	 */
+	private void pushTablesInParallel(Map<String, PortObject> inPorts, String script, ExecutionMonitor exec, int chunkInSize) 
+			throws KnimeScriptingException, CanceledExecutionException {
+		
+		NodeLogger logger = NodeLogger.getLogger(RDataFrameContainer.class);
+		int rowTileSize = R4KnimeBundleActivator.getDefault().getPreferenceStore().getInt(RPreferenceInitializer.R_TRANSFER_TILE_ROWS);
+		
+		Map<String, BufferedDataTable> tables = new LinkedHashMap<String, BufferedDataTable>();
+		for(String in : inPorts.keySet()) {
+			PortObject pObj = inPorts.get(in);
+			if(pObj != null && BufferedDataTable.TYPE.acceptsPortObject(pObj))
+				tables.put(in, (BufferedDataTable) pObj);
+		}
+		
+		// unchanged input tables are loaded from the table cache on the R server
+		RTableCache cache = RTableCache.getInstance();
+		Map<String, String> hashes = new HashMap<String, String>();
+		for(Iterator<Map.Entry<String, BufferedDataTable>> it = tables.entrySet().iterator(); it.hasNext(); ) {
+			Map.Entry<String, BufferedDataTable> e = it.next();
+			if(!cache.isCacheable(e.getValue())) continue;
+			long start = System.currentTimeMillis();
+			String hash = cache.hash(e.getValue(), exec.createSubProgress(0));
+			if(cache.load(m_con, hash, e.getKey())) {
+				pushTablePropertiesToR(e.getValue().getSpec(), e.getKey(), exec);
+				logger.info("Loaded " + e.getKey() + " from R table cache in " + (System.currentTimeMillis() - start) + " ms");
+				it.remove();
+			} else
+				hashes.put(e.getKey(), hash);
+		}
+		if(tables.isEmpty()) {
+			if(m_genericIn != null)
+				m_genericIn.loadWorkspace(m_con, script);
+			return;
+		}
+		
+		int nThreads = Math.min(tables.size(), Runtime.getRuntime().availableProcessors());
+		ExecutorService executor = Executors.newFixedThreadPool(nThreads);
+		Map<String, QueuedCommandSink> queues = new LinkedHashMap<String, QueuedCommandSink>();
+		List<Future<Long>> conversions = new ArrayList<Future<Long>>();
+		
+		long startTime = System.currentTimeMillis();
+		try {
+			// start conversion of all tables
+			for(String in : tables.keySet()) {
+				BufferedDataTable table = tables.get(in);
+				QueuedCommandSink queue = new QueuedCommandSink(PUSH_QUEUE_CAPACITY);
+				ExecutionMonitor subExec = exec.createSubProgress(1.0/tables.size());
+				queues.put(in, queue);
+				conversions.add(executor.submit(() -> {
+					long start = System.currentTimeMillis();
+					try {
+						transferRDataContainer(subExec, table, chunkInSize, rowTileSize, queue, in);
+						queue.close();
+					} catch (Exception e) {
+						queue.fail(e);
+					}
+					// conversion time without waiting for R
+					return System.currentTimeMillis() - start - queue.getBlockedMillis();
+				}));
+			}
+			
+			// generic input
+			if(m_genericIn != null)
+				m_genericIn.loadWorkspace(m_con, script);
+			
+			// send tables to R
+			long assignTime = 0;
+			RCommandSink target = RCommandSink.forConnection(m_con);
+			for(String in : queues.keySet()) {
+				long start = System.currentTimeMillis();
+				DataTableSpec inSpec = tables.get(in).getSpec();
+				pushColorModelToR(inSpec, m_con, exec, in);
+				pushShapeModelToR(inSpec, m_con, exec, in);
+				pushSizeModelToR(inSpec, m_con, exec, in);
+				queues.get(in).drainTo(target);
+				assignTime += System.currentTimeMillis() - start;
+			}
+			
+			long conversionTime = 0;
+			for(Future<Long> f : conversions)
+				conversionTime += f.get();
+			
+			// all tables are complete in R
+			for(String in : hashes.keySet())
+				cache.store(m_con, hashes.get(in), in);
+			
+			long wallTime = System.currentTimeMillis() - startTime;
+			long saved = Math.max(0, conversionTime + assignTime - wallTime);
+			logger.info("Parallel push of " + tables.size() + " tables (" + nThreads + " workers): " + wallTime + " ms; conversion " 
+					+ conversionTime + " ms, transfer " + assignTime + " ms, overlap " + saved + " ms (" 
+					+ (conversionTime + assignTime > 0 ? 100 * saved / (conversionTime + assignTime) : 0) + "% of serial time)");
+			
+		} catch (CanceledExecutionException | KnimeScriptingException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new KnimeScriptingException("Failed to transfer data to R:\n" + e.getMessage());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+	
+	/**
+	 * @return TRUE if table data should be passed through local files (R server on localhost and enabled in R-scripting preferences)
+	 */
+	private static boolean isLocalFileTransfer() {
+		return R4KnimeBundleActivator.getDefault().getPreferenceStore().getBoolean(RPreferenceInitializer.R_LOCAL_FILE_TRANSFER) 
+				&& RUtils.isLocalHost(RUtils.getHost());
+	}
+	
+	/**
+	 * @return TRUE if multiple input tables should be converted concurrently (R-scripting preferences)
+	 */
+	private static boolean isParallelPush() {
+		return R4KnimeBundleActivator.getDefault().getPreferenceStore().getBoolean(RPreferenceInitializer.R_PARALLEL_PUSH);
+	}
+	
 	/**
 	 * main method to retrieve data from R to provide the output ports
 	 * NOTE: this method closes the connection in case of Exceptions
@@ -215,7 +418,7 @@ public abstract class AbstractRScriptingNodeModel extends AbstractScriptingNodeM
 		ScriptingModelConfig cfg = getNodeCfg();
 		int chunkOutSize = -1;
 		if(cfg.useChunkSettings())
-			chunkOutSize = ((SettingsModelIntegerBounded) this.getModelSetting(CHUNK_IN)).getIntValue();
+			chunkOutSize = ((SettingsModelIntegerBounded) this.getModelSetting(CHUNK_OUT)).getIntValue();
 		
 		exec.setMessage("Pull output data from R");
 		ExecutionMonitor transferFromExec = exec.createSubProgress(1.0/2);
@@ -234,6 +437,8 @@ public abstract class AbstractRScriptingNodeModel extends AbstractScriptingNodeM
 		}
 		
 		PortObject[] outData = new PortObject[nOut];
+		// KNIME table id => R data frame to keep in the session (session-resident mode)
+		Map<Integer, String> residentOut = new LinkedHashMap<Integer, String>();
 		
 		// for each output port
 		for(int i = 0; i < getNrOutPorts(); i++) {
@@ -243,7 +448,7 @@ public abstract class AbstractRScriptingNodeModel extends AbstractScriptingNodeM
 			if(pType.equals(RPortObject2.TYPE)) {				
 				try {
 					outData[i] = createROutPort();
-				} catch (IOException | KnimeScriptingException e) {
+				} catch (KnimeScriptingException e) {
 					closeRConnection();
 					throw new KnimeScriptingException("Failed to create workspace output:\n" + e.getMessage());
 				}
@@ -260,27 +465,93 @@ public abstract class AbstractRScriptingNodeModel extends AbstractScriptingNodeM
 					throw new KnimeScriptingException("Failed to retrieve " + outVarName + " from R:\n" + e.getMessage());
 				}
 				outData[i] = table;
+				// only data frames which equal a push of the table (downstream results must not depend on the session)
+				if(RSessionRegistry.isEnabled() && isPushEquivalent(outVarName, table.getSpec()))
+					residentOut.put(table.getBufferedTableId(), outVarName);
 			}
 		}
 		
-		closeRConnection();		
+		if(!residentOut.isEmpty()) {
+			// keep the session for downstream R nodes
+			RSessionRegistry.getInstance().register(m_con, residentOut);
+			m_con = null;
+		} else
+			closeRConnection();		
 		return outData;
 	}
 
 	/**
-	 * retrieve R workspace to create RPortObject
+	 * checks if an R data frame equals the data frame a push of the given KNIME table would create
+	 * (plain data.frame, column names, column types, factor levels); e.g. Date columns or character columns
+	 * which are pushed as factor differ
+	 * @param rVar	R variable name of the data frame
+	 * @param spec	spec of the table which has been created from the data frame
+	 * @return FALSE if different or if the check failed
+	 */
+	private boolean isPushEquivalent(String rVar, DataTableSpec spec) {
+		int n = spec.getNumColumns();
+		String[] types = new String[n];
+		REXP[] levels = new REXP[n];
+		for(int i = 0; i < n; i++) {
+			DataColumnSpec cSpec = spec.getColumnSpec(i);
+			RType type = getRType(cSpec.getType(), cSpec.getDomain().hasValues());
+			if(type == null) return false;
+			levels[i] = new REXPNull();
+			switch(type) {
+			case R_LOGICAL: types[i] = "logical"; break;
+			case R_INT: types[i] = "integer"; break;
+			case R_DOUBLE: types[i] = "double"; break;
+			case R_STRING: types[i] = "character"; break;
+			case R_FACTOR:
+				types[i] = "factor";
+				List<String> lev = new ArrayList<String>();
+				for(DataCell cell : cSpec.getDomain().getValues())
+					lev.add(((StringValue) cell).getStringValue());
+				levels[i] = new REXPString(lev.toArray(new String[lev.size()]));
+				break;
+			default: return false;
+			}
+		}
+		try {
+			m_con.assign(".knime.push.names", new REXPString(spec.getColumnNames()));
+			m_con.assign(".knime.push.types", new REXPString(types));
+			m_con.assign(".knime.push.levels", new REXPGenericVector(new RList(levels)));
+			// READABLE EXAMPLE:
+			// local({ d <- rOut; type <- function(x) if(is.factor(x) && !is.ordered(x)) "factor" else if(is.object(x) || !is.null(dim(x))) "other" else typeof(x)
+			//   identical(class(d), "data.frame") && identical(names(d), .knime.push.names) && identical(unname(vapply(d, type, "")), .knime.push.types)
+			//   && all(mapply(function(x, l) is.null(l) || identical(levels(x), l), d, .knime.push.levels)) })
+			boolean equivalent = m_con.eval("local({ d <- get(\"" + rVar + "\", envir = globalenv()); "
+					+ "type <- function(x) if(is.factor(x) && !is.ordered(x)) \"factor\" else if(is.object(x) || !is.null(dim(x))) \"other\" else typeof(x); "
+					+ "identical(class(d), \"data.frame\") && identical(names(d), .knime.push.names) && "
+					+ "identical(unname(vapply(d, type, \"\")), .knime.push.types) && "
+					+ "all(unlist(Map(function(x, l) is.null(l) || identical(levels(x), l), d, .knime.push.levels))) })").asInteger() == 1;
+			m_con.voidEval("rm(.knime.push.names, .knime.push.types, .knime.push.levels)");
+			if(!equivalent)
+				logger.debug(rVar + " differs from its KNIME table when pushed again, R session is not kept for it");
+			return equivalent;
+		} catch (RserveException | REXPMismatchException e) {
+			logger.debug("Failed to compare " + rVar + " with its KNIME table: " + e.getMessage());
+			return false;
+		}
+	}
+
+	/**
+	 * retrieve R workspace to create RPortObject; 
+	 * only objects which are new or have been changed are serialized again
 	 * @return new RPortObject
-	 * @throws IOException
 	 * @throws KnimeScriptingException
 	 */
-	private RPortObject2 createROutPort() throws IOException, KnimeScriptingException {
-		// write a local workspace file which contains the input table of the node
-		File rWorkspaceFile = null;
-    	rWorkspaceFile = File.createTempFile("genericR", ".RData");  
-    	RUtils.saveWorkspaceToFile(rWorkspaceFile, m_con, RUtils.getHost());
-    	
-    	RPortObject2 outPort = new RPortObject2(m_con, rWorkspaceFile);
-    	return outPort;
+	private RPortObject2 createROutPort() throws KnimeScriptingException {
+		RWorkspace input = m_genericIn != null ? m_genericIn.getWorkspace() : null;
+		RWorkspace workspace = RWorkspace.save(m_con, input);
+		RPortObject2 port = new RPortObject2(workspace);
+		// structure summary for the port view while the objects are still in R
+		try {
+			port.createSummaries(m_con, m_genericIn);
+		} catch (KnimeScriptingException e) {
+			logger.debug(e.getMessage());
+		}
+		return port;
 	}
 
 	/**
@@ -299,20 +570,42 @@ public abstract class AbstractRScriptingNodeModel extends AbstractScriptingNodeM
 
 		assert m_con != null;
 
-		DataTableSpec inSpec = inTable.getSpec();
-
-		// push color/size/shape model to R
-		pushColorModelToR(inSpec, m_con, exec, varName);
-		pushShapeModelToR(inSpec, m_con, exec, varName);
-		pushSizeModelToR(inSpec, m_con, exec, varName);
+		pushTablePropertiesToR(inTable.getSpec(), varName, exec);
 
 		try {
+			// unchanged input tables are loaded from the table cache on the R server
+			RTableCache cache = RTableCache.getInstance();
+			String hash = null;
+			if(cache.isCacheable(inTable)) {
+				long start = System.currentTimeMillis();
+				hash = cache.hash(inTable, exec.createSubProgress(0));
+				if(cache.load(m_con, hash, varName)) {
+					logger.info("Loaded " + varName + " from R table cache in " + (System.currentTimeMillis() - start) + " ms");
+					exec.setProgress(1);
+					return;
+				}
+			}
 			transferRDataContainer(exec, inTable, chunkInSize, m_con, varName);
+			if(hash != null)
+				cache.store(m_con, hash, varName);
 		} catch(REXPMismatchException | RserveException e) {
 			throw new KnimeScriptingException("Failed to transfer data to R:\n" + e.getMessage());
 		}
 	}
 
+	/**
+	 * push color/size/shape model of a KNIME table to R
+	 * @param inSpec
+	 * @param varName
+	 * @param exec
+	 * @throws KnimeScriptingException
+	 */
+	private void pushTablePropertiesToR(DataTableSpec inSpec, String varName, ExecutionMonitor exec) throws KnimeScriptingException {
+		pushColorModelToR(inSpec, m_con, exec, varName);
+		pushShapeModelToR(inSpec, m_con, exec, varName);
+		pushSizeModelToR(inSpec, m_con, exec, varName);
+	}
+
 	/**
 	 * counts input ports (or only table input ports) which are connected
 	 * @param inData
@@ -351,20 +644,6 @@ public abstract class AbstractRScriptingNodeModel extends AbstractScriptingNodeM
 		return count;
 	}
 
-	/**
-	 * @param inPorts
-	 * @return the index for the generic input port, -1 if not available
-	 */
-	private int getGenericIndex(Map<String, PortObject> inPorts) {
-		int i = 0;
-		for(String s : inPorts.keySet()) {
-			if( s.equals("generic"))
-				return i;
-			i++;
-		}
-		return -1;
-	}
-
 	/**
 	 * execute method needs to be implemented in sub nodes to create appropriate output
 	 * this method may be called to any push input to R
@@ -387,31 +666,10 @@ public abstract class AbstractRScriptingNodeModel extends AbstractScriptingNodeM
 	 */
 	@Override
 	protected void openIn(PortObject[] inData, ExecutionContext exec) throws KnimeScriptingException, CanceledExecutionException {
-		pushInputToR(inData, exec);
+		pushInputToR(inData, exec, true);
 		openInR(inData, exec);
 	}
 
-	/**
-	 * if chunk size setting is -1 or 0, set chunk size to the number of columns available (= no data chunking)
-	 * for multiple inputs use the maximum number of columns of all input tables
-	 * @param cIn
-	 * @param inSpec
-	 * @return chunksize
-	 */
-	public static int getChunkIn(int cIn, PortObject[] inTables) {
-
-		if(cIn > 0) return cIn;
-
-		int nColumnMax = 0;
-		for(int i = 0; i < inTables.length; i++) {
-			if(inTables[i] != null && BufferedDataTable.TYPE.acceptsPortObject(inTables[i])) {
-				int n = ((BufferedDataTable)inTables[i]).getSpec().getNumColumns();
-				nColumnMax = n > nColumnMax ? n : nColumnMax;
-			}
-		}
-		return nColumnMax;
-	}
-
 	/**
 	 * The map stores the R-names as key and the BDT as value; in case of RPorts, the name is 'generic'
 	 * @param inObjects
@@ -464,7 +722,7 @@ public abstract class AbstractRScriptingNodeModel extends AbstractScriptingNodeM
 	 * pushes one KNIME table to R in chunks
 	 * @param exec				execution context
 	 * @param bufTable			KNIME table
-	 * @param colLimit			number of columns per chunk
+	 * @param colLimit			number of columns per chunk, chosen by {@link RChunkPlanner} if <= 0
 	 * @param connection		R-connection
 	 * @param parName			variable name in R
 	 * @throws RserveException
@@ -473,6 +731,24 @@ public abstract class AbstractRScriptingNodeModel extends AbstractScriptingNodeM
 	 */
 	public void transferRDataContainer(ExecutionMonitor exec, BufferedDataTable bufTable, int colLimit,
 			RConnection connection, String parName) throws RserveException, REXPMismatchException, CanceledExecutionException {
+		int rowTileSize = R4KnimeBundleActivator.getDefault().getPreferenceStore().getInt(RPreferenceInitializer.R_TRANSFER_TILE_ROWS);
+		transferRDataContainer(exec, bufTable, colLimit, rowTileSize, RCommandSink.forConnection(connection), parName);
+	}
+
+	/**
+	 * pushes one KNIME table to R in column chunks and (optional) row tiles
+	 * @param exec				execution context
+	 * @param bufTable			KNIME table
+	 * @param colLimit			number of columns per chunk, chosen by {@link RChunkPlanner} if <= 0
+	 * @param rowTileSize		number of rows per tile, chosen by {@link RChunkPlanner} if <= 0
+	 * @param connection		target of the R commands (R-connection or command queue)
+	 * @param parName			variable name in R
+	 * @throws RserveException
+	 * @throws REXPMismatchException
+	 * @throws CanceledExecutionException
+	 */
+	public void transferRDataContainer(ExecutionMonitor exec, BufferedDataTable bufTable, int colLimit, int rowTileSize,
+			RCommandSink connection, String parName) throws RserveException, REXPMismatchException, CanceledExecutionException {
 
 		NodeLogger logger = NodeLogger.getLogger(RDataFrameContainer.class);
 
@@ -480,11 +756,16 @@ public abstract class AbstractRScriptingNodeModel extends AbstractScriptingNodeM
 		int numRows = bufTable.getRowCount();
 		int numCols = tSpec.getNumColumns();
 
+		long startTime = System.currentTimeMillis();
+
 		RDataFrameContainer rDFC = new RDataFrameContainer(numRows, numCols);
+		rDFC.setMissingStringMode(getMissingStringMode());
+		if(isLocalFileTransfer())
+			rDFC.setTransferCodec(new RFileTransferCodec());
 
 		// iterate over table columns; find the columns which can be pushed
-		int chunkIdx = 0;
-		int chunkCounter = 0;
+		List<RDataColumn> rColumns = new ArrayList<RDataColumn>();
+		List<RType> rTypes = new ArrayList<RType>();
 		for(int colIdx = 0; colIdx < numCols; colIdx++) {
 			DataColumnSpec cSpec = tSpec.getColumnSpec(colIdx);
 
@@ -499,19 +780,22 @@ public abstract class AbstractRScriptingNodeModel extends AbstractScriptingNodeM
 					Set<DataCell> levels = new LinkedHashSet<DataCell>();
 					levels = cSpec.getDomain().getValues();
 					rCol.setLevels(levels);
-				}   			
-				rDFC.addColumnSpec(rCol, chunkIdx);
-
-				chunkCounter ++;
-				if(chunkCounter == colLimit || colIdx == (numCols - 1)) {
-					chunkIdx ++;
-					chunkCounter = 0;
 				}
+				rColumns.add(rCol);
+				rTypes.add(type);
 			} else {
 				logger.info("Ommit column " + cName + "; data type not supported");
 			}
 		}
 
+		ChunkPlan plan = RChunkPlanner.planPush(rTypes, numRows, colLimit, rowTileSize, getTransferBudget());
+		logger.info("Push " + parName + " (" + numRows + " rows, " + rColumns.size() + " columns): " + plan);
+		rDFC.setRowTileSize(plan.getRowsPerBlock());
+
+		// split columns into chunks
+		for(int i = 0; i < rColumns.size(); i++)
+			rDFC.addColumnSpec(rColumns.get(i), i / plan.getColumnsPerChunk());
+
 		// iterate over the chunks
 		int nChunks = rDFC.getColumnChunks().size();
 		for(int chunk : rDFC.getColumnChunks()) {
@@ -521,7 +805,9 @@ public abstract class AbstractRScriptingNodeModel extends AbstractScriptingNodeM
 			subExec.setMessage("Chunk" + (chunk+1));  	
 
 			// initialize data vectors
-			rDFC.initDataVectors(chunk);    	
+			rDFC.initDataVectors(chunk);
+			if(rDFC.isTiled())
+				rDFC.allocateChunk(chunk, connection, parName);
 
 			// fill arrays with data
 			int rowIdx = 0;
@@ -533,6 +819,10 @@ public abstract class AbstractRScriptingNodeModel extends AbstractScriptingNodeM
 				subExec.setMessage("Row " + rowIdx + "(chunk " + (chunk+1) + "/ " + nChunks + ")");
 
 				rDFC.addRowData(row, rowIdx, chunk);
+				
+				// push complete row tile
+				if(rDFC.isTileComplete(rowIdx))
+					rDFC.pushTile(chunk, connection, parName, subExec);
 
 				rowIdx ++;
 			}
@@ -552,6 +842,8 @@ public abstract class AbstractRScriptingNodeModel extends AbstractScriptingNodeM
 				exec.setMessage("Row " + rowIdx);
 
 				rDFC.addRowKey(rowIdx, row.getKey().getString());
+				if(rDFC.isTileComplete(rowIdx))
+					rDFC.pushTile(0, connection, parName, exec);
 				rowIdx ++;
 			}
 			if(!rDFC.hasRows()) exec.setProgress(1);
@@ -562,6 +854,27 @@ public abstract class AbstractRScriptingNodeModel extends AbstractScriptingNodeM
 		rDFC.createDataFrame(parName, connection);
 
 		exec.setMessage("Successful transfer to R");
+		logger.info("Pushed " + parName + " in " + (System.currentTimeMillis() - startTime) + " ms");
+	}
+
+	/**
+	 * @return memory budget for chunked transfers (in bytes) from R-scripting preferences
+	 */
+	private static long getTransferBudget() {
+		long budgetMB = R4KnimeBundleActivator.getDefault().getPreferenceStore().getInt(RPreferenceInitializer.R_TRANSFER_MEMORY_MB);
+		return Math.max(1, budgetMB) << 20;
+	}
+
+	/**
+	 * @return transfer mode for missing strings from R-scripting preferences
+	 */
+	private static MissingStringMode getMissingStringMode() {
+		String mode = R4KnimeBundleActivator.getDefault().getPreferenceStore().getString(RPreferenceInitializer.R_MISSING_STRINGS);
+		try {
+			return MissingStringMode.valueOf(mode);
+		} catch (IllegalArgumentException e) {
+			return MissingStringMode.NA_STRING;
+		}
 	}
 
 	/**
@@ -813,7 +1126,7 @@ public abstract class AbstractRScriptingNodeModel extends AbstractScriptingNodeM
 	}
 
 	/**
-	 * evaluate script
+	 * evaluate script (parsed and compiled once per session, see {@link RScriptCache})
 	 * 
 	 * @param connection
 	 * @param fixedScript
@@ -826,14 +1139,15 @@ public abstract class AbstractRScriptingNodeModel extends AbstractScriptingNodeM
 			REXPMismatchException {
 
 		REXP out;
+		String key = RScriptCache.prepare(connection, fixedScript);
 		// evaluate script
-		out = connection.eval("try({\n" + fixedScript + "\n}, silent = TRUE)");
+		out = connection.eval(RScriptCache.getTryCall(RScriptCache.getRunCall(key, "globalenv()")));
 		if( out.inherits("try-error"))
 			throw new KnimeScriptingException("Error : " + out.asString());
 	}
 
 	/**
-	 * check for syntax errors
+	 * check for syntax errors; the parsed script is kept in the cache of the session (see {@link RScriptCache})
 	 * 
 	 * @param connection
 	 * @param fixedScript
@@ -844,13 +1158,8 @@ public abstract class AbstractRScriptingNodeModel extends AbstractScriptingNodeM
 	public static void parseScript(RConnection connection, String fixedScript)
 			throws RserveException, KnimeScriptingException,
 			REXPMismatchException {
-		REXP out;
-		String rScriptVar = VAR_RKNIME_SCRIPT;
-		connection.assign(rScriptVar, fixedScript);
 		// parse script
-		out = connection.eval("try(parse(text=" + rScriptVar + "), silent = TRUE)");
-		if( out.inherits("try-error"))
-			throw new KnimeScriptingException("Syntax error: " + out.asString());
+		RScriptCache.prepare(connection, fixedScript);
 	}
 
 	/**
@@ -873,8 +1182,8 @@ public abstract class AbstractRScriptingNodeModel extends AbstractScriptingNodeM
 		// syntax errors are captured with try
 		REXP r;
 
-		// try to load evaluate package
-		r = connection.eval("try(library(\"evaluate\"))");
+		// try to load evaluate package (stays attached in pooled sessions)
+		r = connection.eval("if(\"package:evaluate\" %in% search()) TRUE else try(library(\"evaluate\"))");
 		if (r.inherits("try-error")) 
 			throw new KnimeScriptingException("Package 'evaluate' could not be loaded. \nTo run the script without, please turn off 'Evaluate script' in the node configuration dialog / preference settings?.");
 
@@ -907,6 +1216,18 @@ public abstract class AbstractRScriptingNodeModel extends AbstractScriptingNodeM
 		
 		assert m_con != null;
 
+		pushFlowVariablesToR(flowVariables, m_con, exec);
+	}
+
+	/**
+	 * input flow variables are pushed to R as knime.flow.in
+	 * @param flowVariables
+	 * @param connection
+	 * @param exec
+	 * @throws KnimeScriptingException 
+	 */
+	public static void pushFlowVariablesToR(Map<String, FlowVariable> flowVariables, RConnection connection, ExecutionMonitor exec) throws KnimeScriptingException {
+
 		RList l = new RList();
 
 		exec.setMessage("Push KNIME flow variables to R (cannot be cancelled)");
@@ -936,7 +1257,7 @@ public abstract class AbstractRScriptingNodeModel extends AbstractScriptingNodeM
 
 		// push flow variables to R
 		try {
-			m_con.assign("knime.flow.in", new REXPGenericVector(l));
+			connection.assign("knime.flow.in", new REXPGenericVector(l));
 		} catch (RserveException e) {
 			throw new KnimeScriptingException("Failed to push KNIME flow variables to R: " + e);
 		}
@@ -959,7 +1280,7 @@ public abstract class AbstractRScriptingNodeModel extends AbstractScriptingNodeM
 		File workspaceFile;
 		try {
 			workspaceFile = File.createTempFile("openInR_", ".RData");			
-			RUtils.saveWorkspaceToFile(workspaceFile, m_con, RUtils.getHost());
+			RUtils.saveWorkspaceToFile(workspaceFile, m_con, RUtils.getHost(), exec);
 			logger.info("Spawning R-instance ...");
 			RUtils.openWSFileInR(workspaceFile, rawScript); 
 		} catch (IOException | KnimeScriptingException e) {
@@ -976,7 +1297,7 @@ public abstract class AbstractRScriptingNodeModel extends AbstractScriptingNodeM
 	 * @param rOutName			look for such variable in R
 	 * @param exec				subprogress-monitor
 	 * @param execM				necessary to create new KNIME table
-	 * @param chunkOutSize		how many rows at once?
+	 * @param chunkOutSize		how many rows at once? chosen by {@link RChunkPlanner} if <= 0
 	 * @return					KNIME table with content from R data frame
 	 * @throws RserveException
 	 * @throws REXPMismatchException
@@ -986,20 +1307,41 @@ public abstract class AbstractRScriptingNodeModel extends AbstractScriptingNodeM
 			throws RserveException, REXPMismatchException, CanceledExecutionException {
 		
 		assert m_con != null;
+		
+		return pullTableFromR(m_con, rOutName, exec, execM, chunkOutSize);
+	}
+
+	/**
+	 * this methods pulls the content from an R data frame of the given connection and puts it into a KNIME table
+	 * 
+	 * @param connection		R-connection
+	 * @param rOutName			look for such variable in R
+	 * @param exec				subprogress-monitor
+	 * @param execM				necessary to create new KNIME table
+	 * @param chunkOutSize		how many rows at once? chosen by {@link RChunkPlanner} if <= 0
+	 * @return					KNIME table with content from R data frame
+	 * @throws RserveException
+	 * @throws REXPMismatchException
+	 * @throws CanceledExecutionException
+	 */
+	public BufferedDataTable pullTableFromR(RConnection connection, String rOutName, ExecutionMonitor exec, ExecutionContext execM, int chunkOutSize) 
+			throws RserveException, REXPMismatchException, CanceledExecutionException {
 
 		exec.setMessage("R snippet finished - pull data from R");
+		
+		NodeLogger logger = NodeLogger.getLogger(RDataFrameContainer.class);
+		long startTime = System.currentTimeMillis();
 
-		int numRows = ((REXPInteger)m_con.eval("nrow(" + rOutName + ")")).asInteger();
-		int numCols = ((REXPInteger)m_con.eval("ncol(" + rOutName + ")")).asInteger();
-		// correct chunksize if it is -1 or 0 (no chunking)
-		chunkOutSize = chunkOutSize <= 0 ? numRows : chunkOutSize;
+		int numRows = ((REXPInteger)connection.eval("nrow(" + rOutName + ")")).asInteger();
+		int numCols = ((REXPInteger)connection.eval("ncol(" + rOutName + ")")).asInteger();
+		List<RType> rTypes = new ArrayList<RType>();
 
 		RDataFrameContainer rDFC = new RDataFrameContainer(numRows, numCols);
 
 		//get row names
 		String[] rowNames = new String[]{};
 		exec.setMessage("retrieve row names from R (cannot be cancelled)");
-		if(numRows > 0) rowNames = m_con.eval("rownames(" + rOutName + ")").asStrings();
+		if(numRows > 0) rowNames = connection.eval("rownames(" + rOutName + ")").asStrings();
 		rDFC.addRowNames(rowNames);
 
 		exec.setMessage("retrieve column specs from R (cannot be cancelled)");
@@ -1008,27 +1350,28 @@ public abstract class AbstractRScriptingNodeModel extends AbstractScriptingNodeM
 		// get column specs
 		if(numCols > 0) {
 			//names(rOut)	column names
-			String[] cNames = getDataFrameColumnNames(numCols, m_con, rOutName);
+			String[] cNames = getDataFrameColumnNames(numCols, connection, rOutName);
 			//sapply(rOut, typeof)		storage mode
-			String[] typeOf = getDataFrameColumnTypes(numCols, m_con, rOutName);	
+			String[] typeOf = getDataFrameColumnTypes(numCols, connection, rOutName);	
 			// sapply(rOut, is.factor)		is factor?
-			boolean[] isFactor = ((REXPLogical)m_con.eval("sapply(" + rOutName + ", is.factor)")).isTRUE();
+			boolean[] isFactor = ((REXPLogical)connection.eval("sapply(" + rOutName + ", is.factor)")).isTRUE();
 
 			// iterate over columns to get their data types
 			for(int i = 0; i < numCols; i++) {		
 				RType t = getRType(typeOf[i], isFactor[i]);
 				RDataColumn rCol = new RDataColumn(cNames[i], t, i);
+				rTypes.add(t);
 				exec.checkCanceled();
 				// add level information
 				if(rDFC.hasRows()) {
 					if(t.equals(RType.R_FACTOR)) {
-						String[] levels = ((REXPString)m_con.eval("levels(" + rOutName + "[," + (i+1) + "])")).asStrings();
+						String[] levels = ((REXPString)connection.eval("levels(" + rOutName + "[," + (i+1) + "])")).asStrings();
 						rCol.setLevels(levels);
 					}
 					// add information of lower / upper bounds
 					if(t.equals(RType.R_DOUBLE) || t.equals(RType.R_INT) || t.equals(RType.R_LOGICAL)) {
 						// range(rOut[,1],na.rm = TRUE)*1.0		returns min/max as doubles
-						double[] bounds = ((REXPDouble) m_con.eval("range(" + rOutName + "[," + (i+1) + "], na.rm = TRUE)*1.0")).asDoubles();
+						double[] bounds = ((REXPDouble) connection.eval("range(" + rOutName + "[," + (i+1) + "], na.rm = TRUE)*1.0")).asDoubles();
 						rCol.setBounds(bounds);
 					}
 				}
@@ -1046,8 +1389,11 @@ public abstract class AbstractRScriptingNodeModel extends AbstractScriptingNodeM
 		exec.checkCanceled();
 
 		if(numRows > 0) {
-			rDFC.readDataFromR(con, m_con, exec, rOutName, chunkOutSize);
+			ChunkPlan plan = RChunkPlanner.planPull(rTypes, numRows, chunkOutSize, getTransferBudget());
+			logger.info("Pull " + rOutName + " (" + numRows + " rows, " + numCols + " columns): " + plan);
+			rDFC.readDataFromR(con, connection, exec, rOutName, plan.getRowsPerBlock());
 		}
+		logger.info("Pulled " + rOutName + " in " + (System.currentTimeMillis() - startTime) + " ms");
 
 		con.close();
 		return con.getTable();
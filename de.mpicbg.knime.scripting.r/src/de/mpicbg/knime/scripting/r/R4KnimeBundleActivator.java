@@ -15,6 +15,8 @@ import org.osgi.framework.BundleContext;
 import org.osgi.framework.FrameworkUtil;
 
 import de.mpicbg.knime.scripting.core.utils.ScriptingUtils;
+import de.mpicbg.knime.scripting.r.plots.RPlotCache;
+import de.mpicbg.knime.scripting.r.port.RObjectStore;
 import de.mpicbg.knime.scripting.r.prefs.RPreferenceInitializer;
 
 
@@ -81,6 +83,10 @@ public class R4KnimeBundleActivator extends AbstractUIPlugin {
      */
     @Override
     public void stop(final BundleContext context) throws Exception {
+        RSessionRegistry.getInstance().clear();
+        RConnectionPool.getInstance().closeIdle();
+        RObjectStore.dispose();
+        RPlotCache.dispose();
         super.stop(context);
         plugin = null;
     }
@@ -0,0 +1,394 @@
+package de.mpicbg.knime.scripting.r;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.knime.core.node.NodeLogger;
+import org.rosuda.REngine.REXPString;
+import org.rosuda.REngine.Rserve.RConnection;
+
+import de.mpicbg.knime.scripting.core.exceptions.KnimeScriptingException;
+import de.mpicbg.knime.scripting.r.prefs.RPreferenceInitializer;
+
+/**
+ * <p>
+ * pool of reusable connections to the R server
+ * </p>
+ * <pre>
+ * - borrow a connection with {@link #borrow()}, hand it back with {@link #release(RConnection)}
+ * - idle connections are checked before reuse and closed after the idle timeout
+ * - the workspace of a released connection is reset (objects removed, graphics devices and output sinks closed,
+ *   packages attached after connection setup detached, options and working directory restored as recorded
+ *   at connection setup); package namespaces stay loaded
+ * - packages from the R-scripting preferences are attached when a connection is created, they stay attached
+ *   as well as the 'evaluate' package and the script cache ({@link RScriptCache})
+ * - at most 'pool size' idle connections are kept, additional connections are closed on release
+ * - at most 'max connections' are open at the same time (borrowed, idle and session-resident, see {@link RSessionRegistry});
+ *   if the limit is reached, idle connections of other servers are closed and resident sessions are evicted,
+ *   otherwise {@link #borrow()} waits for a released connection (up to the borrow timeout)
+ * - a connection which failed (or is in an unknown state) should be handed back with {@link #invalidate(RConnection)}
+ * </pre>
+ * pool size, idle timeout, max connections and borrow timeout are taken from the R-scripting preferences,
+ * a pool size of 0 disables pooling
+ *
+ * @author Antje Janosch
+ *
+ */
+public class RConnectionPool {
+
+	/** name of the attached environment which keeps the session state recorded at connection setup */
+	private static final String R_POOL_ENV = ".knime.pool";
+
+	/** keep one single class instance */
+	private static RConnectionPool instance;
+
+	/** idle connections, most recently used first */
+	private final Deque<PooledConnection> m_idle = new ArrayDeque<PooledConnection>();
+
+	/** all open connections created by the pool (borrowed and idle) */
+	private final Map<RConnection, PooledConnection> m_connections = new HashMap<RConnection, PooledConnection>();
+
+	/** number of connections which are being created (counted against the connection limit) */
+	private int m_reserved = 0;
+
+	/**
+	 * constructor
+	 */
+	private RConnectionPool() {
+		// Prevent multiple instantiation
+	}
+
+	/**
+	 * @return the connection pool singleton
+	 */
+	public static synchronized RConnectionPool getInstance() {
+		if(instance == null)
+			instance = new RConnectionPool();
+		return instance;
+	}
+
+	/**
+	 * get a connection from the pool or create a new one if there is no idle connection,
+	 * waits for a released connection if the connection limit is reached
+	 * @return connection to the R server as configured in the preferences
+	 * @throws KnimeScriptingException if the R server is not reachable or no connection became available in time
+	 */
+	public RConnection borrow() throws KnimeScriptingException {
+		String server = getServer();
+		long timeout = getBorrowTimeout();
+		long deadline = timeout > 0 ? System.currentTimeMillis() + timeout : Long.MAX_VALUE;
+
+		PooledConnection pooled;
+		while(true) {
+			while((pooled = pollIdle(server)) != null) {
+				if(isHealthy(pooled.m_con)) {
+					pooled.m_borrowed = true;
+					return pooled.m_con;
+				}
+				discard(pooled);
+			}
+			if(reserve()) break;
+			// make room: idle connections (of another server), then resident sessions
+			if(discardOldestIdle() || RSessionRegistry.getInstance().evictOldest()) continue;
+			awaitRelease(deadline);
+		}
+
+		RConnection con;
+		try {
+			con = RUtils.createConnection();
+		} catch (KnimeScriptingException | RuntimeException e) {
+			synchronized (this) {
+				m_reserved--;
+				notifyAll();
+			}
+			throw e;
+		}
+		pooled = new PooledConnection(con, server);
+		preloadPackages(con);
+		try {
+			// READABLE EXAMPLE:
+			// local({ e <- attach(NULL, name = ".knime.pool"); e$options <- options(); e$wd <- getwd() })
+			con.voidEval("local({ e <- attach(NULL, name = \"" + R_POOL_ENV + "\"); e$options <- options(); e$wd <- getwd() })");
+			pooled.m_baseline = con.eval("search()").asStrings();
+		} catch (Exception e) {
+			// unknown baseline - connection will not be reused
+			pooled.m_baseline = null;
+		}
+		pooled.m_borrowed = true;
+		synchronized (this) {
+			// the reserved slot is taken by the new connection
+			m_reserved--;
+			m_connections.put(con, pooled);
+		}
+		return con;
+	}
+
+	/**
+	 * hand back a connection; it is reset and kept for reuse if possible, otherwise closed
+	 * @param con	might be null
+	 */
+	public void release(RConnection con) {
+		if(con == null) return;
+
+		PooledConnection pooled;
+		synchronized (this) {
+			pooled = m_connections.get(con);
+		}
+		if(pooled == null || !pooled.m_borrowed) {
+			// not created by the pool or already released
+			if(pooled == null) closeQuietly(con);
+			return;
+		}
+
+		if(getPoolSize() <= 0 || pooled.m_baseline == null || !pooled.m_server.equals(getServer()) || !resetWorkspace(pooled)) {
+			discard(pooled);
+			return;
+		}
+
+		synchronized (this) {
+			pooled.m_borrowed = false;
+			pooled.m_lastUsed = System.currentTimeMillis();
+			m_idle.addFirst(pooled);
+			// keep the most recently used connections only
+			while(m_idle.size() > getPoolSize())
+				discard(m_idle.removeLast());
+			notifyAll();
+		}
+		evictIdle();
+	}
+
+	/**
+	 * close a connection which should not be reused (e.g. after a failure)
+	 * @param con	might be null
+	 */
+	public void invalidate(RConnection con) {
+		if(con == null) return;
+		PooledConnection pooled;
+		synchronized (this) {
+			pooled = m_connections.get(con);
+		}
+		if(pooled != null)
+			discard(pooled);
+		else
+			closeQuietly(con);
+	}
+
+	/**
+	 * close all idle connections (borrowed connections are closed on release)
+	 */
+	public synchronized void closeIdle() {
+		while(!m_idle.isEmpty())
+			discard(m_idle.removeFirst());
+	}
+
+	/**
+	 * reserves a slot for a new connection
+	 * @return FALSE if the connection limit is reached
+	 */
+	private synchronized boolean reserve() {
+		int max = getMaxConnections();
+		if(max > 0 && m_connections.size() + m_reserved >= max)
+			return false;
+		m_reserved++;
+		return true;
+	}
+
+	/**
+	 * @return FALSE if there is no idle connection to close
+	 */
+	private synchronized boolean discardOldestIdle() {
+		if(m_idle.isEmpty()) return false;
+		discard(m_idle.removeLast());
+		return true;
+	}
+
+	/**
+	 * waits until a connection is released or closed (returns immediately if this already happened)
+	 * @param deadline
+	 * @throws KnimeScriptingException if no connection became available until the deadline
+	 */
+	private synchronized void awaitRelease(long deadline) throws KnimeScriptingException {
+		int max = getMaxConnections();
+		if(max <= 0 || m_connections.size() + m_reserved < max || !m_idle.isEmpty())
+			return;
+		long wait = deadline - System.currentTimeMillis();
+		if(wait <= 0)
+			throw new KnimeScriptingException("No R connection available: all " + max + " connections are in use "
+					+ "(see 'Maximum number of open R connections' in the R-scripting preferences)");
+		try {
+			wait(wait);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new KnimeScriptingException("Interrupted while waiting for an R connection");
+		}
+	}
+
+	/**
+	 * @param server
+	 * @return next idle connection for a given server, null if none available
+	 */
+	private synchronized PooledConnection pollIdle(String server) {
+		evictIdle();
+		Iterator<PooledConnection> it = m_idle.iterator();
+		while(it.hasNext()) {
+			PooledConnection pooled = it.next();
+			if(pooled.m_server.equals(server)) {
+				it.remove();
+				return pooled;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * close idle connections which exceeded the idle timeout
+	 */
+	private synchronized void evictIdle() {
+		long limit = System.currentTimeMillis() - getIdleTimeout();
+		Iterator<PooledConnection> it = m_idle.iterator();
+		while(it.hasNext()) {
+			PooledConnection pooled = it.next();
+			if(pooled.m_lastUsed < limit) {
+				it.remove();
+				discard(pooled);
+			}
+		}
+	}
+
+	/**
+	 * @param con
+	 * @return TRUE if the connection is open and the R server responds
+	 */
+	private boolean isHealthy(RConnection con) {
+		try {
+			return con.isConnected() && con.eval("TRUE").asInteger() == 1;
+		} catch (Exception e) {
+			return false;
+		}
+	}
+
+	/**
+	 * removes all objects, closes graphics devices and output sinks, detaches everything
+	 * which has been attached after the connection was created and restores options and working directory
+	 * @param pooled
+	 * @return FALSE if the reset failed
+	 */
+	private boolean resetWorkspace(PooledConnection pooled) {
+		RConnection con = pooled.m_con;
+		if(!con.isConnected()) return false;
+		try {
+			con.assign(".knime.baseline", new REXPString(pooled.m_baseline));
+			// READABLE EXAMPLE:
+			// for(p in setdiff(search(), c(.knime.baseline, "package:evaluate", ".knime.cache"))) try(detach(p, character.only = TRUE), silent = TRUE)
+			con.voidEval("for(p in setdiff(search(), c(.knime.baseline, \"package:evaluate\", \"" + RScriptCache.R_CACHE_ENV + "\"))) "
+					+ "try(detach(p, character.only = TRUE), silent = TRUE)");
+			con.voidEval("rm(list = ls(all.names = TRUE, envir = globalenv()), envir = globalenv())");
+			con.voidEval("graphics.off()");
+			con.voidEval("while(sink.number() > 0) sink()");
+			// options which did not exist at connection setup are removed (set to NULL)
+			// READABLE EXAMPLE:
+			// local({ e <- as.environment(".knime.pool"); added <- setdiff(names(options()), names(e$options))
+			//   options(c(e$options, setNames(vector("list", length(added)), added))); setwd(e$wd) })
+			con.voidEval("local({ e <- as.environment(\"" + R_POOL_ENV + "\"); "
+					+ "added <- setdiff(names(options()), names(e$options)); "
+					+ "options(c(e$options, setNames(vector(\"list\", length(added)), added))); setwd(e$wd) })");
+			return true;
+		} catch (Exception e) {
+			NodeLogger.getLogger(RConnectionPool.class).debug("Failed to reset R connection: " + e.getMessage());
+			return false;
+		}
+	}
+
+	/**
+	 * attach the packages from the R-scripting preferences (failures are ignored)
+	 * @param con
+	 */
+	private static void preloadPackages(RConnection con) {
+		List<String> packages = new ArrayList<String>();
+		for(String p : R4KnimeBundleActivator.getDefault().getPreferenceStore().getString(RPreferenceInitializer.R_PRELOAD_PACKAGES).split(","))
+			if(!p.trim().isEmpty()) packages.add(p.trim());
+		if(packages.isEmpty()) return;
+		try {
+			// READABLE EXAMPLE:
+			// for(p in c("ggplot2", "data.table")) try(library(p, character.only = TRUE), silent = TRUE)
+			con.assign(".knime.preload", new REXPString(packages.toArray(new String[packages.size()])));
+			con.voidEval("for(p in .knime.preload) try(library(p, character.only = TRUE), silent = TRUE); rm(.knime.preload, p)");
+		} catch (Exception e) {
+			NodeLogger.getLogger(RConnectionPool.class).debug("Failed to attach R packages: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * close a connection and forget about it
+	 * @param pooled
+	 */
+	private synchronized void discard(PooledConnection pooled) {
+		m_connections.remove(pooled.m_con);
+		m_idle.remove(pooled);
+		closeQuietly(pooled.m_con);
+		notifyAll();
+	}
+
+	private static void closeQuietly(RConnection con) {
+		if(con.isConnected())
+			con.close();
+	}
+
+	/**
+	 * @return host and port from R-scripting preferences
+	 */
+	private static String getServer() {
+		return RUtils.getHost() + ":" + RUtils.getPort();
+	}
+
+	/**
+	 * @return maximum number of idle connections from R-scripting preferences
+	 */
+	private static int getPoolSize() {
+		return R4KnimeBundleActivator.getDefault().getPreferenceStore().getInt(RPreferenceInitializer.R_POOL_SIZE);
+	}
+
+	/**
+	 * @return idle timeout in milliseconds from R-scripting preferences
+	 */
+	private static long getIdleTimeout() {
+		return R4KnimeBundleActivator.getDefault().getPreferenceStore().getInt(RPreferenceInitializer.R_POOL_IDLE_TIMEOUT) * 1000L;
+	}
+
+	/**
+	 * @return maximum number of open connections from R-scripting preferences, no limit if 0
+	 */
+	private static int getMaxConnections() {
+		return R4KnimeBundleActivator.getDefault().getPreferenceStore().getInt(RPreferenceInitializer.R_POOL_MAX_CONNECTIONS);
+	}
+
+	/**
+	 * @return time to wait for a free connection in milliseconds from R-scripting preferences, no limit if 0
+	 */
+	private static long getBorrowTimeout() {
+		return R4KnimeBundleActivator.getDefault().getPreferenceStore().getInt(RPreferenceInitializer.R_POOL_BORROW_TIMEOUT) * 1000L;
+	}
+
+	/**
+	 * connection with pool information
+	 */
+	private static class PooledConnection {
+		private final RConnection m_con;
+		/** host:port of the R server */
+		private final String m_server;
+		/** search path at connection setup */
+		private String[] m_baseline;
+		private boolean m_borrowed = false;
+		private long m_lastUsed = System.currentTimeMillis();
+
+		private PooledConnection(RConnection con, String server) {
+			m_con = con;
+			m_server = server;
+		}
+	}
+}
@@ -0,0 +1,127 @@
+package de.mpicbg.knime.scripting.r;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import org.rosuda.REngine.REXP;
+import org.rosuda.REngine.REXPMismatchException;
+import org.rosuda.REngine.Rserve.RConnection;
+import org.rosuda.REngine.Rserve.RserveException;
+
+import de.mpicbg.knime.scripting.core.exceptions.KnimeScriptingException;
+
+/**
+ * <p>
+ * per session cache of parsed and byte-compiled scripts on the R server side
+ * </p>
+ * <pre>
+ * - the cache is an environment attached to the search path (survives removing all workspace objects,
+ *   kept by {@link RConnectionPool} when resetting a pooled session)
+ * - scripts are stored by the hash of the script text as list of compiled top-level expressions
+ *   (expressions which cannot be compiled are kept as parsed); compiled with optimization level 0,
+ *   as higher levels inline base functions which the script or its environment might redefine
+ * - running a cached script does not transfer or parse the script text again
+ * - at most {@link #MAX_SCRIPTS} scripts are kept per session, least recently used scripts are removed
+ * </pre>
+ *
+ * @author Antje Janosch
+ *
+ */
+public class RScriptCache {
+
+	/** name of the attached cache environment */
+	public static final String R_CACHE_ENV = ".knime.cache";
+
+	/** maximum number of cached scripts per session */
+	private static final int MAX_SCRIPTS = 50;
+
+	/**
+	 * @param script
+	 * @return R variable name of the script within the cache environment
+	 */
+	public static String getKey(String script) {
+		MessageDigest md;
+		try {
+			md = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+		StringBuilder key = new StringBuilder(".knime.script.");
+		for(byte b : md.digest(script.getBytes(StandardCharsets.UTF_8)))
+			key.append(String.format("%02x", b));
+		return key.toString();
+	}
+
+	/**
+	 * makes sure the script is parsed and compiled in the cache of the session
+	 * @param connection
+	 * @param script
+	 * @return key of the script (see {@link #getKey(String)})
+	 * @throws RserveException
+	 * @throws REXPMismatchException
+	 * @throws KnimeScriptingException if the script has syntax errors
+	 */
+	public static String prepare(RConnection connection, String script)
+			throws RserveException, REXPMismatchException, KnimeScriptingException {
+		String key = getKey(script);
+
+		// READABLE EXAMPLE:
+		// local({ e <- if(".knime.cache" %in% search()) as.environment(".knime.cache");
+		//   found <- !is.null(e) && exists(".knime.script.<hash>", envir = e, inherits = FALSE)
+		//   if(found) e$.knime.keys <- c(setdiff(e$.knime.keys, ".knime.script.<hash>"), ".knime.script.<hash>"); found })
+		REXP found = connection.eval("local({ e <- if(\"" + R_CACHE_ENV + "\" %in% search()) as.environment(\"" + R_CACHE_ENV + "\"); "
+				+ "found <- !is.null(e) && exists(\"" + key + "\", envir = e, inherits = FALSE); "
+				+ "if(found) e$.knime.keys <- c(setdiff(e$.knime.keys, \"" + key + "\"), \"" + key + "\"); found })");
+		if(found.asInteger() == 1) return key;
+
+		connection.assign(AbstractRScriptingNodeModel.VAR_RKNIME_SCRIPT, script);
+		// READABLE EXAMPLE:
+		// local({ e <- if(".knime.cache" %in% search()) as.environment(".knime.cache") else attach(NULL, name = ".knime.cache")
+		//   e$.knime.run <- function(code, envir) for(x in code) eval(x, envir)
+		//   code <- lapply(parse(text = knime.script.in), function(x) tryCatch(compiler::compile(x, env = globalenv(),
+		//     options = list(suppressAll = TRUE, optimize = 0)), error = function(err) x))
+		//   assign(".knime.script.<hash>", code, envir = e)
+		//   keys <- c(e$.knime.keys, ".knime.script.<hash>"); if(length(keys) > 50) rm(list = head(keys, -50), envir = e)
+		//   e$.knime.keys <- tail(keys, 50) })
+		REXP out = connection.eval(getTryCall("local({ "
+				+ "e <- if(\"" + R_CACHE_ENV + "\" %in% search()) as.environment(\"" + R_CACHE_ENV + "\") else attach(NULL, name = \"" + R_CACHE_ENV + "\"); "
+				+ "e$.knime.run <- function(code, envir) for(x in code) eval(x, envir); "
+				+ "code <- lapply(parse(text = " + AbstractRScriptingNodeModel.VAR_RKNIME_SCRIPT + "), function(x) "
+				+ "tryCatch(compiler::compile(x, env = globalenv(), options = list(suppressAll = TRUE, optimize = 0)), error = function(err) x)); "
+				+ "assign(\"" + key + "\", code, envir = e); "
+				+ "keys <- c(e$.knime.keys, \"" + key + "\"); "
+				+ "if(length(keys) > " + MAX_SCRIPTS + ") rm(list = head(keys, -" + MAX_SCRIPTS + "), envir = e); "
+				+ "e$.knime.keys <- tail(keys, " + MAX_SCRIPTS + "); invisible(TRUE) })"));
+		if(out.inherits("try-error"))
+			throw new KnimeScriptingException("Syntax error: " + out.asString());
+		return key;
+	}
+
+	/**
+	 * like 'try(call, silent = TRUE)', but the error is the condition message only
+	 * (without the failing call, e.g. 'Error in eval(x, envir)')
+	 * @param call	R call
+	 * @return R call which returns the result of the call or the error message with class 'try-error'
+	 */
+	public static String getTryCall(String call) {
+		return "tryCatch(" + call + ", error = function(e) structure(conditionMessage(e), class = \"try-error\"))";
+	}
+
+	/**
+	 * @param key	key of a prepared script
+	 * @return R expression of the cached code (list of compiled expressions)
+	 */
+	public static String getCodeCall(String key) {
+		return "get(\"" + key + "\", envir = as.environment(\"" + R_CACHE_ENV + "\"))";
+	}
+
+	/**
+	 * @param key		key of a prepared script
+	 * @param envir		R expression of the environment to run the script in
+	 * @return R call running the cached code
+	 */
+	public static String getRunCall(String key, String envir) {
+		return ".knime.run(" + getCodeCall(key) + ", " + envir + ")";
+	}
+}
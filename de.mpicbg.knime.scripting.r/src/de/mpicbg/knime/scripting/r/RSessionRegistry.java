@@ -0,0 +1,242 @@
+package de.mpicbg.knime.scripting.r;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.knime.core.node.NodeLogger;
+import org.rosuda.REngine.REXPString;
+import org.rosuda.REngine.Rserve.RConnection;
+import org.rosuda.REngine.Rserve.RserveException;
+
+import de.mpicbg.knime.scripting.r.prefs.RPreferenceInitializer;
+
+/**
+ * <p>
+ * registry of R sessions which are kept alive after a node has been executed (session-resident mode)
+ * </p>
+ * <pre>
+ * - the output data frames of a node stay in its R session, registered by the id of the KNIME table
+ *   which has been created from them
+ * - a downstream R node with such a table as input takes over the session and uses the data frame
+ *   instead of pushing the table again
+ * - a session can only be taken over once (the downstream node modifies it), other nodes push the table as usual
+ * - at most 'pool size' sessions are kept, sessions are handed back to the connection pool when evicted
+ *   or after the idle timeout; resident sessions count against the connection limit of the pool and are
+ *   evicted if the pool needs a connection (see {@link #evictOldest()})
+ * </pre>
+ *
+ * @author Antje Janosch
+ *
+ */
+public class RSessionRegistry {
+
+	/** prefix of the R variables holding the resident data frames */
+	public static final String R_VAR_PREFIX = ".knime.resident.";
+
+	/** keep one single class instance */
+	private static RSessionRegistry instance;
+
+	/** resident sessions, most recently registered first */
+	private final LinkedList<ResidentSession> m_sessions = new LinkedList<ResidentSession>();
+
+	private final NodeLogger logger = NodeLogger.getLogger(RSessionRegistry.class);
+
+	/**
+	 * constructor
+	 */
+	private RSessionRegistry() {
+		// Prevent multiple instantiation
+	}
+
+	/**
+	 * @return the session registry singleton
+	 */
+	public static synchronized RSessionRegistry getInstance() {
+		if(instance == null)
+			instance = new RSessionRegistry();
+		return instance;
+	}
+
+	/**
+	 * keep a session alive with the given data frames; the connection must not be used by the caller afterwards
+	 * @param con		connection borrowed from {@link RConnectionPool}
+	 * @param tables	KNIME table id => R variable name of the data frame it has been created from
+	 * @return FALSE if the session could not be registered (the connection is released)
+	 */
+	public boolean register(RConnection con, Map<Integer, String> tables) {
+		if(tables.isEmpty() || getMaxSessions() <= 0) {
+			RConnectionPool.getInstance().release(con);
+			return false;
+		}
+
+		// READABLE EXAMPLE:
+		// .knime.resident.17 <- rOut; rm(list = setdiff(ls(all.names = TRUE), ".knime.resident.17"))
+		List<String> keep = new ArrayList<String>();
+		StringBuilder cmd = new StringBuilder();
+		for(Map.Entry<Integer, String> e : tables.entrySet()) {
+			String rVar = R_VAR_PREFIX + e.getKey();
+			keep.add(rVar);
+			cmd.append(rVar + " <- " + e.getValue() + "; ");
+		}
+		try {
+			con.voidEval(cmd.toString());
+			con.assign(".knime.keep", new REXPString(keep.toArray(new String[keep.size()])));
+			con.voidEval("rm(list = setdiff(ls(globalenv(), all.names = TRUE), .knime.keep), envir = globalenv())");
+		} catch (RserveException e) {
+			logger.debug("Failed to keep R session: " + e.getMessage());
+			RConnectionPool.getInstance().invalidate(con);
+			return false;
+		}
+
+		List<ResidentSession> evicted = new ArrayList<ResidentSession>();
+		synchronized (this) {
+			m_sessions.addFirst(new ResidentSession(con, tables.keySet()));
+			while(m_sessions.size() > getMaxSessions())
+				evicted.add(m_sessions.removeLast());
+			evicted.addAll(pollExpired());
+		}
+		for(ResidentSession s : evicted)
+			RConnectionPool.getInstance().release(s.m_con);
+		logger.debug("Keep R session with " + tables.size() + " table(s) for downstream R nodes");
+		return true;
+	}
+
+	/**
+	 * take over the session holding most of the given tables;
+	 * the session is removed from the registry, the matching data frames are renamed to the given
+	 * variable names and everything else is removed from the workspace
+	 * @param tables	R variable name => KNIME table id of the input tables
+	 * @param attached	filled with the R variable names which are available in the returned session
+	 * @return connection of the session, null if none of the tables is resident
+	 */
+	public RConnection claim(Map<String, Integer> tables, Set<String> attached) {
+		List<ResidentSession> evicted;
+		ResidentSession best = null;
+		synchronized (this) {
+			evicted = pollExpired();
+			int bestCount = 0;
+			for(ResidentSession s : m_sessions) {
+				int count = 0;
+				for(Integer id : tables.values())
+					if(s.m_tableIds.contains(id)) count++;
+				if(count > bestCount) {
+					best = s;
+					bestCount = count;
+				}
+			}
+			if(best != null)
+				m_sessions.remove(best);
+		}
+		for(ResidentSession s : evicted)
+			RConnectionPool.getInstance().release(s.m_con);
+		if(best == null) return null;
+
+		// READABLE EXAMPLE:
+		// kIn <- .knime.resident.17; rm(list = setdiff(ls(all.names = TRUE), "kIn"))
+		List<String> names = new ArrayList<String>();
+		StringBuilder cmd = new StringBuilder();
+		for(Map.Entry<String, Integer> e : tables.entrySet()) {
+			if(best.m_tableIds.contains(e.getValue()) && !names.contains(e.getKey())) {
+				cmd.append(e.getKey() + " <- " + R_VAR_PREFIX + e.getValue() + "; ");
+				names.add(e.getKey());
+			}
+		}
+		try {
+			if(!best.m_con.isConnected()) throw new RserveException(best.m_con, "session closed");
+			best.m_con.voidEval(cmd.toString());
+			best.m_con.assign(".knime.keep", new REXPString(names.toArray(new String[names.size()])));
+			best.m_con.voidEval("rm(list = setdiff(ls(globalenv(), all.names = TRUE), .knime.keep), envir = globalenv())");
+		} catch (RserveException e) {
+			logger.debug("Failed to take over R session: " + e.getMessage());
+			RConnectionPool.getInstance().invalidate(best.m_con);
+			return null;
+		}
+		attached.addAll(names);
+		return best.m_con;
+	}
+
+	/**
+	 * hand back the least recently registered session to the connection pool
+	 * @return FALSE if there is no resident session
+	 */
+	public boolean evictOldest() {
+		ResidentSession oldest;
+		synchronized (this) {
+			if(m_sessions.isEmpty()) return false;
+			oldest = m_sessions.removeLast();
+		}
+		RConnectionPool.getInstance().release(oldest.m_con);
+		return true;
+	}
+
+	/**
+	 * hand back all sessions to the connection pool
+	 */
+	public void clear() {
+		List<ResidentSession> sessions;
+		synchronized (this) {
+			sessions = new ArrayList<ResidentSession>(m_sessions);
+			m_sessions.clear();
+		}
+		for(ResidentSession s : sessions)
+			RConnectionPool.getInstance().release(s.m_con);
+	}
+
+	/**
+	 * @return sessions which have not been used for longer than the idle timeout (removed from the registry)
+	 */
+	private synchronized List<ResidentSession> pollExpired() {
+		List<ResidentSession> expired = new ArrayList<ResidentSession>();
+		long limit = System.currentTimeMillis() - getIdleTimeout();
+		Iterator<ResidentSession> it = m_sessions.iterator();
+		while(it.hasNext()) {
+			ResidentSession s = it.next();
+			if(s.m_lastUsed < limit) {
+				it.remove();
+				expired.add(s);
+			}
+		}
+		return expired;
+	}
+
+	/**
+	 * @return maximum number of resident sessions (pool size from R-scripting preferences)
+	 */
+	private static int getMaxSessions() {
+		return R4KnimeBundleActivator.getDefault().getPreferenceStore().getInt(RPreferenceInitializer.R_POOL_SIZE);
+	}
+
+	/**
+	 * @return idle timeout in milliseconds from R-scripting preferences
+	 */
+	private static long getIdleTimeout() {
+		return R4KnimeBundleActivator.getDefault().getPreferenceStore().getInt(RPreferenceInitializer.R_POOL_IDLE_TIMEOUT) * 1000L;
+	}
+
+	/**
+	 * @return TRUE if session-resident mode is enabled in the R-scripting preferences
+	 */
+	public static boolean isEnabled() {
+		return R4KnimeBundleActivator.getDefault().getPreferenceStore().getBoolean(RPreferenceInitializer.R_SESSION_RESIDENT);
+	}
+
+	/**
+	 * R session with the ids of the KNIME tables whose data frames it holds
+	 */
+	private static class ResidentSession {
+		private final RConnection m_con;
+		private final Set<Integer> m_tableIds;
+		/** time the session has been used by a node for the last time (handed over to the registry) */
+		private final long m_lastUsed = System.currentTimeMillis();
+
+		private ResidentSession(RConnection con, Set<Integer> tableIds) {
+			m_con = con;
+			m_tableIds = new HashSet<Integer>(tableIds);
+		}
+	}
+}
@@ -52,7 +52,7 @@ public class RSnippetNodeFactory extends NodeFactory<RSnippetNodeModel> {
      */
     @Override
     public NodeDialogPane createNodeDialogPane() {
-        return new RSnippetNodeDialog(AbstractRScriptingNodeModel.CFG_SCRIPT_DFT, true);
+        return new RSnippetNodeDialog(AbstractRScriptingNodeModel.CFG_SCRIPT_DFT, true, true);
     }
 }
 
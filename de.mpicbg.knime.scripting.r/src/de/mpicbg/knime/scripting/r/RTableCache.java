@@ -0,0 +1,253 @@
+package de.mpicbg.knime.scripting.r;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import org.knime.core.data.BooleanValue;
+import org.knime.core.data.DataCell;
+import org.knime.core.data.DataColumnSpec;
+import org.knime.core.data.DataRow;
+import org.knime.core.data.DataTableSpec;
+import org.knime.core.data.DoubleValue;
+import org.knime.core.data.IntValue;
+import org.knime.core.data.StringValue;
+import org.knime.core.node.BufferedDataTable;
+import org.knime.core.node.CanceledExecutionException;
+import org.knime.core.node.ExecutionMonitor;
+import org.knime.core.node.NodeLogger;
+import org.rosuda.REngine.REXPMismatchException;
+import org.rosuda.REngine.Rserve.RConnection;
+import org.rosuda.REngine.Rserve.RserveException;
+
+import de.mpicbg.knime.scripting.r.prefs.RPreferenceInitializer;
+
+/**
+ * <p>
+ * content-addressed cache of input tables on the R server side
+ * </p>
+ * <pre>
+ * - a pushed data frame is saved as uncompressed RDS file in a cache folder within the R temp folder,
+ *   named by the hash of the table spec and data
+ * - pushing a table with the same hash loads the RDS file instead of transferring the table
+ * - the cache index (hash => file size) is kept per R server, least recently used files are deleted
+ *   if the cache exceeds its size limit
+ * - the hash of a table instance is remembered, re-executing a node with unchanged input does not read the table again
+ * </pre>
+ * the size limit is taken from the R-scripting preferences, a limit of 0 disables the cache
+ *
+ * @author Antje Janosch
+ *
+ */
+public class RTableCache {
+
+	/** tables smaller than this (estimated bytes) are not cached */
+	private static final long MIN_TABLE_BYTES = 1 << 20;
+
+	/** cache folder on server side */
+	private static final String R_CACHE_DIR = "file.path(tempdir(), \"knime-table-cache\")";
+
+	/** keep one single class instance */
+	private static RTableCache instance;
+
+	/** server => (hash => file size), access ordered */
+	private final Map<String, LinkedHashMap<String, Long>> m_index = new HashMap<String, LinkedHashMap<String, Long>>();
+
+	/** hashes of already hashed table instances */
+	private final Map<BufferedDataTable, String> m_tableHashes = Collections.synchronizedMap(new WeakHashMap<BufferedDataTable, String>());
+
+	private final NodeLogger logger = NodeLogger.getLogger(RTableCache.class);
+
+	/**
+	 * constructor
+	 */
+	private RTableCache() {
+		// Prevent multiple instantiation
+	}
+
+	/**
+	 * @return the table cache singleton
+	 */
+	public static synchronized RTableCache getInstance() {
+		if(instance == null)
+			instance = new RTableCache();
+		return instance;
+	}
+
+	/**
+	 * @param table
+	 * @return TRUE if the cache is enabled and the table is large enough to be cached
+	 */
+	public boolean isCacheable(BufferedDataTable table) {
+		return getMaxBytes() > 0 && (long) table.getRowCount() * table.getSpec().getNumColumns() * 8 >= MIN_TABLE_BYTES;
+	}
+
+	/**
+	 * hash of table spec (column names, types, domain values) and data of all columns which can be pushed to R
+	 * @param table
+	 * @param exec
+	 * @return hex encoded hash
+	 * @throws CanceledExecutionException
+	 */
+	public String hash(BufferedDataTable table, ExecutionMonitor exec) throws CanceledExecutionException {
+		String hash = m_tableHashes.get(table);
+		if(hash != null) return hash;
+
+		MessageDigest md;
+		try {
+			md = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+
+		DataTableSpec spec = table.getSpec();
+		for(DataColumnSpec cSpec : spec) {
+			update(md, cSpec.getName());
+			update(md, cSpec.getType().toString());
+			if(cSpec.getDomain().hasValues())
+				for(DataCell level : cSpec.getDomain().getValues())
+					update(md, level.toString());
+			md.update((byte) 0);
+		}
+
+		ByteBuffer buffer = ByteBuffer.allocate(8);
+		int numRows = table.getRowCount();
+		int rowIdx = 0;
+		for(DataRow row : table) {
+			exec.checkCanceled();
+			exec.setProgress((double) ++rowIdx / numRows, "Hash input table");
+			update(md, row.getKey().getString());
+			for(DataCell cell : row) {
+				buffer.clear();
+				if(cell.isMissing())
+					buffer.put((byte) 1);
+				else if(cell instanceof BooleanValue)
+					buffer.put(((BooleanValue) cell).getBooleanValue() ? (byte) 2 : (byte) 3);
+				else if(cell instanceof IntValue)
+					buffer.putInt(((IntValue) cell).getIntValue());
+				else if(cell instanceof DoubleValue)
+					buffer.putLong(Double.doubleToLongBits(((DoubleValue) cell).getDoubleValue()));
+				else if(cell instanceof StringValue) {
+					update(md, ((StringValue) cell).getStringValue());
+					continue;
+				}
+				buffer.flip();
+				md.update(buffer);
+			}
+		}
+
+		StringBuilder hex = new StringBuilder();
+		for(byte b : md.digest())
+			hex.append(String.format("%02x", b));
+		hash = hex.toString();
+		m_tableHashes.put(table, hash);
+		return hash;
+	}
+
+	/**
+	 * length prefixed UTF-8 string (keeps boundaries between values)
+	 */
+	private static void update(MessageDigest md, String value) {
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		md.update(ByteBuffer.allocate(4).putInt(bytes.length).array());
+		md.update(bytes);
+	}
+
+	/**
+	 * assigns a cached data frame to an R variable
+	 * @param con
+	 * @param hash
+	 * @param varName
+	 * @return FALSE if the table is not cached
+	 */
+	public boolean load(RConnection con, String hash, String varName) {
+		String server = getServer();
+		synchronized (this) {
+			LinkedHashMap<String, Long> index = m_index.get(server);
+			if(index == null || index.get(hash) == null) return false;
+		}
+		// READABLE EXAMPLE:
+		// f <- file.path(tempdir(), "knime-table-cache", "<hash>.rds"); if(file.exists(f)) { kIn <- readRDS(f); TRUE } else FALSE
+		try {
+			String f = "file.path(" + R_CACHE_DIR + ", \"" + hash + ".rds\")";
+			if(con.eval("local({ f <- " + f + "; if(file.exists(f)) { assign(\"" + varName + "\", readRDS(f), envir = globalenv()); TRUE } else FALSE })").asInteger() == 1)
+				return true;
+		} catch (RserveException | REXPMismatchException e) {
+			logger.debug("Failed to load cached table: " + e.getMessage());
+		}
+		// file has been removed on server side
+		synchronized (this) {
+			m_index.get(server).remove(hash);
+		}
+		return false;
+	}
+
+	/**
+	 * saves a pushed data frame to the cache, evicts least recently used tables if the size limit is exceeded
+	 * @param con
+	 * @param hash
+	 * @param varName
+	 */
+	public void store(RConnection con, String hash, String varName) {
+		String server = getServer();
+		long maxBytes = getMaxBytes();
+		try {
+			// READABLE EXAMPLE:
+			// d <- file.path(tempdir(), "knime-table-cache"); dir.create(d, showWarnings = FALSE);
+			// f <- file.path(d, "<hash>.rds"); saveRDS(kIn, f, compress = FALSE); file.size(f)
+			boolean newServer;
+			synchronized (this) {
+				newServer = !m_index.containsKey(server);
+				if(newServer) m_index.put(server, new LinkedHashMap<String, Long>(16, 0.75f, true));
+			}
+			String cmd = "local({ d <- " + R_CACHE_DIR + "; "
+					// files of a previous KNIME session are unknown to the index
+					+ (newServer ? "unlink(d, recursive = TRUE); " : "")
+					+ "dir.create(d, showWarnings = FALSE); f <- file.path(d, \"" + hash + ".rds\"); "
+					+ "saveRDS(get(\"" + varName + "\", envir = globalenv()), f, compress = FALSE); file.size(f) })";
+			long size = (long) con.eval(cmd).asDouble();
+
+			List<String> evicted = new ArrayList<String>();
+			synchronized (this) {
+				LinkedHashMap<String, Long> index = m_index.get(server);
+				index.put(hash, size);
+				long total = 0;
+				for(long s : index.values()) total += s;
+				Iterator<Map.Entry<String, Long>> it = index.entrySet().iterator();
+				while(total > maxBytes && it.hasNext()) {
+					Map.Entry<String, Long> e = it.next();
+					total -= e.getValue();
+					evicted.add(e.getKey());
+					it.remove();
+				}
+			}
+			for(String h : evicted)
+				con.voidEval("unlink(file.path(" + R_CACHE_DIR + ", \"" + h + ".rds\"))");
+		} catch (RserveException | REXPMismatchException e) {
+			logger.debug("Failed to cache table: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * @return host and port from R-scripting preferences
+	 */
+	private static String getServer() {
+		return RUtils.getHost() + ":" + RUtils.getPort();
+	}
+
+	/**
+	 * @return cache size limit in bytes from R-scripting preferences
+	 */
+	private static long getMaxBytes() {
+		return (long) R4KnimeBundleActivator.getDefault().getPreferenceStore().getInt(RPreferenceInitializer.R_TABLE_CACHE_MB) << 20;
+	}
+}
@@ -3,8 +3,7 @@ package de.mpicbg.knime.scripting.r;
 import java.awt.Toolkit;
 import java.awt.datatransfer.Clipboard;
 import java.awt.datatransfer.StringSelection;
-import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
@@ -35,7 +34,9 @@ import org.knime.core.data.def.IntCell;
 import org.knime.core.data.def.StringCell;
 import org.knime.core.node.BufferedDataContainer;
 import org.knime.core.node.BufferedDataTable;
+import org.knime.core.node.CanceledExecutionException;
 import org.knime.core.node.ExecutionContext;
+import org.knime.core.node.ExecutionMonitor;
 import org.rosuda.REngine.REXP;
 import org.rosuda.REngine.REXPInteger;
 import org.rosuda.REngine.REXPLogical;
@@ -51,6 +52,7 @@ import de.mpicbg.knime.knutils.Utils;
 import de.mpicbg.knime.scripting.core.exceptions.KnimeScriptingException;
 import de.mpicbg.knime.scripting.r.data.RDataFrameContainer;
 import de.mpicbg.knime.scripting.r.node.snippet.RSnippetNodeModel;
+import de.mpicbg.knime.scripting.r.port.RCompression;
 //import de.mpicbg.knime.scripting.r.generic.RPortObject;
 import de.mpicbg.knime.scripting.r.prefs.RPreferenceInitializer;
 
@@ -64,6 +66,9 @@ public class RUtils {
 
     public static int MAX_FACTOR_LEVELS = 500;
 
+    /** block size of file transfers from / to the R server */
+    private static final int TRANSFER_BLOCK_SIZE = 1 << 20;
+
     /**
      * @deprecated
      * @param exec
@@ -276,9 +281,13 @@ public class RUtils {
             // mirror the ws-file on the server side
             connection.voidEval("tmpwfile <- 'tempRws';");
             connection.voidEval("file.create(tmpwfile);");
-            File serverWSFile = new File(connection.eval("tmpwfile").asString());
+            String serverWSFile = connection.eval("tmpwfile").asString();
 
-            writeFile(varFileMapping.get(varName), serverWSFile, connection);
+            try {
+            	writeFile(varFileMapping.get(varName), serverWSFile, connection, null);
+            } catch (CanceledExecutionException e) {
+            	throw new IOException(e.getMessage());
+            }
 
             // load the workspace on the server side
             connection.voidEval("load(tmpwfile);");
@@ -304,31 +313,98 @@ public class RUtils {
     }
 
     /**
-     * write local workspace to remote workspace
-     * @param wsFile
-     * @param serverWSFile
+     * stream a local file to the R server side (fixed size blocks via the Rserve file API)
+     * @param localFile
+     * @param serverFile	path of the server side file
      * @param connection
+     * @param exec			progress and cancellation, might be null
+     * @throws IOException
+     * @throws CanceledExecutionException
      */
-    private static void writeFile(File wsFile, File serverWSFile, RConnection connection) {
-        try {
-            assert wsFile.isFile();
+    private static void writeFile(File localFile, String serverFile, RConnection connection, ExecutionMonitor exec) 
+    		throws IOException, CanceledExecutionException {
+        assert localFile.isFile();
 
-            InputStream is = new BufferedInputStream(new FileInputStream(wsFile));
-            OutputStream os = new BufferedOutputStream(connection.createFile(serverWSFile.getPath()));
+        long total = localFile.length();
+        long done = 0;
+        byte[] buf = new byte[TRANSFER_BLOCK_SIZE];
 
-            byte[] buf = new byte[1024];
+        try (InputStream is = new FileInputStream(localFile);
+        		OutputStream os = connection.createFile(serverFile)) {
             int len;
             while ((len = is.read(buf)) > 0) {
                 os.write(buf, 0, len);
+                done += len;
+                reportTransfer(exec, done, total, "Transferring to R");
             }
+        }
+    }
+
+    /**
+     * stream a file from the R server side to a local file (fixed size blocks via the Rserve file API)
+     * @param serverFile	path of the server side file
+     * @param localFile
+     * @param connection
+     * @param exec			progress and cancellation, might be null
+     * @throws IOException
+     * @throws CanceledExecutionException
+     */
+    private static void readFile(String serverFile, File localFile, RConnection connection, ExecutionMonitor exec) 
+    		throws IOException, CanceledExecutionException {
+        try (OutputStream os = new FileOutputStream(localFile)) {
+        	readFile(serverFile, os, connection, exec);
+        }
+    }
 
-            is.close();
-            os.close();
-        } catch (IOException e) {
-            e.printStackTrace();
+    /**
+     * stream a file from the R server side to an output stream (fixed size blocks via the Rserve file API)
+     * @param serverFile	path of the server side file
+     * @param os			not closed
+     * @param connection
+     * @param exec			progress and cancellation, might be null
+     * @throws IOException
+     * @throws CanceledExecutionException
+     */
+    private static void readFile(String serverFile, OutputStream os, RConnection connection, ExecutionMonitor exec) 
+    		throws IOException, CanceledExecutionException {
+        long total = -1;
+        if(exec != null) {
+        	try {
+        		total = (long) connection.eval("file.size(\"" + serverFile + "\")").asDouble();
+        	} catch (RserveException | REXPMismatchException e) {
+        		// no progress
+        	}
+        }
+        long done = 0;
+        byte[] buf = new byte[TRANSFER_BLOCK_SIZE];
+
+        try (InputStream is = connection.openFile(serverFile)) {
+            int len;
+            while ((len = is.read(buf)) > 0) {
+                os.write(buf, 0, len);
+                done += len;
+                reportTransfer(exec, done, total, "Transferring from R");
+            }
         }
     }
 
+    /**
+     * @param exec		might be null
+     * @param done		bytes transferred so far
+     * @param total		file size in bytes, unknown if < 0
+     * @param message
+     * @throws CanceledExecutionException
+     */
+    private static void reportTransfer(ExecutionMonitor exec, long done, long total, String message) throws CanceledExecutionException {
+    	if(exec == null) return;
+    	exec.checkCanceled();
+    	String progress = message + " (" + (done >> 20) + (total >= 0 ? " of " + (total >> 20) : "") + " MB)";
+    	if(total > 0)
+    		exec.setProgress((double) done / total, progress);
+    	else
+    		exec.setMessage(progress);
+    }
+
     /**
      * {@deprecated}
      * @param rWorkspaceFile
@@ -375,10 +451,12 @@ public class RUtils {
 
             rWorkspaceFile.createNewFile();
 
-            REXP xp = connection.parseAndEval("r=readBin(tmpwfile,'raw'," + 1E7 + "); unlink(tmpwfile); r");
-            FileOutputStream oo = new FileOutputStream(rWorkspaceFile);
-            oo.write(xp.asBytes());
-            oo.close();
+            try {
+            	readFile(connection.eval("tmpwfile").asString(), rWorkspaceFile, connection, null);
+            } catch (CanceledExecutionException e) {
+            	throw new IOException(e.getMessage());
+            }
+            connection.voidEval("unlink(tmpwfile)");
         }
 
         //remove the temporary workspace file
@@ -539,6 +617,92 @@ public class RUtils {
 
 
 
+	/**
+	 * @param host
+	 * @return TRUE if R runs on the local machine (files can be exchanged directly)
+	 */
+	public static boolean isLocalHost(String host) {
+		return host.equals("localhost") || host.equals("127.0.0.1");
+	}
+
+	/**
+	 * copy a local file to a temporary file on the R server side
+	 * @param localFile
+	 * @param connection
+	 * @return path of the server side file (with '/' as folder separator)
+	 * @throws KnimeScriptingException
+	 */
+	public static String copyFileToServer(File localFile, RConnection connection) throws KnimeScriptingException {
+		return copyFileToServer(localFile, connection, null);
+	}
+
+	/**
+	 * copy a local file to a temporary file on the R server side
+	 * @param localFile
+	 * @param connection
+	 * @param exec			progress and cancellation, might be null
+	 * @return path of the server side file (with '/' as folder separator)
+	 * @throws KnimeScriptingException
+	 */
+	public static String copyFileToServer(File localFile, RConnection connection, ExecutionMonitor exec) throws KnimeScriptingException {
+		String fileName = null;
+		try {
+			fileName = ((REXPString) connection.eval("tempfile(pattern = \"R-obj-\")")).asString().replace("\\", "/");
+		} catch (RserveException | REXPMismatchException e) {
+			throw new KnimeScriptingException("Failed to create temporary file on server side: " + e.getMessage());
+		}
+		try {
+			writeFile(localFile, fileName, connection, exec);
+		} catch (IOException | CanceledExecutionException e) {
+			throw new KnimeScriptingException("Failed to transfer file to R server: " + e.getMessage());
+		}
+		return fileName;
+	}
+
+	/**
+	 * copy a file from the R server side to a local file
+	 * @param serverFile	path of the server side file (with '/' as folder separator)
+	 * @param localFile
+	 * @param connection
+	 * @throws KnimeScriptingException
+	 */
+	public static void copyFileFromServer(String serverFile, File localFile, RConnection connection) throws KnimeScriptingException {
+		copyFileFromServer(serverFile, localFile, connection, null);
+	}
+
+	/**
+	 * copy a file from the R server side to a local file
+	 * @param serverFile	path of the server side file (with '/' as folder separator)
+	 * @param localFile
+	 * @param connection
+	 * @param exec			progress and cancellation, might be null
+	 * @throws KnimeScriptingException
+	 */
+	public static void copyFileFromServer(String serverFile, File localFile, RConnection connection, ExecutionMonitor exec) throws KnimeScriptingException {
+		try {
+			readFile(serverFile, localFile, connection, exec);
+		} catch (IOException | CanceledExecutionException e) {
+			throw new KnimeScriptingException("Failed to transfer file to localhost: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * read a file from the R server side (no size limit, streamed in fixed size blocks)
+	 * @param serverFile	path of the server side file, relative paths refer to the R working directory
+	 * @param connection
+	 * @return file content
+	 * @throws KnimeScriptingException
+	 */
+	public static byte[] readFileFromServer(String serverFile, RConnection connection) throws KnimeScriptingException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try {
+			readFile(serverFile, bytes, connection, null);
+		} catch (IOException | CanceledExecutionException e) {
+			throw new KnimeScriptingException("Failed to transfer file to localhost: " + e.getMessage());
+		}
+		return bytes.toByteArray();
+	}
+
 	/**
 	 * save R workspace to file
 	 * @param rWorkspaceFile needs to have '/' as folder separator
@@ -546,15 +710,29 @@ public class RUtils {
 	 * @param host
 	 * @throws KnimeScriptingException 
 	 */
-	public static void saveWorkspaceToFile(File rWorkspaceFile, RConnection connection, String host) throws KnimeScriptingException 
+	public static void saveWorkspaceToFile(File rWorkspaceFile, RConnection connection, String host) throws KnimeScriptingException {
+		saveWorkspaceToFile(rWorkspaceFile, connection, host, null);
+	}
+
+	/**
+	 * save R workspace to file, remote workspaces are streamed in fixed size blocks
+	 * @param rWorkspaceFile needs to have '/' as folder separator
+	 * @param connection
+	 * @param host
+	 * @param exec			progress and cancellation of the transfer, might be null
+	 * @throws KnimeScriptingException 
+	 */
+	public static void saveWorkspaceToFile(File rWorkspaceFile, RConnection connection, String host, ExecutionMonitor exec) 
+			throws KnimeScriptingException 
 	{
 		assert host != null;
 		// (Do not create new R objects in workspace before saving!)
+		RCompression compression = RCompression.fromPreferences();
 
-		if(host.equals("localhost") || host.equals("127.0.0.1")) {
+		if(isLocalHost(host)) {
 			// save workspace to local file
 			try {
-				connection.voidEval("save.image(file=\"" + rWorkspaceFile.getAbsolutePath().replace("\\", "/") + "\")");
+				connection.voidEval(compression.getSaveWorkspaceCall("\"" + rWorkspaceFile.getAbsolutePath().replace("\\", "/") + "\""));
 			} catch (RserveException e) {
 				throw new KnimeScriptingException("Failed to save R workspace: " + e.getMessage());
 			}
@@ -562,36 +740,24 @@ public class RUtils {
 			// create temporary file name on server side 
 			String tempfile = null;
 			try {
-				tempfile = ((REXPString) connection.eval("tempfile(pattern = \"R-ws-\");")).asString();
-				tempfile = tempfile.replace("\\", "\\\\");
-				connection.voidEval("unlink(\"" + tempfile + "\")");
+				tempfile = ((REXPString) connection.eval("tempfile(pattern = \"R-ws-\");")).asString().replace("\\", "/");
 				// save R workspace 
-				connection.voidEval("save.image(file=\"" + tempfile + "\")");
+				connection.voidEval(compression.getSaveWorkspaceCall("\"" + tempfile + "\""));
 			} catch (RserveException | REXPMismatchException e) {
 				throw new KnimeScriptingException("Failed to save R workspace: " + e.getMessage());
 			}
 
-			// if the file already exists, delete it
-			if (rWorkspaceFile.isFile())
-				rWorkspaceFile.delete();
-			try {
-				rWorkspaceFile.createNewFile();
-			} catch (IOException e) {
-				throw new KnimeScriptingException("Failed to create workspace file: " + e.getMessage());
-			}
-
-			// get binary representation of remote workspace file, delete it and write bytes to local
-			REXP xp;
+			// stream remote workspace file to local file and delete it
 			try {
-				System.out.println("write process");
-				xp = connection.parseAndEval(
-						"r=readBin(\"" + tempfile + "\",'raw',file.size(\"" + tempfile + "\")); unlink(\"" + tempfile + "\"); r");
-				FileOutputStream oo = new FileOutputStream(rWorkspaceFile);
-				connection.voidEval("unlink(\"" + tempfile + "\")");
-				oo.write(xp.asBytes());
-				oo.close();
-			} catch (REngineException | REXPMismatchException | IOException e) {
-				throw new KnimeScriptingException("Faile to transfer workspace file to localhost: " + e.getMessage());
+				readFile(tempfile, rWorkspaceFile, connection, exec);
+			} catch (IOException | CanceledExecutionException e) {
+				throw new KnimeScriptingException("Failed to transfer workspace file to localhost: " + e.getMessage());
+			} finally {
+				try {
+					connection.voidEval("unlink(\"" + tempfile + "\")");
+				} catch (RserveException e) {
+					// temporary file remains
+				}
 			}
 		}
 	}
@@ -604,25 +770,34 @@ public class RUtils {
 	 */
 	public static void loadWorkspace(File workspaceFile, RConnection connection) 
 			throws KnimeScriptingException {
+		loadWorkspace(workspaceFile, connection, null);
+	}
+
+	/**
+	 * loads R workspace data into R session, workspaces for remote R servers are streamed in fixed size blocks
+	 * @param workspaceFile
+	 * @param connection
+	 * @param exec			progress and cancellation of the transfer, might be null
+	 * @throws KnimeScriptingException
+	 */
+	public static void loadWorkspace(File workspaceFile, RConnection connection, ExecutionMonitor exec) 
+			throws KnimeScriptingException {
 		// (Do not create new R objects in workspace before loading!)
-		
-		// create temporary workspace file on server side
-		File serverWSFile = null;
-		String fileName = null;
-		try {
-			fileName = ((REXPString) connection.eval("tempfile(pattern = \"R-ws-\")")).asString();
-			fileName = fileName.replace("\\", "\\\\");
-			connection.voidEval("file.create(\"" + fileName + "\")");
-			serverWSFile = new File(fileName);
-		} catch (RserveException | REXPMismatchException e) {
-			throw new KnimeScriptingException("Failed to create temporary workspace file on server side: " + e.getMessage());
+
+		if(isLocalHost(getHost())) {
+			try {
+				connection.voidEval("load(\"" + workspaceFile.getAbsolutePath().replace("\\", "/") + "\")");
+			} catch (RserveException e) {
+				throw new KnimeScriptingException("Failed to load the workspace: " + e.getMessage());
+			}
+			return;
 		}
 
-        // transfer workspace from local to remote
-        writeFile(workspaceFile, serverWSFile, connection);
+		// transfer workspace from local to remote
+		String fileName = copyFileToServer(workspaceFile, connection, exec);
 
-        // load the workspace on the server side within a new environment
-        try {
+		// load the workspace on the server side
+		try {
 			connection.voidEval("load(\"" + fileName + "\")");
 			connection.voidEval("unlink(\"" + fileName + "\")");
 		} catch (RserveException e) {
@@ -630,4 +805,4 @@ public class RUtils {
 		}
 	}
 	
-}
\ No newline at end of file
+}
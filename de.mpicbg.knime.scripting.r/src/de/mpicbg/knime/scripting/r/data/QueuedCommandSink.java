@@ -0,0 +1,122 @@
+package de.mpicbg.knime.scripting.r.data;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import org.rosuda.REngine.REXP;
+import org.rosuda.REngine.Rserve.RserveException;
+
+/**
+ * <p>
+ * bounded queue of R commands which allows to prepare R data in one thread 
+ * and to send it to R in another thread
+ * </p>
+ * <pre>
+ * - producer: issues commands via {@link #assign(String, REXP)} / {@link #voidEval(String)} 
+ *   and calls {@link #close()} or {@link #fail(Exception)} when done
+ * - consumer: {@link #drainTo(RCommandSink)} sends the commands in order until the producer is done
+ * </pre>
+ * the producer blocks if the queue is full, this limits the amount of prepared data held in memory
+ *
+ * @author Antje Janosch
+ *
+ */
+public class QueuedCommandSink implements RCommandSink {
+
+	/** marks the end of the command queue */
+	private static final RCommand END = new RCommand(null, null, null);
+
+	private final BlockingQueue<RCommand> m_queue;
+
+	/** failure of the producer, forwarded to the consumer */
+	private volatile Exception m_failure = null;
+
+	/** time the producer was blocked by a full queue (ns) */
+	private long m_blockedNanos = 0;
+
+	/**
+	 * constructor
+	 * @param capacity	maximum number of queued commands
+	 */
+	public QueuedCommandSink(int capacity) {
+		m_queue = new ArrayBlockingQueue<RCommand>(capacity);
+	}
+
+	@Override
+	public void assign(String name, REXP value) throws RserveException {
+		put(new RCommand(name, value, null));
+	}
+
+	@Override
+	public void voidEval(String cmd) throws RserveException {
+		put(new RCommand(null, null, cmd));
+	}
+
+	/**
+	 * producer is done
+	 * @throws InterruptedException 
+	 */
+	public void close() throws InterruptedException {
+		m_queue.put(END);
+	}
+
+	/**
+	 * producer failed, the consumer will rethrow the exception
+	 * @param e
+	 */
+	public void fail(Exception e) {
+		m_failure = e;
+		m_queue.clear();
+		m_queue.offer(END);
+	}
+
+	/**
+	 * @return time in ms the producer had to wait for the consumer
+	 */
+	public long getBlockedMillis() {
+		return m_blockedNanos / 1000000;
+	}
+
+	/**
+	 * sends all queued commands to the target until the producer is done
+	 * @param target
+	 * @throws Exception	failure of the producer or the target
+	 */
+	public void drainTo(RCommandSink target) throws Exception {
+		RCommand cmd;
+		while((cmd = m_queue.take()) != END) {
+			if(cmd.m_cmd != null)
+				target.voidEval(cmd.m_cmd);
+			else
+				target.assign(cmd.m_name, cmd.m_value);
+		}
+		if(m_failure != null)
+			throw m_failure;
+	}
+
+	private void put(RCommand cmd) throws RserveException {
+		long start = System.nanoTime();
+		try {
+			m_queue.put(cmd);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RserveException(null, "transfer to R has been interrupted");
+		}
+		m_blockedNanos += System.nanoTime() - start;
+	}
+
+	/**
+	 * either an assignment or a command
+	 */
+	private static class RCommand {
+		private final String m_name;
+		private final REXP m_value;
+		private final String m_cmd;
+
+		private RCommand(String name, REXP value, String cmd) {
+			m_name = name;
+			m_value = value;
+			m_cmd = cmd;
+		}
+	}
+}
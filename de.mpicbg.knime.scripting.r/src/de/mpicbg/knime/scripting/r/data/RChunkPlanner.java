@@ -0,0 +1,169 @@
+package de.mpicbg.knime.scripting.r.data;
+
+import java.util.List;
+
+import de.mpicbg.knime.scripting.r.AbstractRScriptingNodeModel.RType;
+
+/**
+ * <p>
+ * chooses column chunk and row block sizes for KNIME <-> R transfers
+ * </p>
+ * <pre>
+ * - estimates the byte footprint of a table from the R types of its columns
+ * - explicit chunk settings (chunk in / chunk out / rows per tile) are always used as given
+ * - otherwise chunks are sized to fit into the given memory budget
+ * </pre>
+ *
+ * @author Antje Janosch
+ *
+ */
+public class RChunkPlanner {
+
+	/** smallest number of rows per block, avoids too many round trips for very wide tables */
+	public static final int MIN_BLOCK_ROWS = 1000;
+
+	/** estimated bytes per string cell (reference, string object, R CHARSXP) */
+	private static final int STRING_CELL_BYTES = 64;
+
+	/**
+	 * @param type
+	 * @return estimated number of bytes held on the Java side for a single cell during transfer
+	 * (data vector and serialized Rserve message)
+	 */
+	public static long estimateCellBytes(RType type) {
+		switch(type) {
+		case R_LOGICAL:
+		case R_INT:
+		case R_FACTOR:
+			return 2 * 4;
+		case R_DOUBLE:
+			return 2 * 8;
+		case R_STRING:
+			return 2 * STRING_CELL_BYTES;
+		default:
+		}
+		return 2 * 8;
+	}
+
+	/**
+	 * @param types
+	 * @return estimated number of bytes for one row of a table with the given column types
+	 */
+	public static long estimateRowBytes(List<RType> types) {
+		long bytes = 0;
+		for(RType t : types)
+			bytes += estimateCellBytes(t);
+		return bytes;
+	}
+
+	/**
+	 * plans the transfer of a KNIME table to R
+	 * @param types			R types of the columns to push
+	 * @param numRows
+	 * @param chunkIn		number of columns per chunk, automatic if <= 0
+	 * @param tileRows		number of rows per tile, automatic if <= 0
+	 * @param budget		memory budget in bytes
+	 * @return chunk plan, rows per block is 0 if the chunks are not split by rows
+	 */
+	public static ChunkPlan planPush(List<RType> types, int numRows, int chunkIn, int tileRows, long budget) {
+		int numCols = types.size();
+		long rowBytes = estimateRowBytes(types);
+		long cellBytes = numCols > 0 ? Math.max(1, rowBytes / numCols) : 0;
+		boolean autoCols = chunkIn <= 0;
+		boolean autoRows = tileRows <= 0;
+
+		int cols = autoCols ? numCols : chunkIn;
+		int rows = tileRows;
+
+		if(autoRows && cellBytes > 0) {
+			long chunkRowBytes = cellBytes * Math.min(cols, numCols);
+			if(chunkRowBytes * numRows <= budget)
+				rows = 0;
+			else {
+				rows = (int) Math.min(Integer.MAX_VALUE, budget / chunkRowBytes);
+				// very wide table: reduce the number of columns per chunk as well
+				if(rows < MIN_BLOCK_ROWS && autoCols) {
+					cols = (int) Math.max(1, budget / (cellBytes * MIN_BLOCK_ROWS));
+					rows = (int) Math.min(Integer.MAX_VALUE, budget / (cellBytes * cols));
+				}
+				rows = Math.max(rows, MIN_BLOCK_ROWS);
+				if(rows >= numRows) rows = 0;
+			}
+		}
+
+		return new ChunkPlan(cols, rows, rowBytes * numRows, budget, autoCols, autoRows);
+	}
+
+	/**
+	 * plans the transfer of an R data frame to KNIME
+	 * @param types			R types of the data frame columns
+	 * @param numRows
+	 * @param chunkOut		number of rows per chunk, automatic if <= 0
+	 * @param budget		memory budget in bytes
+	 * @return chunk plan, all columns are retrieved at once
+	 */
+	public static ChunkPlan planPull(List<RType> types, int numRows, int chunkOut, long budget) {
+		long rowBytes = estimateRowBytes(types);
+		boolean autoRows = chunkOut <= 0;
+
+		int rows = chunkOut;
+		if(autoRows) {
+			if(rowBytes == 0 || rowBytes * numRows <= budget)
+				rows = numRows;
+			else
+				rows = (int) Math.max(MIN_BLOCK_ROWS, budget / rowBytes);
+		}
+		rows = Math.max(1, Math.min(rows, numRows));
+
+		return new ChunkPlan(types.size(), rows, rowBytes * numRows, budget, false, autoRows);
+	}
+
+	/**
+	 * column chunk and row block sizes of a transfer
+	 */
+	public static class ChunkPlan {
+
+		/** number of columns per chunk */
+		private final int m_columnsPerChunk;
+
+		/** number of rows per block, 0 if not split by rows */
+		private final int m_rowsPerBlock;
+
+		/** estimated size of the whole table in bytes */
+		private final long m_estimatedBytes;
+
+		private final long m_budget;
+		private final boolean m_autoColumns;
+		private final boolean m_autoRows;
+
+		public ChunkPlan(int columnsPerChunk, int rowsPerBlock, long estimatedBytes, long budget,
+				boolean autoColumns, boolean autoRows) {
+			m_columnsPerChunk = columnsPerChunk;
+			m_rowsPerBlock = rowsPerBlock;
+			m_estimatedBytes = estimatedBytes;
+			m_budget = budget;
+			m_autoColumns = autoColumns;
+			m_autoRows = autoRows;
+		}
+
+		public int getColumnsPerChunk() {
+			return m_columnsPerChunk;
+		}
+
+		public int getRowsPerBlock() {
+			return m_rowsPerBlock;
+		}
+
+		public long getEstimatedBytes() {
+			return m_estimatedBytes;
+		}
+
+		@Override
+		public String toString() {
+			return m_columnsPerChunk + " columns per chunk (" + (m_autoColumns ? "auto" : "fixed") + "), "
+					+ (m_rowsPerBlock > 0 ? m_rowsPerBlock + " rows per block" : "no row blocks")
+					+ " (" + (m_autoRows ? "auto" : "fixed") + "); estimated " + (m_estimatedBytes >> 20)
+					+ " MB, budget " + (m_budget >> 20) + " MB";
+		}
+	}
+}
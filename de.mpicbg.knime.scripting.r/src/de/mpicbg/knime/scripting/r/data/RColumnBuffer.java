@@ -0,0 +1,265 @@
+package de.mpicbg.knime.scripting.r.data;
+
+import java.io.IOException;
+import java.util.HashMap;
+
+import org.rosuda.REngine.REXP;
+import org.rosuda.REngine.REXPDouble;
+import org.rosuda.REngine.REXPFactor;
+import org.rosuda.REngine.REXPInteger;
+import org.rosuda.REngine.REXPLogical;
+import org.rosuda.REngine.REXPString;
+
+import de.mpicbg.knime.scripting.r.AbstractRScriptingNodeModel.RType;
+
+/**
+ * <p>
+ * primitive-backed data vector of a single column for KNIME >>> R transfer
+ * </p>
+ * <pre>
+ * - one implementation per vector type expected by REXP (double, int, byte, String)
+ * - the backing array is handed over to the REXP object without copying
+ * </pre>
+ * NOTE: the buffer must not be modified after {@link #toREXP(String[])} has been called
+ *
+ * @author Antje Janosch
+ *
+ */
+public abstract class RColumnBuffer {
+
+	/** number of values */
+	protected final int m_size;
+
+	/**
+	 * constructor
+	 * @param size
+	 */
+	protected RColumnBuffer(int size) {
+		this.m_size = size;
+	}
+
+	/**
+	 * @return number of values
+	 */
+	public int size() {
+		return m_size;
+	}
+
+	/**
+	 * @param levels	factor levels (only used for factor columns, integer codes are returned if null)
+	 * @return buffer content as REXP representation
+	 */
+	public abstract REXP toREXP(String[] levels);
+
+	/**
+	 * writes the values in the layout of {@link RColumnFile}
+	 * @param out
+	 * @throws IOException
+	 */
+	public abstract void write(RColumnFile.Writer out) throws IOException;
+
+	/**
+	 * creates a buffer with a given size for a given column type
+	 * @param type
+	 * @param size
+	 * @return new buffer, null if type is not supported
+	 */
+	public static RColumnBuffer create(RType type, int size) {
+		switch(type) {
+		case R_LOGICAL:
+			return new LogicalVector(size);
+		case R_INT:
+			return new IntVector(size, false);
+		case R_DOUBLE:
+			return new DoubleVector(size);
+		case R_FACTOR:
+			return new IntVector(size, true);
+		case R_STRING:
+			return new StringVector(size);
+		default:
+		}
+		return null;
+	}
+
+	/**
+	 * buffer for numeric columns
+	 */
+	public static class DoubleVector extends RColumnBuffer {
+
+		private final double[] m_data;
+
+		public DoubleVector(int size) {
+			super(size);
+			m_data = new double[size];
+		}
+
+		public void set(int rowIdx, double value) {
+			m_data[rowIdx] = value;
+		}
+
+		public double[] getData() {
+			return m_data;
+		}
+
+		@Override
+		public REXP toREXP(String[] levels) {
+			return new REXPDouble(m_data);
+		}
+
+		@Override
+		public void write(RColumnFile.Writer out) throws IOException {
+			for(double value : m_data)
+				out.putDouble(value);
+		}
+	}
+
+	/**
+	 * buffer for integer columns and factor codes (one-based)
+	 */
+	public static class IntVector extends RColumnBuffer {
+
+		private final int[] m_data;
+
+		/** TRUE if values are one-based factor codes */
+		private final boolean m_isFactor;
+
+		public IntVector(int size, boolean isFactor) {
+			super(size);
+			m_data = new int[size];
+			m_isFactor = isFactor;
+		}
+
+		public void set(int rowIdx, int value) {
+			m_data[rowIdx] = value;
+		}
+
+		public int[] getData() {
+			return m_data;
+		}
+
+		@Override
+		public REXP toREXP(String[] levels) {
+			if(m_isFactor && levels != null)
+				return new REXPFactor(m_data, levels);
+			return new REXPInteger(m_data);
+		}
+
+		@Override
+		public void write(RColumnFile.Writer out) throws IOException {
+			for(int value : m_data)
+				out.putInt(value);
+		}
+	}
+
+	/**
+	 * buffer for logical columns (TRUE = 1, FALSE = 0, NA = {@link REXPLogical#NA})
+	 */
+	public static class LogicalVector extends RColumnBuffer {
+
+		private final byte[] m_data;
+
+		public LogicalVector(int size) {
+			super(size);
+			m_data = new byte[size];
+		}
+
+		public void set(int rowIdx, byte value) {
+			m_data[rowIdx] = value;
+		}
+
+		public byte[] getData() {
+			return m_data;
+		}
+
+		@Override
+		public REXP toREXP(String[] levels) {
+			return new REXPLogical(m_data);
+		}
+
+		@Override
+		public void write(RColumnFile.Writer out) throws IOException {
+			for(byte value : m_data)
+				out.putByte(value);
+		}
+	}
+
+	/**
+	 * compact buffer for string columns<br/>
+	 * repeated values share the same String instance as long as the number of distinct values
+	 * stays below {@link #MAX_POOL_SIZE}<br/>
+	 * missing values are stored as null which is transferred as NA by Rserve
+	 */
+	public static class StringVector extends RColumnBuffer {
+
+		/** maximum number of distinct values to pool */
+		public static final int MAX_POOL_SIZE = 4096;
+
+		private final String[] m_data;
+
+		/** pool of already seen values */
+		private HashMap<String, String> m_pool = new HashMap<String, String>();
+		
+		/** TRUE if at least one value is missing */
+		private boolean m_hasMissing = false;
+
+		public StringVector(int size) {
+			super(size);
+			m_data = new String[size];
+		}
+
+		public void set(int rowIdx, String value) {
+			if(value == null)
+				m_hasMissing = true;
+			else if(m_pool != null) {
+				String pooled = m_pool.putIfAbsent(value, value);
+				if(pooled != null)
+					value = pooled;
+				else if(m_pool.size() > MAX_POOL_SIZE)
+					// too many distinct values, stop pooling
+					m_pool = null;
+			}
+			m_data[rowIdx] = value;
+		}
+
+		public String[] getData() {
+			return m_data;
+		}
+		
+		/**
+		 * @return TRUE if at least one value is missing
+		 */
+		public boolean hasMissing() {
+			return m_hasMissing;
+		}
+		
+		/**
+		 * replaces missing values by a placeholder string
+		 * @param placeholder
+		 * @return logical mask with TRUE for missing values
+		 */
+		public REXPLogical replaceMissing(String placeholder) {
+			byte[] mask = new byte[m_size];
+			for(int i = 0; i < m_size; i++) {
+				if(m_data[i] == null) {
+					m_data[i] = placeholder;
+					mask[i] = REXPLogical.TRUE;
+				} else
+					mask[i] = REXPLogical.FALSE;
+			}
+			m_hasMissing = false;
+			return new REXPLogical(mask);
+		}
+
+		@Override
+		public REXP toREXP(String[] levels) {
+			m_pool = null;
+			return new REXPString(m_data);
+		}
+
+		@Override
+		public void write(RColumnFile.Writer out) throws IOException {
+			m_pool = null;
+			out.putStrings(m_data);
+		}
+	}
+}
@@ -0,0 +1,230 @@
+package de.mpicbg.knime.scripting.r.data;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * <p>
+ * binary columnar file for KNIME >>> R transfer if the R server runs on the same machine
+ * </p>
+ * <pre>
+ * - the data vectors are written to a local file and read by R with 'readBin' (one call per column or string block),
+ *   data passes the page cache instead of the Rserve socket protocol
+ * - the file is deleted by R after reading
+ * </pre>
+ * Layout (little endian):
+ * <pre>
+ * int32 number of columns, int32 number of rows
+ * per column: int32 type, name (string vector of length 1), data
+ *   logical:	int8 per value (1, 0, -128 = NA)
+ *   integer:	int32 per value (NA_integer_ = Integer.MIN_VALUE)
+ *   double:	float64 per value (NA as R bit pattern)
+ *   factor:	int32 number of levels, levels (string vector), int32 one-based codes
+ *   string:	string vector
+ * string vector (n values):
+ *   int32 UTF-8 byte length per value (-1 = NA),
+ *   blocks of: int32 number of values, UTF-8 payload of these values (concatenated, at most {@link #STRING_BLOCK_SIZE} bytes
+ *   unless a single value is larger)
+ * </pre>
+ * R reads each block as one raw vector and splits it by the byte lengths with 'substring'.
+ * R strings cannot contain NUL characters, they are removed from the values (see {@link #write(File, List, int, boolean)}).
+ *
+ * @author Antje Janosch
+ *
+ */
+public class RColumnFile {
+
+	public static final int TYPE_LOGICAL = 0;
+	public static final int TYPE_INTEGER = 1;
+	public static final int TYPE_DOUBLE = 2;
+	public static final int TYPE_FACTOR = 3;
+	public static final int TYPE_STRING = 4;
+
+	/** size of the write buffer */
+	private static final int BUFFER_SIZE = 1 << 20;
+
+	/** maximum payload of a block of string values (read by R as one string) */
+	private static final int STRING_BLOCK_SIZE = 1 << 26;
+
+	/**
+	 * R function reading a column file into a named list of vectors (and deleting the file)
+	 * READABLE EXAMPLE: see class documentation for the file layout
+	 */
+	private static final String R_READER = "function(file) { "
+			+ "con <- file(file, \"rb\"); on.exit({ close(con); unlink(file) }); "
+			+ "rd <- function(what, n, size = NA_integer_) readBin(con, what, n, size = size, endian = \"little\"); "
+			+ "rs <- function(n) { len <- rd(\"integer\", n); na <- len < 0L; len[na] <- 0L; s <- character(n); i <- 0L; "
+			+ "while(i < n) { idx <- i + seq_len(rd(\"integer\", 1)); l <- len[idx]; e <- cumsum(l); "
+			+ "b <- rawToChar(readBin(con, \"raw\", sum(l))); Encoding(b) <- \"bytes\"; "
+			+ "s[idx] <- substring(b, e - l + 1L, e); i <- i + length(idx) }; "
+			+ "Encoding(s) <- \"UTF-8\"; s[na] <- NA; s }; "
+			+ "h <- rd(\"integer\", 2); n <- h[2]; "
+			+ "cols <- vector(\"list\", h[1]); nm <- character(h[1]); "
+			+ "for(i in seq_len(h[1])) { "
+			+ "type <- rd(\"integer\", 1); nm[i] <- rs(1); "
+			+ "cols[[i]] <- switch(type + 1, "
+			+ "{ v <- rd(\"integer\", n, 1); v[v == -128L] <- NA; as.logical(v) }, "
+			+ "rd(\"integer\", n), "
+			+ "rd(\"double\", n), "
+			+ "{ l <- rs(rd(\"integer\", 1)); structure(rd(\"integer\", n), levels = l, class = \"factor\") }, "
+			+ "rs(n)) }; "
+			+ "names(cols) <- nm; cols }";
+
+	/**
+	 * writes the data vectors of the given columns to a file
+	 * @param file
+	 * @param columns
+	 * @param numRows		length of the data vectors
+	 * @param withLevels	FALSE to write factor columns as integer codes
+	 * @return number of strings (values, levels, names) which contained NUL characters (removed)
+	 * @throws IOException
+	 */
+	public static int write(File file, List<RDataColumn> columns, int numRows, boolean withLevels) throws IOException {
+		try (Writer out = new Writer(file)) {
+			out.putInt(columns.size());
+			out.putInt(numRows);
+			for(RDataColumn col : columns)
+				col.writeData(out, withLevels);
+			return out.m_removedNul;
+		}
+	}
+
+	/**
+	 * @param varName	R variable to assign the list of columns to
+	 * @param file
+	 * @return R command to read a column file
+	 */
+	public static String getReadCommand(String varName, File file) {
+		return varName + " <- (" + R_READER + ")(\"" + file.getAbsolutePath().replace("\\", "/") + "\")";
+	}
+
+	/**
+	 * sequential little endian writer with a direct buffer
+	 */
+	public static class Writer implements AutoCloseable {
+
+		private final FileChannel m_channel;
+		private final ByteBuffer m_buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+
+		/** number of written strings which contained NUL characters */
+		private int m_removedNul = 0;
+
+		private Writer(File file) throws IOException {
+			m_channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+		}
+
+		public void putByte(byte value) throws IOException {
+			ensure(1);
+			m_buffer.put(value);
+		}
+
+		public void putInt(int value) throws IOException {
+			ensure(4);
+			m_buffer.putInt(value);
+		}
+
+		public void putDouble(double value) throws IOException {
+			ensure(8);
+			// keeps the bit pattern of R's NA
+			m_buffer.putLong(Double.doubleToRawLongBits(value));
+		}
+
+		/**
+		 * writes a string vector (see class documentation), NUL characters are removed
+		 * @param values	null values are written as NA
+		 * @throws IOException
+		 */
+		public void putStrings(String[] values) throws IOException {
+			int[] lengths = new int[values.length];
+			for(int i = 0; i < values.length; i++) {
+				if(values[i] == null) {
+					lengths[i] = -1;
+				} else {
+					if(values[i].indexOf('\0') >= 0) m_removedNul++;
+					lengths[i] = getUTF8Length(removeNul(values[i]));
+				}
+				putInt(lengths[i]);
+			}
+
+			int start = 0;
+			while(start < values.length) {
+				int end = start;
+				long blockSize = 0;
+				while(end < values.length && (end == start || blockSize + Math.max(lengths[end], 0) <= STRING_BLOCK_SIZE))
+					blockSize += Math.max(lengths[end++], 0);
+				putInt(end - start);
+				for(int i = start; i < end; i++)
+					if(lengths[i] > 0)
+						putBytes(removeNul(values[i]).getBytes(StandardCharsets.UTF_8));
+				start = end;
+			}
+		}
+
+		private void putBytes(byte[] bytes) throws IOException {
+			if(bytes.length < BUFFER_SIZE) {
+				ensure(bytes.length);
+				m_buffer.put(bytes);
+			} else {
+				flush();
+				ByteBuffer large = ByteBuffer.wrap(bytes);
+				while(large.hasRemaining())
+					m_channel.write(large);
+			}
+		}
+
+		private static String removeNul(String value) {
+			return value.indexOf('\0') >= 0 ? value.replace("\0", "") : value;
+		}
+
+		/**
+		 * @param value
+		 * @return number of bytes of the UTF-8 encoded value
+		 * (unpaired surrogates are encoded as '?', like {@link String#getBytes(java.nio.charset.Charset)})
+		 */
+		private static int getUTF8Length(String value) {
+			int length = 0;
+			for(int i = 0; i < value.length(); i++) {
+				char c = value.charAt(i);
+				if(c < 0x80)
+					length += 1;
+				else if(c < 0x800)
+					length += 2;
+				else if(Character.isHighSurrogate(c) && i + 1 < value.length() && Character.isLowSurrogate(value.charAt(i + 1))) {
+					length += 4;
+					i++;
+				} else if(Character.isSurrogate(c))
+					length += 1;
+				else
+					length += 3;
+			}
+			return length;
+		}
+
+		private void ensure(int bytes) throws IOException {
+			if(m_buffer.remaining() < bytes)
+				flush();
+		}
+
+		private void flush() throws IOException {
+			m_buffer.flip();
+			while(m_buffer.hasRemaining())
+				m_channel.write(m_buffer);
+			m_buffer.clear();
+		}
+
+		@Override
+		public void close() throws IOException {
+			try {
+				flush();
+			} finally {
+				m_channel.close();
+			}
+		}
+	}
+}
@@ -0,0 +1,54 @@
+package de.mpicbg.knime.scripting.r.data;
+
+import org.rosuda.REngine.REXP;
+import org.rosuda.REngine.Rserve.RConnection;
+import org.rosuda.REngine.Rserve.RserveException;
+
+/**
+ * <p>
+ * target of the R commands issued while pushing a KNIME table to R
+ * </p>
+ * <pre>
+ * - {@link #forConnection(RConnection)}: commands are sent to R immediately
+ * - {@link QueuedCommandSink}: commands are queued and sent to R by another thread
+ * </pre>
+ * NOTE: REXP objects handed over to a sink must not be modified afterwards
+ *
+ * @author Antje Janosch
+ *
+ */
+public interface RCommandSink {
+
+	/**
+	 * assign an R object to a given variable name
+	 * @param name
+	 * @param value
+	 * @throws RserveException
+	 */
+	public void assign(String name, REXP value) throws RserveException;
+
+	/**
+	 * evaluate an R command without returning the result
+	 * @param cmd
+	 * @throws RserveException
+	 */
+	public void voidEval(String cmd) throws RserveException;
+
+	/**
+	 * @param connection
+	 * @return sink which sends all commands directly to the given connection
+	 */
+	public static RCommandSink forConnection(final RConnection connection) {
+		return new RCommandSink() {
+			@Override
+			public void assign(String name, REXP value) throws RserveException {
+				connection.assign(name, value);
+			}
+
+			@Override
+			public void voidEval(String cmd) throws RserveException {
+				connection.voidEval(cmd);
+			}
+		};
+	}
+}
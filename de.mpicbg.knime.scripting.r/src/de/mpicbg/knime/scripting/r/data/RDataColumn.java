@@ -1,15 +1,14 @@
 package de.mpicbg.knime.scripting.r.data;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Optional;
 import java.util.Set;
 
-import org.apache.commons.lang3.ArrayUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.knime.core.data.BooleanValue;
 import org.knime.core.data.DataCell;
@@ -30,11 +29,9 @@ import org.knime.core.data.def.StringCell.StringCellFactory;
 import org.knime.core.data.def.StringCell;
 import org.rosuda.REngine.REXP;
 import org.rosuda.REngine.REXPDouble;
-import org.rosuda.REngine.REXPFactor;
 import org.rosuda.REngine.REXPInteger;
 import org.rosuda.REngine.REXPLogical;
 import org.rosuda.REngine.REXPMismatchException;
-import org.rosuda.REngine.REXPString;
 
 import de.mpicbg.knime.scripting.r.AbstractRScriptingNodeModel.RType;
 
@@ -71,14 +68,26 @@ public class RDataColumn {
 	/** column data type */
 	private RType m_type;
 	
-	/** data vector */
-	private Object[] m_data;
+	/** integer data vector (R >>> KNIME) - int, logical (TRUE = 1, FALSE = 0) and factor codes (one-based) */
+	private int[] m_intData;
 	
-	/** list of missing value indicees - zero based*/
-	private HashSet<Integer> m_missingFlags = new HashSet<Integer>();
+	/** numeric data vector (R >>> KNIME) */
+	private double[] m_doubleData;
 	
-	/** column levels(R)/domain values(KNIME) with index - zero-based */
-	private HashMap<Integer, String> m_levels = new HashMap<Integer, String>();
+	/** string data vector (R >>> KNIME) */
+	private String[] m_stringData;
+	
+	/** primitive data vector (KNIME >>> R) */
+	private RColumnBuffer m_buffer;
+	
+	/** column levels(R)/domain values(KNIME) by index - zero-based */
+	private String[] m_levels = new String[0];
+	
+	/** index of column levels(R)/domain values(KNIME) - one-based codes as used by R factors */
+	private HashMap<String, Integer> m_levelCodes = new HashMap<String, Integer>();
+	
+	/** cached KNIME cells of column levels (R >>> KNIME) - zero-based */
+	private DataCell[] m_levelCells;
 	
 	/** column upper and lower bound */
 	private double[] m_bounds = new double[2];
@@ -102,25 +111,7 @@ public class RDataColumn {
 	 * @param size
 	 */
 	public void initDataVector(int size) {
-		switch(m_type) {
-		case R_LOGICAL:
-			m_data = new Byte[size];
-			break;
-		case R_INT:
-			m_data = new Integer[size];
-			break;
-		case R_DOUBLE:
-			m_data = new Double[size];
-			break;
-		case R_FACTOR:
-			m_data = new Integer[size];
-			break;
-		case R_STRING:
-			m_data = new String[size];
-			break;
-		default:
-		}		
-		
+		m_buffer = RColumnBuffer.create(m_type, size);
 	}
 
 	// GETTER / SETTER
@@ -156,30 +147,26 @@ public class RDataColumn {
 
 	/**
 	 * add KNIME row value to data vector at a given row index
-	 * also adds index to missing value indices if missing cekk
 	 * @param cell
 	 * @param rowIdx
 	 */
 	public void addData(DataCell cell, int rowIdx) {
 		
-		if(cell.isMissing() && m_type == RType.R_STRING)
-			m_missingFlags.add(rowIdx);
-		
 		switch(m_type) {
 		case R_LOGICAL:
-			((Byte[])m_data)[rowIdx] = getLogicalValue(cell);
+			((RColumnBuffer.LogicalVector)m_buffer).set(rowIdx, getLogicalValue(cell));
 			break;
 		case R_INT:
-			((Integer[])m_data)[rowIdx] = getIntegerValue(cell);
+			((RColumnBuffer.IntVector)m_buffer).set(rowIdx, getIntegerValue(cell));
 			break;
 		case R_DOUBLE:
-			((Double[])m_data)[rowIdx] = getDoubleValue(cell);
+			((RColumnBuffer.DoubleVector)m_buffer).set(rowIdx, getDoubleValue(cell));
 			break;
 		case R_FACTOR:
-			((Integer[])m_data)[rowIdx] = getLevelIndex(cell);
+			((RColumnBuffer.IntVector)m_buffer).set(rowIdx, getLevelIndex(cell));
 			break;
 		case R_STRING:
-			((String[])m_data)[rowIdx] = getStringValue(cell);
+			((RColumnBuffer.StringVector)m_buffer).set(rowIdx, getStringValue(cell));
 			break;
 		default:
 		}
@@ -189,27 +176,22 @@ public class RDataColumn {
 	 * @param cell
 	 * @return one-based integer representing the level-based string
 	 */
-	private Integer getLevelIndex(DataCell cell) {
+	private int getLevelIndex(DataCell cell) {
 		if(cell.isMissing())
 			return REXPInteger.NA;
 		
-		String value = ((StringValue)cell).getStringValue();
-		if(m_levels.containsValue(value)) {
-			for(int i : m_levels.keySet())
-				if(m_levels.get(i).equals(value))
-					return (i+1);
-		}
-		return -1;
+		Integer code = m_levelCodes.get(((StringValue)cell).getStringValue());
+		return code != null ? code : -1;
 	}
 
 	/**
 	 * @param cell
-	 * @return string value of KNIME cell or {@link RDataFrameContainer#NA_VAL_FOR_R} if missing cell
+	 * @return string value of KNIME cell or null if missing cell
 	 */
 	private String getStringValue(DataCell cell) {
 		String val;
 		if(cell.isMissing())
-			val = RDataFrameContainer.NA_VAL_FOR_R;
+			val = null;
 		else
 			val = ((StringValue)cell).getStringValue();
 		return val;
@@ -219,7 +201,7 @@ public class RDataColumn {
 	 * @param cell
 	 * @return integer value of KNIME cell or {@link REXPInteger#NA} if missing cell
 	 */
-	private Integer getIntegerValue(DataCell cell) {
+	private int getIntegerValue(DataCell cell) {
 		int val;
 		if(cell.isMissing())
 			val = REXPInteger.NA;
@@ -255,53 +237,107 @@ public class RDataColumn {
 	}
 
 	/**
+	 * the primitive data vector is passed to the REXP object without copying
 	 * @return data vector as REXP representation
 	 */
 	public REXP getREXPData() {
+		if(m_buffer == null)
+			return null;
+		return m_buffer.toREXP(m_type.equals(RType.R_FACTOR) ? getLevels() : null);
+	}
+
+	/**
+	 * writes type, name and data vector of this column in the layout of {@link RColumnFile}
+	 * @param out
+	 * @param withLevels	FALSE to write factor columns as integer codes (tiled transfer)
+	 * @throws IOException
+	 */
+	public void writeData(RColumnFile.Writer out, boolean withLevels) throws IOException {
+		boolean isFactor = m_type.equals(RType.R_FACTOR) && withLevels;
+		out.putInt(isFactor ? RColumnFile.TYPE_FACTOR : getFileType());
+		out.putStrings(new String[]{m_name});
+		if(isFactor) {
+			out.putInt(m_levels.length);
+			out.putStrings(m_levels);
+		}
+		m_buffer.write(out);
+	}
+
+	/**
+	 * @return type code of the data vector in a {@link RColumnFile}
+	 */
+	private int getFileType() {
 		switch(m_type) {
 		case R_LOGICAL:
-			return new REXPLogical(ArrayUtils.toPrimitive((Byte[]) m_data));
-		case R_INT:
-			return new REXPInteger(ArrayUtils.toPrimitive((Integer[]) m_data));
+			return RColumnFile.TYPE_LOGICAL;
 		case R_DOUBLE:
-			return new REXPDouble(ArrayUtils.toPrimitive((Double[]) m_data));
+			return RColumnFile.TYPE_DOUBLE;
+		case R_STRING:
+			return RColumnFile.TYPE_STRING;
+		default:
+		}
+		return RColumnFile.TYPE_INTEGER;
+	}
+
+	/**
+	 * data vector as REXP representation for tiled transfer, 
+	 * factor columns are represented by their integer codes
+	 * @return
+	 */
+	public REXP getREXPTileData() {
+		if(m_buffer == null)
+			return null;
+		return m_buffer.toREXP(null);
+	}
+	
+	/**
+	 * @return R storage mode of the data vector as used by 'vector(mode, length)'
+	 */
+	public String getRMode() {
+		switch(m_type) {
+		case R_LOGICAL:
+			return "logical";
+		case R_INT:
 		case R_FACTOR:
-			return new REXPFactor(ArrayUtils.toPrimitive((Integer[]) m_data), getLevels()); 
+			return "integer";
+		case R_DOUBLE:
+			return "double";
 		case R_STRING:
-			return new REXPString((String[]) m_data);
+			return "character";
 		default:
 		}
-		
 		return null;
 	}
 
 	/**
 	 * @return levels as String vector
 	 */
-	private String[] getLevels() {
-		String[] levels = new String[m_levels.size()];
-		Integer[] indices = m_levels.keySet().toArray(new Integer[m_levels.size()]);
-		Arrays.sort(indices);
-		
-		for(int i : indices) {
-			levels[i] = m_levels.get(i);
-		}
-		
-		return levels;
+	public String[] getLevels() {
+		return m_levels;
 	}
 
 	/**
 	 * set data vector to null
 	 */
 	public void clearData() {
-		m_data = null;
+		m_intData = null;
+		m_doubleData = null;
+		m_stringData = null;
+		m_buffer = null;
 	}
 
 	/**
-	 * @return comma separated string with missing value indices
+	 * replaces missing values of a string column by {@link RDataFrameContainer#NA_VAL_FOR_R}
+	 * (for Rserve versions which do not support NA strings)
+	 * @return logical vector with TRUE for missing values, null if the column has no missing values
 	 */
-	public String getMissingIdx() {
-		return StringUtils.join(m_missingFlags, ',');
+	public REXP getMissingMask() {
+		if(!(m_buffer instanceof RColumnBuffer.StringVector))
+			return null;
+		RColumnBuffer.StringVector strings = (RColumnBuffer.StringVector) m_buffer;
+		if(!strings.hasMissing())
+			return null;
+		return strings.replaceMissing(RDataFrameContainer.NA_VAL_FOR_R);
 	}
 	
 	/**
@@ -309,13 +345,14 @@ public class RDataColumn {
 	 * @param levels
 	 */
 	public void setLevels(Set<DataCell> levels) {
-		m_levels = new HashMap<Integer, String>();
 		assert levels!= null;
+		String[] levelArray = new String[levels.size()];
 		int i = 0;
 		for(DataCell cell : levels) {
-			m_levels.put(i, ((StringValue)cell).getStringValue());
+			levelArray[i] = ((StringValue)cell).getStringValue();
 			i++;
 		}
+		setLevels(levelArray);
 	}
 	
 	// R >>> KNIME
@@ -326,9 +363,11 @@ public class RDataColumn {
 	 * @param levels
 	 */
 	public void setLevels(String[] levels) {
-		m_levels = new HashMap<Integer, String>();
-		for(int i = 1; i <= levels.length; i++)
-			this.m_levels.put(i, levels[i-1]);
+		m_levelCells = null;
+		m_levels = levels;
+		m_levelCodes = new HashMap<String, Integer>(levels.length * 2);
+		for(int i = 0; i < levels.length; i++)
+			m_levelCodes.putIfAbsent(levels[i], i + 1);
 	}
 	
 	/**
@@ -359,11 +398,7 @@ public class RDataColumn {
 	private LinkedHashSet<DataCell> createDomainValueSet() {
 		LinkedHashSet<DataCell> values = new LinkedHashSet<DataCell>();
 		
-		Integer[] indices = m_levels.keySet().toArray(new Integer[m_levels.size()]);
-		Arrays.sort(indices);
-		
-		for(int i : indices) {
-			String level = m_levels.get(i);
+		for(String level : m_levels) {
 			values.add(new StringCell(level));
 		}
 		
@@ -406,38 +441,26 @@ public class RDataColumn {
 	}
 
 	/**
-	 * add REXP-vector values to data vector
-	 * also keeps missing-value indices
+	 * set REXP-vector values as data vector<br/>
+	 * the primitive payload of the REXP is used without copying, 
+	 * factors are expected as integer codes (e.g. retrieved with <code>.subset</code>)
 	 * @param data
+	 * @throws REXPMismatchException 
 	 */
-	public void addData(REXP data) {
-		
-		try {
-			boolean[] missingVals = data.isNA();
-			m_missingFlags = new HashSet<Integer>();
-			for(int i = 0; i < missingVals.length; i++)
-				if(missingVals[i])
-					m_missingFlags.add(i);
-			
-		} catch (REXPMismatchException e) {
-			e.printStackTrace();
-		}
+	public void addData(REXP data) throws REXPMismatchException {
 		
 		switch(m_type) {
 		case R_LOGICAL:
-			m_data = ArrayUtils.toObject(((REXPLogical)data).isTRUE());
-			break;
+			// TRUE = 1, FALSE = 0, NA = REXPInteger.NA
 		case R_INT:
-			m_data = ArrayUtils.toObject(((REXPInteger)data).asIntegers());
+		case R_FACTOR:
+			m_intData = data.asIntegers();
 			break;
 		case R_DOUBLE:
-			m_data = ArrayUtils.toObject(((REXPDouble)data).asDoubles());
-			break;
-		case R_FACTOR:
-			m_data = ((REXPFactor)data).asFactor().asStrings();
+			m_doubleData = data.asDoubles();
 			break;
 		case R_STRING:
-			m_data = ((REXPString)data).asStrings();
+			m_stringData = data.asStrings();
 			break;
 		default:
 		}
@@ -449,26 +472,42 @@ public class RDataColumn {
 	 */
 	public DataCell getKNIMECell(int rowIdx) {
 		
-		if(m_missingFlags.size() > 0)
-			if(m_missingFlags.contains(rowIdx))
-				return DataType.getMissingCell();
-		
 		switch(m_type) {
 		case R_LOGICAL:
-			return BooleanCellFactory.create((boolean)m_data[rowIdx]);
-			//return BooleanCell.get((boolean) m_data[rowIdx]);
+			int bool = m_intData[rowIdx];
+			if(bool == REXPInteger.NA) return DataType.getMissingCell();
+			return BooleanCellFactory.create(bool != 0);
 		case R_INT:
-			return IntCellFactory.create((int) m_data[rowIdx]);
-			//return new IntCell((Integer) m_data[rowIdx]);
+			int intVal = m_intData[rowIdx];
+			if(intVal == REXPInteger.NA) return DataType.getMissingCell();
+			return IntCellFactory.create(intVal);
 		case R_DOUBLE:
-			return DoubleCellFactory.create((double) m_data[rowIdx]);
-			//return new DoubleCell((Double) m_data[rowIdx]);
+			double doubleVal = m_doubleData[rowIdx];
+			if(REXPDouble.isNA(doubleVal)) return DataType.getMissingCell();
+			return DoubleCellFactory.create(doubleVal);
 		case R_FACTOR:
+			int code = m_intData[rowIdx];
+			if(code == REXPInteger.NA) return DataType.getMissingCell();
+			return getLevelCell(code - 1);
 		case R_STRING:
-			return StringCellFactory.create((String) m_data[rowIdx]);
-			//return new StringCell((String) m_data[rowIdx]);
+			String stringVal = m_stringData[rowIdx];
+			if(stringVal == null) return DataType.getMissingCell();
+			return StringCellFactory.create(stringVal);
 		default:
 		}
 		return null;
 	}
+	
+	/**
+	 * @param levelIdx	zero-based
+	 * @return KNIME cell of a given level, cells are created once per column
+	 */
+	private DataCell getLevelCell(int levelIdx) {
+		if(m_levelCells == null) {
+			m_levelCells = new DataCell[m_levels.length];
+			for(int i = 0; i < m_levels.length; i++)
+				m_levelCells[i] = StringCellFactory.create(m_levels[i]);
+		}
+		return m_levelCells[levelIdx];
+	}
 }
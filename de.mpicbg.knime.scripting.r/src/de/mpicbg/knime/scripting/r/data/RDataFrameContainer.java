@@ -19,13 +19,15 @@ import org.knime.core.node.BufferedDataContainer;
 import org.knime.core.node.CanceledExecutionException;
 import org.knime.core.node.ExecutionMonitor;
 import org.knime.core.node.NodeLogger;
-import org.rosuda.REngine.REXP;
 import org.rosuda.REngine.REXPGenericVector;
+import org.rosuda.REngine.REXPMismatchException;
 import org.rosuda.REngine.REXPString;
 import org.rosuda.REngine.RList;
 import org.rosuda.REngine.Rserve.RConnection;
 import org.rosuda.REngine.Rserve.RserveException;
 
+import de.mpicbg.knime.scripting.r.AbstractRScriptingNodeModel.RType;
+
 /**
  * <p>
  * table model for R <-> KNIME transfer
@@ -38,6 +40,14 @@ import org.rosuda.REngine.Rserve.RserveException;
  * To R: push column chunks to R, clear chunk data, later combine within R to a single data frame
  * </p>
  * <p>
+ * To R (tiled): preallocate the column vectors of a chunk in R, push row tiles of that chunk 
+ * and fill them in (Java memory is bounded by the tile size), later combine within R to a single data frame
+ * </p>
+ * <p>
+ * Column chunks (or tiles) are encoded by a {@link RTransferCodec}: REXP lists by default, or a binary
+ * file ({@link RColumnFile}) which is read by R instead of sending them through the Rserve socket if R runs on the same machine
+ * </p>
+ * <p>
  * To KNIME: pull row chunks from R (re-use column data vector), fill in KNIME data table
  * </p>
  * 
@@ -72,10 +82,40 @@ public class RDataFrameContainer {
 	private int m_numCols;
 	
 	/**
-	 * intermediate value for missing strings; RServe does not support NA-values for Strings
+	 * intermediate value for missing strings if they are transferred with {@link MissingStringMode#LOGICAL_MASK}
 	 */
 	public static final String NA_VAL_FOR_R = "NA";
 	
+	/**
+	 * transfer modes for missing values of string columns
+	 * <pre>
+	 * NA_STRING: missing strings are sent as NA within the string vector
+	 * LOGICAL_MASK: missing strings are sent as {@link #NA_VAL_FOR_R} and fixed with a logical mask per chunk
+	 * (for Rserve versions which do not support NA strings)
+	 * </pre>
+	 */
+	public enum MissingStringMode { NA_STRING, LOGICAL_MASK };
+	
+	/**
+	 * how missing strings are transferred to R
+	 */
+	private MissingStringMode m_missingStringMode = MissingStringMode.NA_STRING;
+	
+	/**
+	 * number of rows per tile for tiled transfer to R, no tiling if <= 0
+	 */
+	private int m_rowTileSize = 0;
+	
+	/**
+	 * index of the first row of the current tile - zero based
+	 */
+	private int m_tileStart = 0;
+	
+	/**
+	 * encoding of column data for transfer to R, REXP lists if not set
+	 */
+	private RTransferCodec m_codec = null;
+	
 	/**
 	 * KNIME logger
 	 */
@@ -94,13 +134,51 @@ public class RDataFrameContainer {
 		m_rowKeys = new String[numRows];
 	}
 	
+	/**
+	 * @param mode	how missing values of string columns are transferred to R
+	 */
+	public void setMissingStringMode(MissingStringMode mode) {
+		m_missingStringMode = mode;
+	}
+	
+	/**
+	 * enables tiled transfer to R; data vectors and row keys will only keep the rows of one tile
+	 * @param rowTileSize	number of rows per tile, no tiling if <= 0 or not smaller than the number of rows
+	 */
+	public void setRowTileSize(int rowTileSize) {
+		m_rowTileSize = rowTileSize < m_numRows ? rowTileSize : 0;
+		if(isTiled())
+			m_rowKeys = new String[m_rowTileSize];
+	}
+	
+	/**
+	 * @param codec	encoding of column data for transfer to R, null for the default (REXP lists)
+	 */
+	public void setTransferCodec(RTransferCodec codec) {
+		m_codec = codec;
+	}
+	
+	/**
+	 * @return encoding of column data for transfer to R
+	 */
+	public RTransferCodec getTransferCodec() {
+		return m_codec != null ? m_codec : new RExpTransferCodec(m_missingStringMode);
+	}
+	
+	/**
+	 * @return TRUE, if data is transferred to R in row tiles
+	 */
+	public boolean isTiled() {
+		return m_rowTileSize > 0;
+	}
+	
 	/**
 	 * adds the row key of row at given index
 	 * @param row
 	 * @param rowKey
 	 */
 	public void addRowKey(int row, String rowKey) {
-		m_rowKeys[row] = rowKey;
+		m_rowKeys[row - m_tileStart] = rowKey;
 	}
 	
 	/**
@@ -136,11 +214,28 @@ public class RDataFrameContainer {
 			return false;
 		}
 		
+		m_tileStart = 0;
 		for(RDataColumn column : m_columnChunks.get(chunk)) {	
-			column.initDataVector(m_numRows);			
+			column.initDataVector(getTileSize());			
 		}		
 		return true;
 	}
+	
+	/**
+	 * @return number of rows of the current tile (all rows if not tiled)
+	 */
+	private int getTileSize() {
+		if(!isTiled()) return m_numRows;
+		return Math.min(m_rowTileSize, m_numRows - m_tileStart);
+	}
+	
+	/**
+	 * @param rowIdx
+	 * @return TRUE, if the row with the given index is the last row of the current tile
+	 */
+	public boolean isTileComplete(int rowIdx) {
+		return isTiled() && rowIdx == m_tileStart + getTileSize() - 1;
+	}
 
 	/**
 	 * store data of a given row from all columns of a given chunk
@@ -152,7 +247,94 @@ public class RDataFrameContainer {
 		
 		for(RDataColumn column : m_columnChunks.get(chunk)) {
 			DataCell cell = row.getCell(column.getIndex());
-			column.addData(cell, rowIdx);
+			column.addData(cell, rowIdx - m_tileStart);
+		}
+	}
+	
+	/**
+	 * preallocates the column vectors of a given chunk in R (tiled transfer)
+	 * @param chunk
+	 * @param connection
+	 * @param parName
+	 * @throws RserveException
+	 */
+	public void allocateChunk(int chunk, RCommandSink connection, String parName) throws RserveException {
+		
+		List<RDataColumn> columns = m_columnChunks.get(chunk);
+		String[] names = new String[columns.size()];
+		String[] modes = new String[columns.size()];
+		int i = 0;
+		for(RDataColumn col : columns) {
+			names[i] = col.getName();
+			modes[i] = col.getRMode();
+			i++;
+		}
+		
+		String chunkName = parName + "_chunk_" + chunk;
+		m_chunkNames.add(chunkName);
+		
+		// READABLE EXAMPLE:
+		// kIn_chunk_0 <- setNames(mapply(vector, kIn_chunk_0_modes, 1000000, SIMPLIFY = FALSE), kIn_chunk_0_names)
+		logger.debug("allocate chunk " + chunkName + " in R");
+		connection.assign(chunkName + "_names", new REXPString(names));
+		connection.assign(chunkName + "_modes", new REXPString(modes));
+		connection.voidEval(chunkName + " <- setNames(mapply(vector, " + chunkName + "_modes, " + m_numRows + ", SIMPLIFY = FALSE), " 
+				+ chunkName + "_names); rm(" + chunkName + "_names, " + chunkName + "_modes)");
+	}
+	
+	/**
+	 * transfer the current row tile of a given chunk to R and fill it into the preallocated vectors;
+	 * row keys are transferred with the tiles of the first chunk (or if the table has no columns)<br/>
+	 * data vectors are reinitialized for the next tile
+	 * @param chunk
+	 * @param connection
+	 * @param parName
+	 * @param subExec
+	 * @throws CanceledExecutionException
+	 * @throws RserveException
+	 */
+	public void pushTile(int chunk, RCommandSink connection, String parName, ExecutionMonitor subExec) throws CanceledExecutionException, RserveException {
+		
+		int tileSize = getTileSize();
+		// R index range of this tile (one-based)
+		String range = "[" + (m_tileStart + 1) + ":" + (m_tileStart + tileSize) + "]";
+		
+		subExec.checkCanceled();
+		subExec.setMessage("transfer rows " + (m_tileStart + 1) + " to " + (m_tileStart + tileSize) + " of chunk " + (chunk+1) + " to R (cannot be cancelled)");
+		
+		// row keys
+		boolean firstChunk = m_columnChunks.isEmpty() || chunk == m_columnChunks.keySet().iterator().next();
+		if(firstChunk) {
+			String rowNames = parName + "_rownames";
+			if(m_tileStart == 0)
+				connection.voidEval(rowNames + " <- character(" + m_numRows + ")");
+			// copy: the row key array is reused for the next tile
+			connection.assign(rowNames + "_tile", new REXPString(Arrays.copyOf(m_rowKeys, tileSize)));
+			connection.voidEval(rowNames + range + " <- " + rowNames + "_tile; rm(" + rowNames + "_tile)");
+		}
+		
+		// column data
+		if(m_columnChunks.containsKey(chunk)) {
+			String chunkName = parName + "_chunk_" + chunk;
+			String tileName = chunkName + "_tile";
+			
+			RTransferCodec codec = getTransferCodec();
+			logger.debug("transfer tile " + range + " of " + chunkName + " to R (" + codec.getName() + ")");
+			codec.transfer(tileName, m_columnChunks.get(chunk), tileSize, true, connection);
+			// READABLE EXAMPLE:
+			// for(.knime.i in seq_along(kIn_chunk_0_tile)) kIn_chunk_0[[.knime.i]][1:10000] <- kIn_chunk_0_tile[[.knime.i]]; rm(kIn_chunk_0_tile, .knime.i)
+			// loop variable must not overwrite workspace objects
+			connection.voidEval("for(.knime.i in seq_along(" + tileName + ")) " + chunkName + "[[.knime.i]]" + range + " <- " + tileName + "[[.knime.i]]; rm(" + tileName + ", .knime.i)");
+		}
+		
+		m_tileStart += tileSize;
+		subExec.setProgress((double)m_tileStart/(double)m_numRows);
+		
+		// prepare next tile
+		if(m_tileStart < m_numRows && m_columnChunks.containsKey(chunk)) {
+			for(RDataColumn column : m_columnChunks.get(chunk)) {	
+				column.initDataVector(getTileSize());			
+			}
 		}
 	}
 
@@ -165,36 +347,59 @@ public class RDataFrameContainer {
 	 * @throws CanceledExecutionException
 	 * @throws RserveException
 	 */
-	public void pushChunk(int chunk, RConnection connection, String parName, ExecutionMonitor subExec) throws CanceledExecutionException, RserveException {
+	public void pushChunk(int chunk, RCommandSink connection, String parName, ExecutionMonitor subExec) throws CanceledExecutionException, RserveException {
+		
+		if(isTiled()) {
+			finalizeTiledChunk(chunk, connection, parName);
+			return;
+		}
 		
-		// create a new RList with a column vectors of this chunk
-		RList rList = new RList(this.m_numRows, true);
 		List<RDataColumn> columns = m_columnChunks.get(chunk);
-    	for(RDataColumn col : columns) {
-            String colName = col.getName();          
-            rList.put(colName, col.getREXPData());
-    	}
-    	
-    	// chunk name
-    	String chunkName = parName + "_chunk_" + chunk;
-    	m_chunkNames.add(chunkName);
-    	
-    	subExec.checkCanceled();
-    	subExec.setMessage("transfer chunk " + (chunk+1) + " to R (cannot be cancelled)");
-    	
-    	// assign data to variable in R
-    	logger.debug("transfer chunk " + chunkName + " to R");
-    	connection.assign(chunkName, new REXPGenericVector(rList));
+		String chunkName = parName + "_chunk_" + chunk;
+		m_chunkNames.add(chunkName);
+		
+		subExec.checkCanceled();
+		subExec.setMessage("transfer chunk " + (chunk+1) + " to R (cannot be cancelled)");
+		
+		RTransferCodec codec = getTransferCodec();
+		logger.debug("transfer chunk " + chunkName + " to R (" + codec.getName() + ")");
+		codec.transfer(chunkName, columns, m_numRows, false, connection);
+	}
+	
+	/**
+	 * factor columns of a tiled chunk have been filled with integer codes, add levels and class
+	 * @param chunk
+	 * @param connection
+	 * @param parName
+	 * @throws RserveException
+	 */
+	private void finalizeTiledChunk(int chunk, RCommandSink connection, String parName) throws RserveException {
+		String chunkName = parName + "_chunk_" + chunk;
+		
+		RList levelList = new RList();
+		for(RDataColumn col : m_columnChunks.get(chunk)) {
+			if(col.getType().equals(RType.R_FACTOR))
+				levelList.put(col.getName(), new REXPString(col.getLevels()));
+		}
+		
+		// READABLE EXAMPLE:
+		// kIn_chunk_0[names(kIn_chunk_0_levels)] <- mapply(function(v, l) structure(v, levels = l, class = "factor"), 
+		//		kIn_chunk_0[names(kIn_chunk_0_levels)], kIn_chunk_0_levels, SIMPLIFY = FALSE); rm(kIn_chunk_0_levels)
+		if(levelList.size() > 0) {
+			String levelName = chunkName + "_levels";
+			String cols = chunkName + "[names(" + levelName + ")]";
+			connection.assign(levelName, new REXPGenericVector(levelList));
+			connection.voidEval(cols + " <- mapply(function(v, l) structure(v, levels = l, class = \"factor\"), " + cols + ", " + levelName + ", SIMPLIFY = FALSE); rm(" + levelName + ")");
+		}
 	}
 	
 	/**
 	 * combines all transfered chunks into a single data frame
-	 * fixes missing values
 	 * @param parName
 	 * @param connection
 	 * @throws RserveException
 	 */
-	public void createDataFrame(String parName, RConnection connection) throws RserveException {
+	public void createDataFrame(String parName, RCommandSink connection) throws RserveException {
 		logger.debug("combine chunks");
 
 		String combineString = parName + " <- c(" + StringUtils.join(m_chunkNames, ",") + ")";
@@ -215,24 +420,12 @@ public class RDataFrameContainer {
         	connection.voidEval(parName + " <- data.frame(matrix(nrow = " + m_numRows + ", ncol = 0))");
         
         if(m_numRows > 0) {
-        	// push row names to R and assign to dataframe
-        	connection.assign(parName + "_rownames", new REXPString(this.m_rowKeys));
+        	// push row names to R and assign to dataframe (already transferred if tiled)
+        	if(!isTiled())
+        		connection.assign(parName + "_rownames", new REXPString(this.m_rowKeys));
         	connection.voidEval("rownames(" + parName + ") <- " + parName + "_rownames");
         	connection.voidEval("rm(" + parName + "_rownames)");
         }
-        
-        List<String> dataframeColumns = Arrays.asList(((REXPString)connection.eval("colnames(" + parName + ")")).asStrings());
-        
-        logger.debug("fix missing values");
-        
-        // update missing values for string columns
-        // e.g. kIn[,2][c(1,6,20,21)] <- NA
-        for(Integer chunk : m_columnChunks.keySet()) {
-            for(RDataColumn col : m_columnChunks.get(chunk)) {
-            	String missingIdxVec = "[c(" + col.getMissingIdx() + ")]";
-            	connection.voidEval(parName + "[," + (dataframeColumns.indexOf(col.getName())+1) + "]" + missingIdxVec + " <- NA");
-            }
-        }
 	}
 
 	/**
@@ -281,6 +474,9 @@ public class RDataFrameContainer {
 
 	/**
 	 * pulls data frame with a given name from R (in row chunks of a given size) and fills KNIME table with this data
+	 * <br/>
+	 * each chunk is retrieved column-wise as list of plain vectors (factors as integer codes), 
+	 * rows are created directly from the primitive vectors
 	 * @param con
 	 * @param connection
 	 * @param subExec
@@ -288,60 +484,53 @@ public class RDataFrameContainer {
 	 * @param rowChunkSize
 	 * @throws RserveException
 	 * @throws CanceledExecutionException 
+	 * @throws REXPMismatchException 
 	 */
-	public void readDataFromR(BufferedDataContainer con, RConnection connection, ExecutionMonitor subExec, String rOutName, int rowChunkSize) throws RserveException, CanceledExecutionException {
+	public void readDataFromR(BufferedDataContainer con, RConnection connection, ExecutionMonitor subExec, String rOutName, int rowChunkSize) 
+			throws RserveException, CanceledExecutionException, REXPMismatchException {
+		
+		ArrayList<RDataColumn> cList = m_numCols > 0 ? m_columnChunks.get(0) : new ArrayList<RDataColumn>();
 		
-		ArrayList<RDataColumn> cList = m_columnChunks.get(0);
+		// reused for each row (DefaultRow copies the cells)
+		DataCell[] cells = new DataCell[cList.size()];
 		
 		// get dataframe chunks (by n rows)
 		int startRow = 1;
-		//int rowIdx = 0;
 		while(startRow <= m_numRows) {
 			int endRow = startRow + rowChunkSize - 1;
 			if(endRow > m_numRows) endRow = m_numRows;
 			subExec.setMessage("retrieve rows " + startRow + " to " + endRow + " from R (cannot be cancelled)");
 			subExec.checkCanceled();
 			if(m_numCols > 0) {
-				RList data = ((REXPGenericVector)connection.eval(rOutName + "[" + startRow + ":" + endRow + ",,drop = FALSE]")).asList();
+				// READABLE EXAMPLE: lapply(rOut, .subset, 1:1000)
+				// .subset drops attributes => plain vectors, factors as integer codes
+				RList data = ((REXPGenericVector)connection.eval("lapply(" + rOutName + ", .subset, " + startRow + ":" + endRow + ")")).asList();
 				
-				for(RDataColumn col : cList) {
-					col.initDataVector(endRow - startRow);
-					col.addData((REXP)data.get(col.getName()));
-				}
+				for(RDataColumn col : cList)
+					col.addData(data.at(col.getIndex()));
 			}
 			
 			subExec.setProgress((double)endRow/(double)m_numRows);
+			subExec.setMessage("create rows " + startRow + " to " + endRow);
 			
 			int dataIdx = 0;
 			for(int i = startRow; i <= endRow; i++) {
-				subExec.setMessage("create row " + i);
 				subExec.checkCanceled();
 				
-				DefaultRow row = new DefaultRow(m_rowKeys[i-1], getListOfCells(dataIdx, cList));
-				con.addRowToTable(row);
+				for(int c = 0; c < cells.length; c++)
+					cells[c] = cList.get(c).getKNIMECell(dataIdx);
+				con.addRowToTable(new DefaultRow(m_rowKeys[i-1], cells));
 				dataIdx++;
 			}
 			
+			for(RDataColumn col : cList)
+				col.clearData();
+			
 			startRow = endRow + 1;
 		}	
 		subExec.setProgress(1.0);
 	}
 
-	/**
-	 * @param rowIdx
-	 * @param columnList 
-	 * @return data from a given row as KNIME cell list
-	 */
-	private List<DataCell> getListOfCells(int rowIdx, ArrayList<RDataColumn> columnList) {
-		List<DataCell> cells = new ArrayList<DataCell>();
-		if(m_numCols > 0) {
-			for(RDataColumn col : columnList) {
-				cells.add(col.getKNIMECell(rowIdx));
-			}
-		}
-		return cells;
-	}
-
 	/**
 	 * adds the row keys from a String vector
 	 * @param rowNames
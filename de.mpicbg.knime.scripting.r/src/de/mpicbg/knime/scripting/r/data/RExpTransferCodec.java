@@ -0,0 +1,80 @@
+package de.mpicbg.knime.scripting.r.data;
+
+import java.util.List;
+
+import org.rosuda.REngine.REXP;
+import org.rosuda.REngine.REXPGenericVector;
+import org.rosuda.REngine.RList;
+import org.rosuda.REngine.Rserve.RserveException;
+
+import de.mpicbg.knime.scripting.r.data.RDataFrameContainer.MissingStringMode;
+
+/**
+ * <p>
+ * default transfer codec: the data vectors are assigned as one REXP list (QAP1 encoding of Rserve)
+ * </p>
+ *
+ * @author Antje Janosch
+ *
+ */
+public class RExpTransferCodec implements RTransferCodec {
+
+	/** how missing strings are transferred to R */
+	private final MissingStringMode m_missingStringMode;
+
+	/**
+	 * constructor
+	 * @param missingStringMode
+	 */
+	public RExpTransferCodec(MissingStringMode missingStringMode) {
+		m_missingStringMode = missingStringMode;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public String getName() {
+		return "REXP";
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void transfer(String varName, List<RDataColumn> columns, int numRows, boolean tile, RCommandSink connection) throws RserveException {
+		// create a new RList with the column vectors
+		RList rList = new RList(numRows, true);
+		// missing value masks of string columns (LOGICAL_MASK mode only)
+		RList naList = new RList();
+		for(RDataColumn col : columns) {
+			if(m_missingStringMode.equals(MissingStringMode.LOGICAL_MASK)) {
+				REXP mask = col.getMissingMask();
+				if(mask != null) naList.put(col.getName(), mask);
+			}
+			rList.put(col.getName(), tile ? col.getREXPTileData() : col.getREXPData());
+		}
+		connection.assign(varName, new REXPGenericVector(rList));
+
+		fixMissingStrings(varName, naList, connection);
+	}
+
+	/**
+	 * fix missing values of all string columns of a chunk (or tile) with a single call
+	 * @param chunkName
+	 * @param naList	logical masks of string columns with missing values
+	 * @param connection
+	 * @throws RserveException
+	 */
+	private static void fixMissingStrings(String chunkName, RList naList, RCommandSink connection) throws RserveException {
+		// READABLE EXAMPLE:
+		// kIn_chunk_0[names(kIn_chunk_0_na)] <- mapply(function(v, na) { v[na] <- NA; v }, 
+		//		kIn_chunk_0[names(kIn_chunk_0_na)], kIn_chunk_0_na, SIMPLIFY = FALSE); rm(kIn_chunk_0_na)
+		if(naList.size() > 0) {
+			String naName = chunkName + "_na";
+			String cols = chunkName + "[names(" + naName + ")]";
+			connection.assign(naName, new REXPGenericVector(naList));
+			connection.voidEval(cols + " <- mapply(function(v, na) { v[na] <- NA; v }, " + cols + ", " + naName + ", SIMPLIFY = FALSE); rm(" + naName + ")");
+		}
+	}
+}
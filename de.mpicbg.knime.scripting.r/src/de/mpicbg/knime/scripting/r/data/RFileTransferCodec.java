@@ -0,0 +1,48 @@
+package de.mpicbg.knime.scripting.r.data;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+import org.knime.core.node.NodeLogger;
+import org.rosuda.REngine.Rserve.RserveException;
+
+/**
+ * <p>
+ * transfer codec for an R server on the same machine: the data vectors are written to a binary 
+ * columnar file (layout see {@link RColumnFile}) which R reads natively and deletes afterwards
+ * </p>
+ *
+ * @author Antje Janosch
+ *
+ */
+public class RFileTransferCodec implements RTransferCodec {
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public String getName() {
+		return "local column file";
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void transfer(String varName, List<RDataColumn> columns, int numRows, boolean tile, RCommandSink connection) throws RserveException {
+		File file = null;
+		try {
+			file = File.createTempFile("knime-r-", ".bin");
+			int removedNul = RColumnFile.write(file, columns, numRows, !tile);
+			if(removedNul > 0)
+				NodeLogger.getLogger(RFileTransferCodec.class).warn(removedNul + " string value(s) contain NUL characters "
+						+ "which are not supported by R strings, the characters have been removed");
+		} catch (IOException e) {
+			if(file != null) file.delete();
+			throw new RserveException(null, "Failed to write column file: " + e.getMessage());
+		}
+		// the file is deleted by R after reading
+		connection.voidEval(RColumnFile.getReadCommand(varName, file));
+	}
+}
@@ -0,0 +1,37 @@
+package de.mpicbg.knime.scripting.r.data;
+
+import java.util.List;
+
+import org.rosuda.REngine.Rserve.RserveException;
+
+/**
+ * <p>
+ * encoding of column data for KNIME >>> R transfer
+ * </p>
+ * <pre>
+ * - a codec transfers the data vectors of a column chunk (or row tile) to R as a named list of vectors
+ * - {@link RExpTransferCodec}: REXP objects assigned through the Rserve protocol (default)
+ * - {@link RFileTransferCodec}: binary columnar file read by R with 'readBin' (R server on the same machine)
+ * </pre>
+ *
+ * @author Antje Janosch
+ *
+ */
+public interface RTransferCodec {
+
+	/**
+	 * @return codec name for logging
+	 */
+	public String getName();
+
+	/**
+	 * transfers the data vectors of the given columns to R
+	 * @param varName		R variable name of the list of vectors
+	 * @param columns
+	 * @param numRows		length of the data vectors
+	 * @param tile			TRUE if the vectors hold a row tile (factor columns are transferred as integer codes)
+	 * @param connection
+	 * @throws RserveException
+	 */
+	public void transfer(String varName, List<RDataColumn> columns, int numRows, boolean tile, RCommandSink connection) throws RserveException;
+}
@@ -4,6 +4,7 @@ import de.mpicbg.knime.knutils.AbstractNodeModel;
 import de.mpicbg.knime.scripting.core.AbstractScriptingNodeModel;
 import de.mpicbg.knime.scripting.core.exceptions.KnimeScriptingException;
 import de.mpicbg.knime.scripting.r.AbstractRScriptingNodeModel;
+import de.mpicbg.knime.scripting.r.RConnectionPool;
 import de.mpicbg.knime.scripting.r.RUtils;
 import de.mpicbg.knime.scripting.r.node.snippet.RSnippetNodeModel;
 
@@ -40,7 +41,7 @@ public class ConvertToTable extends AbstractRScriptingNodeModel {
     @Override
     protected PortObject[] execute(PortObject[] inObjects, ExecutionContext exec) throws Exception {
 
-    	m_con = RUtils.createConnection();
+    	m_con = RConnectionPool.getInstance().borrow();
         BufferedDataTable dataTable = null;
 
         try {
@@ -19,6 +19,7 @@ import de.mpicbg.knime.scripting.core.exceptions.KnimeScriptingException;
 import de.mpicbg.knime.scripting.r.AbstractRScriptingNodeModel;
 import de.mpicbg.knime.scripting.r.R4KnimeBundleActivator;
 import de.mpicbg.knime.scripting.r.RColumnSupport;
+import de.mpicbg.knime.scripting.r.RConnectionPool;
 import de.mpicbg.knime.scripting.r.RUtils;
 import de.mpicbg.knime.scripting.r.node.snippet.RSnippetNodeModel;
 import de.mpicbg.knime.scripting.r.prefs.RPreferenceInitializer;
@@ -65,7 +66,7 @@ public class GenericOpenInRNodeModel extends AbstractRScriptingNodeModel {
 			ExecutionContext exec) throws Exception {
 		//create connection to server
     	logger.info("Creating R-connection");
-    	m_con = RUtils.createConnection();
+    	m_con = RConnectionPool.getInstance().borrow();
         
         File rWorkspaceFile = null;
         try {
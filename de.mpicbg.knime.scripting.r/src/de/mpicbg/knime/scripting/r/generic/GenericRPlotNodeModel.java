@@ -23,6 +23,7 @@ import de.mpicbg.knime.scripting.core.ScriptProvider;
 import de.mpicbg.knime.scripting.core.ScriptingModelConfig;
 import de.mpicbg.knime.scripting.core.exceptions.KnimeScriptingException;
 import de.mpicbg.knime.scripting.r.RColumnSupport;
+import de.mpicbg.knime.scripting.r.RConnectionPool;
 import de.mpicbg.knime.scripting.r.RUtils;
 import de.mpicbg.knime.scripting.r.node.snippet.RSnippetNodeModel;
 import de.mpicbg.knime.scripting.r.plots.AbstractRPlotNodeModel;
@@ -98,7 +99,7 @@ public class GenericRPlotNodeModel extends AbstractRPlotNodeModel {
         try {
 	        // 1) restore the workspace in a different server session
         	if(inData[0] instanceof RPortObject) {
-        		m_con = RUtils.createConnection();
+        		m_con = RConnectionPool.getInstance().borrow();
         		RUtils.loadGenericInputs(Collections.singletonMap(RSnippetNodeModel.R_INVAR_BASE_NAME, ((RPortObject)inData[0]).getFile()), m_con);
         	}		
         	// just needed for old dose response node
@@ -141,7 +142,7 @@ public class GenericRPlotNodeModel extends AbstractRPlotNodeModel {
             Files.copy(m_rWorkspaceFile.toPath(), f.toPath());
         }
 
-        if (m_image != null) {
+        if (m_imageBytes != null) {
         	File imageFile = new File(nodeDir, "image.bin");
 
             FileOutputStream f_out = new FileOutputStream(imageFile);
@@ -151,7 +152,7 @@ public class GenericRPlotNodeModel extends AbstractRPlotNodeModel {
 
             // Write object out to disk
 
-            obj_out.writeObject(new ImageIcon(m_image));
+            obj_out.writeObject(new ImageIcon(getImage()));
             obj_out.close();
         }
 	}
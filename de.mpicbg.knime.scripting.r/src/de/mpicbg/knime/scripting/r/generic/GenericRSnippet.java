@@ -15,6 +15,7 @@ import de.mpicbg.knime.scripting.core.exceptions.KnimeScriptingException;
 import de.mpicbg.knime.scripting.r.AbstractRScriptingNodeModel;
 import de.mpicbg.knime.scripting.r.R4KnimeBundleActivator;
 import de.mpicbg.knime.scripting.r.RColumnSupport;
+import de.mpicbg.knime.scripting.r.RConnectionPool;
 import de.mpicbg.knime.scripting.r.RUtils;
 import de.mpicbg.knime.scripting.r.node.snippet.RSnippetNodeModel;
 import de.mpicbg.knime.scripting.r.prefs.RPreferenceInitializer;
@@ -71,7 +72,7 @@ public class GenericRSnippet extends AbstractRScriptingNodeModel {
         try {
 	        // 1) restore the workspace in a different server session
 	        //pushToR(inData, connection, exec, AbstractScriptingNodeModel.CHUNK_IN_DFT);
-        	m_con = RUtils.createConnection();
+        	m_con = RConnectionPool.getInstance().borrow();
         	
         	if(inData.length > 0)
         		RUtils.loadGenericInputs(Collections.singletonMap(RSnippetNodeModel.R_INVAR_BASE_NAME, ((RPortObject)inData[0]).getFile()), m_con);
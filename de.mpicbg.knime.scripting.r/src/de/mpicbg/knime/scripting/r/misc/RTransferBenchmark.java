@@ -0,0 +1,324 @@
+package de.mpicbg.knime.scripting.r.misc;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.apache.commons.lang3.ArrayUtils;
+import org.knime.core.data.DataCell;
+import org.knime.core.data.DataType;
+import org.knime.core.data.def.DoubleCell;
+import org.knime.core.data.def.IntCell;
+import org.knime.core.data.def.StringCell;
+import org.rosuda.REngine.REXP;
+import org.rosuda.REngine.REXPDouble;
+import org.rosuda.REngine.REXPGenericVector;
+import org.rosuda.REngine.REXPInteger;
+import org.rosuda.REngine.REXPMismatchException;
+import org.rosuda.REngine.RList;
+import org.rosuda.REngine.Rserve.RConnection;
+import org.rosuda.REngine.Rserve.RserveException;
+
+import de.mpicbg.knime.scripting.r.AbstractRScriptingNodeModel.RType;
+import de.mpicbg.knime.scripting.r.data.RCommandSink;
+import de.mpicbg.knime.scripting.r.data.RDataColumn;
+import de.mpicbg.knime.scripting.r.data.RDataFrameContainer.MissingStringMode;
+import de.mpicbg.knime.scripting.r.data.RExpTransferCodec;
+import de.mpicbg.knime.scripting.r.data.RFileTransferCodec;
+import de.mpicbg.knime.scripting.r.data.RTransferCodec;
+import de.mpicbg.knime.scripting.r.port.RCompression;
+
+
+/**
+ * Manual benchmark for the KNIME >>> R push path (no JMH available in the plugin build).
+ * <pre>
+ * - 'boxed': former implementation with boxed arrays + ArrayUtils.toPrimitive
+ * - 'primitive': current {@link RDataColumn} implementation
+ * - 'factor': push time per row of nominal columns for different numbers of levels
+ * </pre>
+ * Run with argument 'push' to additionally assign the data to a local Rserve (localhost:6311).
+ * Run with argument 'workspace' to compare save / load time and file size of the workspace
+ * compression options ({@link RCompression}) on a local Rserve, for single objects (RDS) and whole workspaces.
+ * Run with argument 'codec' to compare the transfer codecs ({@link RTransferCodec}) for numeric-heavy 
+ * and string-heavy tables on a local Rserve.
+ *
+ * @author Antje Janosch
+ */
+public class RTransferBenchmark {
+
+	private static final int WARMUP = 2;
+	private static final int RUNS = 5;
+
+	public static void main(String[] args) throws RserveException, REXPMismatchException {
+		boolean push = Arrays.asList(args).contains("push");
+		boolean workspace = Arrays.asList(args).contains("workspace");
+		boolean codec = Arrays.asList(args).contains("codec");
+		RConnection connection = push || workspace || codec ? new RConnection("localhost", 6311) : null;
+
+		if(codec) {
+			RTransferCodec[] codecs = new RTransferCodec[]{new RExpTransferCodec(MissingStringMode.NA_STRING), new RFileTransferCodec()};
+			benchmarkCodecs("numeric (1000000 x 8)", createCodecColumns(1000000, 8, false), 1000000, codecs, connection);
+			benchmarkCodecs("string (1000000 x 4)", createCodecColumns(1000000, 4, true), 1000000, codecs, connection);
+			connection.close();
+			return;
+		}
+
+		if(workspace) {
+			benchmarkCompression(connection);
+			connection.close();
+			return;
+		}
+
+		// wide table
+		benchmarkPush("wide (1000 x 400)", 1000, 400, connection);
+		// tall table
+		benchmarkPush("tall (2000000 x 4)", 2000000, 4, connection);
+
+		// factor heavy table
+		for(int nLevels : new int[]{10, 100, 1000}) {
+			for(int nRows : new int[]{100000, 200000, 400000}) {
+				benchmarkFactorPush(nRows, nLevels, connection);
+			}
+		}
+
+		if(connection != null) connection.close();
+	}
+
+	/**
+	 * compare boxed and primitive push path for a table with alternating double / int columns
+	 * @param label
+	 * @param nRows
+	 * @param nCols
+	 * @param connection	might be null
+	 * @throws RserveException
+	 */
+	private static void benchmarkPush(String label, int nRows, int nCols, RConnection connection) throws RserveException {
+		DataCell[][] columns = createColumns(nRows, nCols);
+
+		for(int i = 0; i < WARMUP; i++) {
+			boxedPush(columns, nRows, connection);
+			primitivePush(columns, nRows, connection);
+		}
+
+		long boxed = 0;
+		long primitive = 0;
+		for(int i = 0; i < RUNS; i++) {
+			long start = System.nanoTime();
+			boxedPush(columns, nRows, connection);
+			boxed += System.nanoTime() - start;
+
+			start = System.nanoTime();
+			primitivePush(columns, nRows, connection);
+			primitive += System.nanoTime() - start;
+		}
+
+		System.out.println(String.format("%-25s boxed: %8.1f ms   primitive: %8.1f ms",
+				label, boxed / RUNS / 1e6, primitive / RUNS / 1e6));
+	}
+
+	/**
+	 * push a single factor column with a given number of levels
+	 * @param nRows
+	 * @param nLevels
+	 * @param connection	might be null
+	 * @throws RserveException
+	 */
+	private static void benchmarkFactorPush(int nRows, int nLevels, RConnection connection) throws RserveException {
+		Random rand = new Random(42);
+		Set<DataCell> levels = new LinkedHashSet<DataCell>();
+		for(int l = 0; l < nLevels; l++)
+			levels.add(new StringCell("plate_" + l));
+		DataCell[] levelCells = levels.toArray(new DataCell[nLevels]);
+
+		DataCell[] column = new DataCell[nRows];
+		for(int r = 0; r < nRows; r++)
+			column[r] = levelCells[rand.nextInt(nLevels)];
+
+		long total = 0;
+		for(int i = 0; i < WARMUP + RUNS; i++) {
+			long start = System.nanoTime();
+			RDataColumn col = new RDataColumn("f", RType.R_FACTOR, 0);
+			col.setLevels(levels);
+			col.initDataVector(nRows);
+			for(int r = 0; r < nRows; r++)
+				col.addData(column[r], r);
+			RList rList = new RList(nRows, true);
+			rList.put(col.getName(), col.getREXPData());
+			assign(rList, connection);
+			if(i >= WARMUP) total += System.nanoTime() - start;
+		}
+
+		System.out.println(String.format("factor (%7d rows, %4d levels) %8.1f ms   %6.1f ns/row",
+				nRows, nLevels, total / RUNS / 1e6, (double) total / RUNS / nRows));
+	}
+
+	/**
+	 * save / load a mixed data frame (1e6 rows) as RDS file and as workspace file with each compression option
+	 * @param connection
+	 * @throws RserveException
+	 * @throws REXPMismatchException
+	 */
+	private static void benchmarkCompression(RConnection connection) throws RserveException, REXPMismatchException {
+		// READABLE EXAMPLE:
+		// bench <- data.frame(x = rnorm(1e6), i = sample.int(1000, 1e6, TRUE), f = factor(...), s = sprintf(...))
+		connection.voidEval("set.seed(42); bench <- data.frame(x = rnorm(1e6), i = sample.int(1000, 1e6, TRUE), "
+				+ "f = factor(sample(paste0(\"plate_\", 1:100), 1e6, TRUE)), "
+				+ "s = sprintf(\"well_%06d\", sample.int(1e5, 1e6, TRUE)), stringsAsFactors = FALSE)");
+		connection.voidEval("bench.file <- tempfile(fileext = \".rds\")");
+		connection.voidEval("bench.ws <- tempfile(fileext = \".RData\")");
+
+		for(RCompression compression : RCompression.values()) {
+			benchmarkSave(compression.getLabel() + " (RDS)",
+					"{ con <- " + compression.getWriteConnection("bench.file") + "; saveRDS(bench, file = con); close(con) }",
+					"invisible(readRDS(bench.file))", "bench.file", connection);
+			// same code path as saving the workspace of plot nodes / 'Open in R'
+			benchmarkSave(compression.getLabel() + " (workspace)", compression.getSaveWorkspaceCall("bench.ws"),
+					"invisible(load(bench.ws, envir = new.env()))", "bench.ws", connection);
+		}
+
+		connection.voidEval("unlink(c(bench.file, bench.ws)); rm(bench, bench.file, bench.ws)");
+	}
+
+	/**
+	 * @param label
+	 * @param save		R call saving the data
+	 * @param load		R call loading the data
+	 * @param fileVar	R variable of the written file
+	 * @param connection
+	 * @throws RserveException
+	 * @throws REXPMismatchException
+	 */
+	private static void benchmarkSave(String label, String save, String load, String fileVar, RConnection connection) 
+			throws RserveException, REXPMismatchException {
+		long saveTime = 0;
+		long loadTime = 0;
+		for(int i = 0; i < WARMUP + RUNS; i++) {
+			long start = System.nanoTime();
+			connection.voidEval(save);
+			if(i >= WARMUP) saveTime += System.nanoTime() - start;
+
+			start = System.nanoTime();
+			connection.voidEval(load);
+			if(i >= WARMUP) loadTime += System.nanoTime() - start;
+		}
+		double size = connection.eval("file.size(" + fileVar + ")").asDouble();
+
+		System.out.println(String.format("%-40s save: %8.1f ms   load: %8.1f ms   size: %7.1f MB",
+				label, saveTime / RUNS / 1e6, loadTime / RUNS / 1e6, size / (1 << 20)));
+	}
+
+	/**
+	 * transfer the same columns with each codec and check the result in R
+	 * @param label
+	 * @param columns
+	 * @param nRows
+	 * @param codecs
+	 * @param connection
+	 * @throws RserveException
+	 * @throws REXPMismatchException
+	 */
+	private static void benchmarkCodecs(String label, List<RDataColumn> columns, int nRows, RTransferCodec[] codecs, 
+			RConnection connection) throws RserveException, REXPMismatchException {
+		RCommandSink sink = RCommandSink.forConnection(connection);
+		StringBuilder line = new StringBuilder(String.format("%-25s", label));
+		for(RTransferCodec codec : codecs) {
+			long total = 0;
+			for(int i = 0; i < WARMUP + RUNS; i++) {
+				long start = System.nanoTime();
+				codec.transfer("bench", columns, nRows, false, sink);
+				if(i >= WARMUP) total += System.nanoTime() - start;
+			}
+			int n = connection.eval("length(bench[[1]])").asInteger();
+			connection.voidEval("rm(bench)");
+			line.append(String.format("   %s: %8.1f ms%s", codec.getName(), total / RUNS / 1e6, n == nRows ? "" : " (FAILED)"));
+		}
+		System.out.println(line);
+	}
+
+	/**
+	 * @return filled double columns or string columns (100000 distinct values), 1% missing values
+	 */
+	private static List<RDataColumn> createCodecColumns(int nRows, int nCols, boolean strings) {
+		Random rand = new Random(42);
+		List<RDataColumn> columns = new ArrayList<RDataColumn>();
+		for(int c = 0; c < nCols; c++) {
+			RDataColumn col = new RDataColumn("c" + c, strings ? RType.R_STRING : RType.R_DOUBLE, c);
+			col.initDataVector(nRows);
+			for(int r = 0; r < nRows; r++) {
+				DataCell cell;
+				if(rand.nextInt(100) == 0)
+					cell = DataType.getMissingCell();
+				else
+					cell = strings ? new StringCell("well_" + rand.nextInt(100000)) : new DoubleCell(rand.nextDouble());
+				col.addData(cell, r);
+			}
+			columns.add(col);
+		}
+		return columns;
+	}
+
+	/**
+	 * former push path: boxed arrays which are copied to primitive arrays for REXP creation
+	 */
+	private static void boxedPush(DataCell[][] columns, int nRows, RConnection connection) throws RserveException {
+		RList rList = new RList(nRows, true);
+		for(int c = 0; c < columns.length; c++) {
+			REXP rexp;
+			if(c % 2 == 0) {
+				Double[] data = new Double[nRows];
+				for(int r = 0; r < nRows; r++)
+					data[r] = columns[c][r].isMissing() ? REXPDouble.NA : ((DoubleCell)columns[c][r]).getDoubleValue();
+				rexp = new REXPDouble(ArrayUtils.toPrimitive(data));
+			} else {
+				Integer[] data = new Integer[nRows];
+				for(int r = 0; r < nRows; r++)
+					data[r] = columns[c][r].isMissing() ? REXPInteger.NA : ((IntCell)columns[c][r]).getIntValue();
+				rexp = new REXPInteger(ArrayUtils.toPrimitive(data));
+			}
+			rList.put("c" + c, rexp);
+		}
+		assign(rList, connection);
+	}
+
+	/**
+	 * current push path via {@link RDataColumn}
+	 */
+	private static void primitivePush(DataCell[][] columns, int nRows, RConnection connection) throws RserveException {
+		RList rList = new RList(nRows, true);
+		for(int c = 0; c < columns.length; c++) {
+			RDataColumn col = new RDataColumn("c" + c, c % 2 == 0 ? RType.R_DOUBLE : RType.R_INT, c);
+			col.initDataVector(nRows);
+			for(int r = 0; r < nRows; r++)
+				col.addData(columns[c][r], r);
+			rList.put(col.getName(), col.getREXPData());
+			col.clearData();
+		}
+		assign(rList, connection);
+	}
+
+	private static void assign(RList rList, RConnection connection) throws RserveException {
+		if(connection == null) return;
+		connection.assign("bench", new REXPGenericVector(rList));
+		connection.voidEval("rm(bench)");
+	}
+
+	/**
+	 * @return column-wise KNIME cells, even columns are doubles, odd columns integers, 1% missing values
+	 */
+	private static DataCell[][] createColumns(int nRows, int nCols) {
+		Random rand = new Random(42);
+		DataCell[][] columns = new DataCell[nCols][nRows];
+		for(int c = 0; c < nCols; c++) {
+			for(int r = 0; r < nRows; r++) {
+				if(rand.nextInt(100) == 0)
+					columns[c][r] = DataType.getMissingCell();
+				else
+					columns[c][r] = c % 2 == 0 ? new DoubleCell(rand.nextDouble()) : new IntCell(rand.nextInt());
+			}
+		}
+		return columns;
+	}
+}
@@ -2,43 +2,99 @@ package de.mpicbg.knime.scripting.r.node.plot;
 
 import java.awt.Dimension;
 import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
 import java.awt.event.ComponentAdapter;
 import java.awt.event.ComponentEvent;
 import java.awt.event.KeyAdapter;
 import java.awt.event.KeyEvent;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
-import java.awt.geom.AffineTransform;
-import java.awt.image.AffineTransformOp;
+import java.awt.event.MouseWheelEvent;
 import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
 
+import javax.imageio.ImageIO;
 import javax.swing.JPanel;
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
 
+import org.knime.core.node.NodeLogger;
 import org.rosuda.REngine.Rserve.RConnection;
+import org.rosuda.REngine.Rserve.RserveException;
 
 import de.mpicbg.knime.scripting.core.ImageClipper;
+import de.mpicbg.knime.scripting.core.exceptions.KnimeScriptingException;
+import de.mpicbg.knime.scripting.r.R4KnimeBundleActivator;
+import de.mpicbg.knime.scripting.r.RConnectionPool;
 import de.mpicbg.knime.scripting.r.RUtils;
 import de.mpicbg.knime.scripting.r.plots.AbstractRPlotNodeModel;
+import de.mpicbg.knime.scripting.r.plots.RPlotCache;
+import de.mpicbg.knime.scripting.r.prefs.RPreferenceInitializer;
 
 
 /**
  * A renderer which allows to display r-plots. It automatically adapts to the panel size by rescaling the figures on
- * resize. Figure will be recreated by mouse click
+ * resize. The figure is recreated with the panel size in the background by mouse click or after resizing has stopped
+ * (if 'repaint on resize' is enabled in the R-scripting preferences).
+ * <pre>
+ * - the current image is drawn scaled (bilinear) until the recreated image is available
+ * - the image is drawn from a {@link TiledImage} (visible tiles of the nearest mipmap level only)
+ * - mouse wheel zooms at the cursor position, dragging pans the zoomed image, '0' resets the zoom
+ * - resize events are coalesced, a new request supersedes a pending or running one (its result is dropped)
+ * - the R session with the loaded workspace is kept while the view is open (call {@link #dispose()} on close)
+ * - rendered images are taken from / added to the {@link RPlotCache} shared by all plot views
+ * </pre>
  *
  * @author Holger Brandl, Antje Janosch
  */
 @SuppressWarnings("serial")
 public class RPlotCanvas extends JPanel {
 
-    private BufferedImage m_baseImage;
-    private BufferedImage m_scaledImage;
-    private AbstractRPlotNodeModel m_plotModel;
+	/** time without further resize events before the image is recreated */
+	private static final int RESIZE_DELAY_MS = 400;
 
-    // flag to mark the process of recreating the image
-    private boolean isReCreatingImage = false;
-    
-    // NOTE: Failed to trigger repainting as soon as the mouse is released after resizing
-    // instead: rescale while resizing and use single mouse click to recreate the plot
+	/** zoom factor per mouse wheel step */
+	private static final double ZOOM_STEP = 1.25;
+	private static final double MAX_ZOOM = 64;
+
+	/** R variable keeping the objects of the workspace file to restore the workspace before each rendering */
+	private static final String R_VAR_WS = ".knime.plot.ws";
+
+	private volatile BufferedImage m_baseImage;
+	private TiledImage m_tiles;
+	private AbstractRPlotNodeModel m_plotModel;
+
+	/** renders one image after the other (keeps the R session single threaded) */
+	private final ExecutorService m_renderer = Executors.newSingleThreadExecutor(r -> {
+		Thread t = new Thread(r, "R plot renderer");
+		t.setDaemon(true);
+		return t;
+	});
+	/** number of the latest render request, older requests are dropped */
+	private final AtomicLong m_request = new AtomicLong();
+	private Future<?> m_pending = null;
+	private final Timer m_resizeTimer;
+
+	/** R session with loaded workspace, only accessed by the renderer thread */
+	private RConnection m_connection = null;
+
+	/** zoom relative to the panel size (1 = whole image) and image coordinate at the upper left corner */
+	private double m_zoom = 1;
+	private double m_originX = 0;
+	private double m_originY = 0;
+	private Point m_dragStart = null;
+
+	private final NodeLogger logger = NodeLogger.getLogger(RPlotCanvas.class);
 
     /**
      * constructor
@@ -49,41 +105,62 @@ public class RPlotCanvas extends JPanel {
         setPreferredSize(new Dimension(plotModel.getDefWidth(), plotModel.getDefHeight()));
 
         this.m_plotModel = plotModel;
-        m_baseImage = plotModel.getImage();
-        
-        // if component resized
+        setImage(plotModel.getImage());
+
+        m_resizeTimer = new Timer(RESIZE_DELAY_MS, new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				requestImage();
+			}
+		});
+        m_resizeTimer.setRepeats(false);
+
+        // if component resized: draw scaled image, recreate after resizing has stopped (if enabled in the preferences)
         addComponentListener(new ComponentAdapter() {
             @Override
             public void componentResized(ComponentEvent e) {
-            	           	
                 if (!isVisible()) {
                     return;
                 }
-                
-                // scale image
-                AffineTransform at = AffineTransform.getScaleInstance((double) getWidth() / m_baseImage.getWidth(null),
-                		(double) getHeight() / m_baseImage.getHeight(null));
-
-                AffineTransformOp op = new AffineTransformOp(at, AffineTransformOp.TYPE_BILINEAR);
-                m_scaledImage = op.filter(m_baseImage, null);
-
+                if (R4KnimeBundleActivator.getDefault().getPreferenceStore().getBoolean(RPreferenceInitializer.REPAINT_ON_RESIZE))
+                	m_resizeTimer.restart();
+                repaint();
             }
         });
 
-        // single click
-        addMouseListener(new MouseAdapter() {
+        // single click => recreate image, drag => pan, wheel => zoom
+        MouseAdapter mouse = new MouseAdapter() {
             @Override
             public void mouseClicked(MouseEvent mouseEvent) {
-                if (!isReCreatingImage) {
-                    isReCreatingImage = true;
-                    recreateImage();
-                    isReCreatingImage = false;
+            	m_resizeTimer.stop();
+            	requestImage();
+            }
 
-                    invalidate();
-                    repaint();
-                }
+            @Override
+            public void mousePressed(MouseEvent e) {
+            	m_dragStart = e.getPoint();
+            }
+
+            @Override
+            public void mouseDragged(MouseEvent e) {
+            	if(m_dragStart == null) return;
+            	pan(m_dragStart.x - e.getX(), m_dragStart.y - e.getY());
+            	m_dragStart = e.getPoint();
             }
-        });
+
+            @Override
+            public void mouseReleased(MouseEvent e) {
+            	m_dragStart = null;
+            }
+
+            @Override
+            public void mouseWheelMoved(MouseWheelEvent e) {
+            	zoom(Math.pow(ZOOM_STEP, -e.getPreciseWheelRotation()), e.getX(), e.getY());
+            }
+        };
+        addMouseListener(mouse);
+        addMouseMotionListener(mouse);
+        addMouseWheelListener(mouse);
 
         // keys: copy => copy to clipboard
         addKeyListener(new KeyAdapter() {
@@ -91,6 +168,12 @@ public class RPlotCanvas extends JPanel {
             public void keyPressed(KeyEvent e) {
                 if (e.getKeyCode() == KeyEvent.VK_C && e.isMetaDown())
                     new ImageClipper().copyToClipboard(RPlotCanvas.this.m_baseImage);
+                if (e.getKeyCode() == KeyEvent.VK_0 || e.getKeyCode() == KeyEvent.VK_NUMPAD0) {
+                	m_zoom = 1;
+                	m_originX = 0;
+                	m_originY = 0;
+                	repaint();
+                }
 
                 //nice idea: save image from view
                 //if (e.getKeyCode() == KeyEvent.VK_S && e.isControlDown())
@@ -101,34 +184,211 @@ public class RPlotCanvas extends JPanel {
     }
 
     /**
-     * runs R code again to recreate the image with the panel dimensions
+     * requests the image to be recreated with the current panel dimensions in the background;
+     * supersedes previous requests
      */
-    public void recreateImage() {
-        RConnection connection = null;
-        try {
-            connection = RUtils.createConnection();
+    public synchronized void requestImage() {
+    	final int width = getWidth();
+    	final int height = getHeight();
+    	if(width <= 0 || height <= 0 || m_renderer.isShutdown()) return;
 
-            RUtils.loadWorkspace(m_plotModel.getWSFile(), connection);
-            String script = m_plotModel.prepareScript();
-            BufferedImage image = AbstractRPlotNodeModel.createImage(connection, script, getWidth(), getHeight(), m_plotModel.getDevice());
+    	final long request = m_request.incrementAndGet();
+    	// not yet started renderings are cancelled, running ones are dropped when finished
+    	if(m_pending != null)
+    		m_pending.cancel(false);
+    	m_pending = m_renderer.submit(() -> {
+    		if(request != m_request.get()) return;
+    		try {
+    			final BufferedImage image = renderImage(width, height);
+    			final TiledImage tiles = new TiledImage(image);
+    			SwingUtilities.invokeLater(() -> {
+    				if(request != m_request.get()) return;
+    				setImage(image, tiles);
+    			});
+    			// drawn from level 0 until the pyramid is available
+    			tiles.buildLevels();
+    			repaint();
+    		} catch (KnimeScriptingException | RserveException e) {
+    			logger.warn("Failed to recreate the plot: " + e.getMessage());
+    			releaseConnection(false);
+    		}
+    	});
+    }
 
-            connection.close();
+    /**
+     * show a new image, the mipmap pyramid is built in the background (event dispatch thread only)
+     * @param image	might be null
+     */
+    private void setImage(BufferedImage image) {
+    	final TiledImage tiles = image != null ? new TiledImage(image) : null;
+    	setImage(image, tiles);
+    	if(tiles != null && !m_renderer.isShutdown()) {
+    		m_renderer.execute(() -> {
+    			tiles.buildLevels();
+    			repaint();
+    		});
+    	}
+    }
 
-            m_baseImage = image;
-            m_scaledImage = null;
+    /**
+     * show a new image (event dispatch thread only)
+     * @param image
+     * @param tiles	tiled model of the image
+     */
+    private void setImage(BufferedImage image, TiledImage tiles) {
+    	m_baseImage = image;
+    	m_tiles = tiles;
+    	repaint();
+    }
 
-        } catch (Exception e1) {
-            if (connection != null) {
-                connection.close();
-            }
-            throw new RuntimeException(e1);
-        }
+    /**
+     * @param dx	screen pixels
+     * @param dy	screen pixels
+     */
+    private void pan(int dx, int dy) {
+    	if(m_tiles == null) return;
+    	m_originX += dx / getScaleX();
+    	m_originY += dy / getScaleY();
+    	clampOrigin();
+    	repaint();
+    }
+
+    /**
+     * zoom while keeping the image position under the cursor
+     * @param factor
+     * @param x		cursor position
+     * @param y		cursor position
+     */
+    private void zoom(double factor, int x, int y) {
+    	if(m_tiles == null) return;
+    	double imageX = m_originX + x / getScaleX();
+    	double imageY = m_originY + y / getScaleY();
+    	m_zoom = Math.max(1, Math.min(MAX_ZOOM, m_zoom * factor));
+    	m_originX = imageX - x / getScaleX();
+    	m_originY = imageY - y / getScaleY();
+    	clampOrigin();
+    	repaint();
+    }
+
+    /**
+     * keep the view within the image
+     */
+    private void clampOrigin() {
+    	m_originX = Math.max(0, Math.min(m_originX, m_tiles.getWidth() - getWidth() / getScaleX()));
+    	m_originY = Math.max(0, Math.min(m_originY, m_tiles.getHeight() - getHeight() / getScaleY()));
+    }
+
+    /**
+     * @return screen pixels per image pixel (horizontal)
+     */
+    private double getScaleX() {
+    	return (double) getWidth() / m_tiles.getWidth() * m_zoom;
+    }
+
+    /**
+     * @return screen pixels per image pixel (vertical)
+     */
+    private double getScaleY() {
+    	return (double) getHeight() / m_tiles.getHeight() * m_zoom;
+    }
+
+    /**
+     * renders the plot in the warm R session (renderer thread only)
+     * @param width
+     * @param height
+     * @return image
+     * @throws KnimeScriptingException
+     * @throws RserveException
+     */
+    private BufferedImage renderImage(int width, int height) throws KnimeScriptingException, RserveException {
+    	String script = m_plotModel.prepareScript();
+    	String device = m_plotModel.getDevice();
+
+    	// image rendered before (by any plot view)
+    	String key = null;
+    	if(RPlotCache.isEnabled()) {
+    		m_plotModel.addImageToCache();
+    		key = RPlotCache.getInstance().createKey(script, m_plotModel.getWSFile(), device, width, height);
+    		byte[] cached = RPlotCache.getInstance().get(key);
+    		if(cached != null)
+    			return decodeImage(cached);
+    	}
+
+    	if(m_connection == null) {
+    		RConnection connection = RConnectionPool.getInstance().borrow();
+    		try {
+    			RUtils.loadWorkspace(m_plotModel.getWSFile(), connection);
+    			connection.voidEval(R_VAR_WS + " <- as.list(globalenv(), all.names = TRUE)");
+    		} catch (KnimeScriptingException | RserveException e) {
+    			RConnectionPool.getInstance().invalidate(connection);
+    			throw e;
+    		}
+    		m_connection = connection;
+    	} else {
+    		// the previous rendering might have changed the workspace
+    		// READABLE EXAMPLE:
+    		// rm(list = setdiff(ls(globalenv(), all.names = TRUE), ".knime.plot.ws")); invisible(list2env(.knime.plot.ws, globalenv()))
+    		m_connection.voidEval("rm(list = setdiff(ls(globalenv(), all.names = TRUE), \"" + R_VAR_WS + "\"), envir = globalenv()); "
+    				+ "invisible(list2env(" + R_VAR_WS + ", globalenv()))");
+    	}
+    	byte[] image = AbstractRPlotNodeModel.createImageBytes(m_connection, script, width, height, device);
+    	if(key != null)
+    		RPlotCache.getInstance().put(key, image);
+    	return decodeImage(image);
+    }
+
+    /**
+     * @param image	image file content
+     * @return decoded image
+     * @throws KnimeScriptingException
+     */
+    private static BufferedImage decodeImage(byte[] image) throws KnimeScriptingException {
+    	try {
+    		return ImageIO.read(new ByteArrayInputStream(image));
+    	} catch (IOException e) {
+    		throw new KnimeScriptingException(e.getMessage());
+    	}
+    }
+
+    /**
+     * hand back the R session (renderer thread only)
+     * @param success	FALSE if the session is in an unknown state
+     */
+    private void releaseConnection(boolean success) {
+    	if(m_connection == null) return;
+    	if(success)
+    		RConnectionPool.getInstance().release(m_connection);
+    	else
+    		RConnectionPool.getInstance().invalidate(m_connection);
+    	m_connection = null;
+    }
+
+    /**
+     * stops rendering and hands back the R session; to be called when the view is closed
+     */
+    public synchronized void dispose() {
+    	if(m_renderer.isShutdown()) return;
+    	m_resizeTimer.stop();
+    	m_request.incrementAndGet();
+    	if(m_pending != null)
+    		m_pending.cancel(false);
+    	m_renderer.execute(() -> releaseConnection(true));
+    	m_renderer.shutdown();
     }
 
     /**
-     * draw image
+     * draw visible part of the image (scaled to the panel size and zoomed)
      */
     public void paint(Graphics g) {
-        g.drawImage(m_scaledImage != null ? m_scaledImage : m_baseImage, 0, 0, null);
+    	TiledImage tiles = m_tiles;
+    	if(tiles == null) return;
+    	if(getWidth() <= 0 || getHeight() <= 0) return;
+    	Graphics2D g2 = (Graphics2D) g;
+    	Rectangle visible = g2.getClipBounds();
+    	if(visible == null) visible = new Rectangle(0, 0, getWidth(), getHeight());
+    	// panel size might have changed since the last zoom/pan
+    	clampOrigin();
+    	g2.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+    	tiles.draw(g2, m_originX, m_originY, getScaleX(), getScaleY(), visible);
     }
 }
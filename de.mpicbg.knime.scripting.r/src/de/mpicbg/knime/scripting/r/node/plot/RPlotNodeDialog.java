@@ -75,6 +75,11 @@ public class RPlotNodeDialog extends ScriptingNodeDialog {
 		addDialogComponent(new DialogComponentBoolean(overwriteSM, "Overwrite existing file"));
 		setHorizontalPlacement(false);
 		closeCurrentGroup();
+
+		createNewGroup("Batch rendering (script is evaluated once)");
+		addDialogComponent(new DialogComponentString(AbstractRPlotNodeModel.createVariantsSM(), "Additional sizes (e.g. 1600x1200 png, 400x300 jpeg)", false, 30));
+		addDialogComponent(new DialogComponentBoolean(AbstractRPlotNodeModel.createAllPagesSM(), "Render all pages"));
+		closeCurrentGroup();
 	}
 
 	@Override
@@ -12,6 +12,9 @@ import de.mpicbg.knime.scripting.r.plots.AbstractRPlotNodeModel;
  */
 public class RPlotNodeView<RPlotModel extends AbstractRPlotNodeModel> extends NodeView<RPlotModel> {
 
+	/** canvas keeps an R session while the view is open */
+	private RPlotCanvas m_canvas = null;
+
     /**
      * Creates a new view.
      *
@@ -26,13 +29,21 @@ public class RPlotNodeView<RPlotModel extends AbstractRPlotNodeModel> extends No
 
 
     private void updateView(RPlotModel nodeModel) {
+    	disposeCanvas();
         if (nodeModel.getWSFile() == null) {
             nodeModel.setPlotWarning();
             return;
         }
 
-        RPlotCanvas rPlotCanvas = new RPlotCanvas(nodeModel);
-        setComponent(rPlotCanvas);
+        m_canvas = new RPlotCanvas(nodeModel);
+        setComponent(m_canvas);
+    }
+
+    private void disposeCanvas() {
+    	if(m_canvas != null) {
+    		m_canvas.dispose();
+    		m_canvas = null;
+    	}
     }
 
 
@@ -61,6 +72,7 @@ public class RPlotNodeView<RPlotModel extends AbstractRPlotNodeModel> extends No
     protected void onClose() {
 
         //  things to do when closing the view
+    	disposeCanvas();
     }
 
 
@@ -0,0 +1,137 @@
+package de.mpicbg.knime.scripting.r.node.plot;
+
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * <p>
+ * tiled image model with mipmap pyramid for drawing large plots
+ * </p>
+ * <pre>
+ * - level 0 is the image itself, each further level has half the size of the previous one
+ *   (down to {@link #MIN_LEVEL_SIZE} pixels)
+ * - levels are created once by {@link #buildLevels()} (background thread), drawing uses the
+ *   finest level which is not finer than needed, or the next finer level which is already available
+ * - only the tiles intersecting the visible area are drawn
+ * </pre>
+ *
+ * @author Antje Janosch
+ *
+ */
+public class TiledImage {
+
+	/** tile edge length in pixels */
+	private static final int TILE_SIZE = 512;
+
+	/** no further levels if the larger edge is smaller than this */
+	private static final int MIN_LEVEL_SIZE = 256;
+
+	private final int m_width;
+	private final int m_height;
+
+	/** level => image, null if not yet built */
+	private final AtomicReferenceArray<BufferedImage> m_levels;
+
+	/**
+	 * constructor
+	 * @param image	level 0
+	 */
+	public TiledImage(BufferedImage image) {
+		m_width = image.getWidth();
+		m_height = image.getHeight();
+
+		int nLevels = 1;
+		int size = Math.max(m_width, m_height);
+		while((size >>= 1) >= MIN_LEVEL_SIZE)
+			nLevels++;
+		m_levels = new AtomicReferenceArray<BufferedImage>(nLevels);
+		m_levels.set(0, image);
+	}
+
+	public int getWidth() {
+		return m_width;
+	}
+
+	public int getHeight() {
+		return m_height;
+	}
+
+	/**
+	 * creates all levels of the pyramid (each from the previous one)
+	 */
+	public void buildLevels() {
+		for(int level = 1; level < m_levels.length(); level++) {
+			if(m_levels.get(level) != null) continue;
+			BufferedImage src = m_levels.get(level - 1);
+			int w = Math.max(1, src.getWidth() / 2);
+			int h = Math.max(1, src.getHeight() / 2);
+			// keep transparency (e.g. png plots with transparent background)
+			int type = src.getColorModel().hasAlpha() ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB;
+			BufferedImage dst = new BufferedImage(w, h, type);
+			Graphics2D g = dst.createGraphics();
+			g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+			g.drawImage(src, 0, 0, w, h, null);
+			g.dispose();
+			m_levels.set(level, dst);
+		}
+	}
+
+	/**
+	 * draws the visible part of the image; screen = (image - origin) * scale
+	 * @param g
+	 * @param originX	image coordinate at the left border of the view
+	 * @param originY	image coordinate at the top border of the view
+	 * @param scaleX	screen pixels per image pixel
+	 * @param scaleY	screen pixels per image pixel
+	 * @param visible	visible area in screen coordinates
+	 */
+	public void draw(Graphics2D g, double originX, double originY, double scaleX, double scaleY, Rectangle visible) {
+		BufferedImage image = getLevel(Math.min(scaleX, scaleY));
+		double fx = (double) m_width / image.getWidth();
+		double fy = (double) m_height / image.getHeight();
+
+		// visible area in level coordinates
+		double lx0 = (originX + visible.x / scaleX) / fx;
+		double ly0 = (originY + visible.y / scaleY) / fy;
+		double lx1 = (originX + (visible.x + visible.width) / scaleX) / fx;
+		double ly1 = (originY + (visible.y + visible.height) / scaleY) / fy;
+
+		int tx0 = Math.max(0, (int) Math.floor(lx0 / TILE_SIZE));
+		int ty0 = Math.max(0, (int) Math.floor(ly0 / TILE_SIZE));
+		int tx1 = Math.min((image.getWidth() - 1) / TILE_SIZE, (int) Math.floor(lx1 / TILE_SIZE));
+		int ty1 = Math.min((image.getHeight() - 1) / TILE_SIZE, (int) Math.floor(ly1 / TILE_SIZE));
+
+		for(int ty = ty0; ty <= ty1; ty++) {
+			int sy0 = ty * TILE_SIZE;
+			int sy1 = Math.min(sy0 + TILE_SIZE, image.getHeight());
+			// neighboring tiles share the rounded screen border (no gaps)
+			int dy0 = (int) Math.round((sy0 * fy - originY) * scaleY);
+			int dy1 = (int) Math.round((sy1 * fy - originY) * scaleY);
+			for(int tx = tx0; tx <= tx1; tx++) {
+				int sx0 = tx * TILE_SIZE;
+				int sx1 = Math.min(sx0 + TILE_SIZE, image.getWidth());
+				int dx0 = (int) Math.round((sx0 * fx - originX) * scaleX);
+				int dx1 = (int) Math.round((sx1 * fx - originX) * scaleX);
+				g.drawImage(image, dx0, dy0, dx1, dy1, sx0, sy0, sx1, sy1, null);
+			}
+		}
+	}
+
+	/**
+	 * @param scale	screen pixels per image pixel
+	 * @return the coarsest level with at least the needed resolution, a finer level if not yet built
+	 */
+	private BufferedImage getLevel(double scale) {
+		int level = 0;
+		while(level + 1 < m_levels.length() && scale * (1 << (level + 1)) <= 1)
+			level++;
+		for(; level > 0; level--) {
+			BufferedImage image = m_levels.get(level);
+			if(image != null) return image;
+		}
+		return m_levels.get(0);
+	}
+}
@@ -2,7 +2,20 @@ package de.mpicbg.knime.scripting.r.node.snippet;
 
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Arrays;
 
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
+
+import org.knime.core.data.DataValue;
+import org.knime.core.node.defaultnodesettings.DialogComponentBoolean;
+import org.knime.core.node.defaultnodesettings.DialogComponentColumnFilter;
+import org.knime.core.node.defaultnodesettings.DialogComponentNumber;
+import org.knime.core.node.defaultnodesettings.DialogComponentStringSelection;
+import org.knime.core.node.defaultnodesettings.SettingsModelBoolean;
+import org.knime.core.node.defaultnodesettings.SettingsModelFilterString;
+import org.knime.core.node.defaultnodesettings.SettingsModelIntegerBounded;
+import org.knime.core.node.defaultnodesettings.SettingsModelString;
 import org.osgi.framework.Bundle;
 import org.osgi.framework.FrameworkUtil;
 
@@ -29,6 +42,21 @@ public class RSnippetNodeDialog extends ScriptingNodeDialog {
     public RSnippetNodeDialog(String defaultScript, boolean useTemplateRepository) {
         super(defaultScript, new RColumnSupport(), useTemplateRepository);
     }
+
+    /**
+     * configuration dialog with additional group-by and parallel execution tabs (single input table)
+     *
+     * @param defaultScript
+     * @param useTemplateRepository
+     * @param useGroupBy
+     */
+    public RSnippetNodeDialog(String defaultScript, boolean useTemplateRepository, boolean useGroupBy) {
+        this(defaultScript, useTemplateRepository);
+        if(useGroupBy) {
+        	createGroupByTab();
+        	createParallelTab();
+        }
+    }
     
     /**
      * configuration dialog for generic nodes
@@ -44,6 +72,55 @@ public class RSnippetNodeDialog extends ScriptingNodeDialog {
 		super(defaultScript, new RColumnSupport(), useTemplateRepository, useOpenIn, useChunkSettings);
 	}
 
+    /**
+     * tab to run the script per group of rows
+     */
+    @SuppressWarnings("unchecked")
+	private void createGroupByTab() {
+    	final SettingsModelBoolean groupBySM = RSnippetNodeModel.createGroupBySM();
+    	// grouping columns are also used to partition the input for parallel execution
+    	final SettingsModelFilterString columnsSM = RSnippetNodeModel.createGroupColumnsSM();
+    	final SettingsModelString errorsSM = RSnippetNodeModel.createGroupErrorsSM();
+
+    	createNewTab("Group-by");
+    	groupBySM.addChangeListener(new ChangeListener() {
+			@Override
+			public void stateChanged(ChangeEvent e) {
+				errorsSM.setEnabled(groupBySM.getBooleanValue());
+			}
+		});
+    	addDialogComponent(new DialogComponentBoolean(groupBySM, "Run script per group (input table is pushed once)"));
+    	addDialogComponent(new DialogComponentColumnFilter(columnsSM, 0, false, DataValue.class));
+    	addDialogComponent(new DialogComponentStringSelection(errorsSM, "Script fails for a group", 
+    			Arrays.asList(RSnippetNodeModel.GROUP_ERRORS_FAIL, RSnippetNodeModel.GROUP_ERRORS_SKIP)));
+    	errorsSM.setEnabled(groupBySM.getBooleanValue());
+    }
+
+    /**
+     * tab to run the script on several R sessions concurrently
+     */
+    private void createParallelTab() {
+    	final SettingsModelIntegerBounded parallelSM = RSnippetNodeModel.createParallelSM();
+    	final SettingsModelString partitionSM = RSnippetNodeModel.createPartitionSM();
+    	final SettingsModelBoolean orderedSM = RSnippetNodeModel.createOrderedSM();
+
+    	createNewTab("Parallel Execution");
+    	parallelSM.addChangeListener(new ChangeListener() {
+			@Override
+			public void stateChanged(ChangeEvent e) {
+				boolean enabled = parallelSM.getIntValue() > 1;
+				partitionSM.setEnabled(enabled);
+				orderedSM.setEnabled(enabled);
+			}
+		});
+    	addDialogComponent(new DialogComponentNumber(parallelSM, "Number of R sessions (1 = no parallel execution)", 1));
+    	addDialogComponent(new DialogComponentStringSelection(partitionSM, "Partition input by", 
+    			Arrays.asList(RSnippetNodeModel.PARTITION_ROWS, RSnippetNodeModel.PARTITION_GROUPS)));
+    	addDialogComponent(new DialogComponentBoolean(orderedSM, "Keep input order (otherwise partitions are appended as they finish)"));
+    	partitionSM.setEnabled(parallelSM.getIntValue() > 1);
+    	orderedSM.setEnabled(parallelSM.getIntValue() > 1);
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -1,24 +1,107 @@
 package de.mpicbg.knime.scripting.r.node.snippet;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.knime.core.data.DataCell;
+import org.knime.core.data.DataColumnDomain;
+import org.knime.core.data.DataColumnDomainCreator;
+import org.knime.core.data.DataColumnSpec;
+import org.knime.core.data.DataColumnSpecCreator;
+import org.knime.core.data.DataRow;
+import org.knime.core.data.DataTableSpec;
+import org.knime.core.data.DataType;
+import org.knime.core.data.RowKey;
+import org.knime.core.data.def.DefaultRow;
+import org.knime.core.node.BufferedDataContainer;
+import org.knime.core.node.BufferedDataTable;
+import org.knime.core.node.CanceledExecutionException;
 import org.knime.core.node.ExecutionContext;
+import org.knime.core.node.ExecutionMonitor;
+import org.knime.core.node.InvalidSettingsException;
+import org.knime.core.node.defaultnodesettings.SettingsModelBoolean;
+import org.knime.core.node.defaultnodesettings.SettingsModelFilterString;
+import org.knime.core.node.defaultnodesettings.SettingsModelIntegerBounded;
+import org.knime.core.node.defaultnodesettings.SettingsModelString;
 import org.knime.core.node.port.PortObject;
+import org.knime.core.node.port.PortObjectSpec;
+import org.knime.core.node.workflow.FlowVariable;
+import org.rosuda.REngine.REXP;
+import org.rosuda.REngine.REXPMismatchException;
+import org.rosuda.REngine.REXPString;
+import org.rosuda.REngine.Rserve.RConnection;
+import org.rosuda.REngine.Rserve.RserveException;
 
 import de.mpicbg.knime.scripting.core.ScriptingModelConfig;
+import de.mpicbg.knime.scripting.core.exceptions.KnimeScriptingException;
 import de.mpicbg.knime.scripting.r.AbstractRScriptingNodeModel;
 import de.mpicbg.knime.scripting.r.RColumnSupport;
+import de.mpicbg.knime.scripting.r.RConnectionPool;
+import de.mpicbg.knime.scripting.r.RScriptCache;
 
 
 /**
  * This is the model implementation of RSnippet.
+ * <p>
+ * group-by mode: the input table is pushed once, the script runs once per group of rows
+ * (same values in the grouping columns) within R and the results are concatenated
+ * </p>
+ * <p>
+ * parallel execution: the input table is split into row blocks or sets of groups, the script
+ * runs on several R sessions concurrently and the results are merged into one table
+ * </p>
  *
  * @author Holger Brandl, Antje Janosch (MPI-CBG)
  */
 public class RSnippetNodeModel extends AbstractRScriptingNodeModel {
-    
+
+	/** settings: run the script per group */
+	public static final String CFG_GROUP_BY = "group.by";
+	public static final boolean CFG_GROUP_BY_DFT = false;
+
+	/** settings: grouping columns */
+	public static final String CFG_GROUP_COLUMNS = "group.by.columns";
+
+	/** settings: handling of groups for which the script fails */
+	public static final String CFG_GROUP_ERRORS = "group.by.errors";
+	public static final String GROUP_ERRORS_FAIL = "Fail node";
+	public static final String GROUP_ERRORS_SKIP = "Skip group and warn";
+	public static final String CFG_GROUP_ERRORS_DFT = GROUP_ERRORS_FAIL;
+
+	/** settings: number of R sessions to run the script concurrently (1 = no parallel execution) */
+	public static final String CFG_PARALLEL = "parallel.sessions";
+	public static final int CFG_PARALLEL_DFT = 1;
+	public static final int CFG_PARALLEL_MAX = 64;
+
+	/** settings: how to split the input table for parallel execution */
+	public static final String CFG_PARTITION = "parallel.partition";
+	public static final String PARTITION_ROWS = "Row blocks";
+	public static final String PARTITION_GROUPS = "Grouping columns";
+	public static final String CFG_PARTITION_DFT = PARTITION_ROWS;
+
+	/** settings: merge partition results in input order (otherwise in order of completion) */
+	public static final String CFG_ORDERED = "parallel.ordered";
+	public static final boolean CFG_ORDERED_DFT = true;
+
     private static final ScriptingModelConfig nodeModelCfg = new ScriptingModelConfig(
     			createPorts(1), 		// 1 input table
     			createPorts(1), 		// 1 output table
-    			new RColumnSupport(), 	
+    			new RColumnSupport(),
     			true, 					// script
     			true,					// provide openIn
     			true);					// use chunks
@@ -30,10 +113,65 @@ public class RSnippetNodeModel extends AbstractRScriptingNodeModel {
      */
     public RSnippetNodeModel(ScriptingModelConfig cfg) {
         super(cfg);
+
+        this.addModelSetting(CFG_GROUP_BY, createGroupBySM());
+        this.addModelSetting(CFG_GROUP_COLUMNS, createGroupColumnsSM());
+        this.addModelSetting(CFG_GROUP_ERRORS, createGroupErrorsSM());
+        this.addModelSetting(CFG_PARALLEL, createParallelSM());
+        this.addModelSetting(CFG_PARTITION, createPartitionSM());
+        this.addModelSetting(CFG_ORDERED, createOrderedSM());
     }
 
 	public RSnippetNodeModel() {
-		super(nodeModelCfg);
+		this(nodeModelCfg);
+	}
+
+	/**
+	 * create settings model: run script per group
+	 * @return
+	 */
+	public static SettingsModelBoolean createGroupBySM() {
+		return new SettingsModelBoolean(CFG_GROUP_BY, CFG_GROUP_BY_DFT);
+	}
+
+	/**
+	 * create settings model: grouping columns
+	 * @return
+	 */
+	public static SettingsModelFilterString createGroupColumnsSM() {
+		return new SettingsModelFilterString(CFG_GROUP_COLUMNS);
+	}
+
+	/**
+	 * create settings model: handling of failing groups
+	 * @return
+	 */
+	public static SettingsModelString createGroupErrorsSM() {
+		return new SettingsModelString(CFG_GROUP_ERRORS, CFG_GROUP_ERRORS_DFT);
+	}
+
+	/**
+	 * create settings model: number of concurrent R sessions
+	 * @return
+	 */
+	public static SettingsModelIntegerBounded createParallelSM() {
+		return new SettingsModelIntegerBounded(CFG_PARALLEL, CFG_PARALLEL_DFT, 1, CFG_PARALLEL_MAX);
+	}
+
+	/**
+	 * create settings model: partition strategy
+	 * @return
+	 */
+	public static SettingsModelString createPartitionSM() {
+		return new SettingsModelString(CFG_PARTITION, CFG_PARTITION_DFT);
+	}
+
+	/**
+	 * create settings model: deterministic output order
+	 * @return
+	 */
+	public static SettingsModelBoolean createOrderedSM() {
+		return new SettingsModelBoolean(CFG_ORDERED, CFG_ORDERED_DFT);
 	}
 
 	/**
@@ -47,19 +185,481 @@ public class RSnippetNodeModel extends AbstractRScriptingNodeModel {
     		return super.getDefaultScript(CFG_SCRIPT_DFT);
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected PortObjectSpec[] configure(PortObjectSpec[] inSpecs) throws InvalidSettingsException {
+    	if(isGroupBy() || (getParallelism() > 1 && isPartitionByGroups())) {
+    		List<String> groupColumns = getGroupColumns();
+    		if(groupColumns.isEmpty())
+    			throw new InvalidSettingsException("Group-by mode / partitioning: no grouping column selected");
+    		if(inSpecs[0] != null)
+    			for(String col : groupColumns)
+    				if(!((DataTableSpec) inSpecs[0]).containsName(col))
+    					throw new InvalidSettingsException("Group-by mode / partitioning: grouping column '" + col + "' is not available");
+    	}
+    	return super.configure(inSpecs);
+    }
+
     /**
      * {@inheritDoc}
      */
 	@Override
 	protected PortObject[] executeImpl(PortObject[] inData,
 			ExecutionContext exec) throws Exception {
-		
+
+		if(getParallelism() > 1)
+			return new PortObject[]{executeInParallel((BufferedDataTable) inData[0], exec)};
+
 		super.executeImpl(inData, exec);
-		super.runScript(exec);
+		if(isGroupBy())
+			runScriptPerGroup(exec);
+		else
+			super.runScript(exec);
 		PortObject[] outData = super.pullOutputFromR(exec);
-   
+
         return outData;
     }
-	
-}
 
+	/**
+	 * @return TRUE if the script should be run per group (single input table only)
+	 */
+	protected boolean isGroupBy() {
+		return getNrInPorts() == 1 && ((SettingsModelBoolean) getModelSetting(CFG_GROUP_BY)).getBooleanValue();
+	}
+
+	/**
+	 * @return number of R sessions to run the script concurrently (single input table only)
+	 */
+	protected int getParallelism() {
+		if(getNrInPorts() != 1) return 1;
+		return ((SettingsModelIntegerBounded) getModelSetting(CFG_PARALLEL)).getIntValue();
+	}
+
+	/**
+	 * @return TRUE if partitions for parallel execution are created from groups (otherwise from row blocks);
+	 * always in group-by mode (a group must not be split across sessions)
+	 */
+	protected boolean isPartitionByGroups() {
+		return isGroupBy() || ((SettingsModelString) getModelSetting(CFG_PARTITION)).getStringValue().equals(PARTITION_GROUPS);
+	}
+
+	/**
+	 * @return names of the grouping columns
+	 */
+	protected List<String> getGroupColumns() {
+		return ((SettingsModelFilterString) getModelSetting(CFG_GROUP_COLUMNS)).getIncludeList();
+	}
+
+	/**
+	 * runs the script once per group of the input table within R (single call),
+	 * the results of all groups are combined into one data frame
+	 * <pre>
+	 * - groups are processed in order of their first occurrence in the input table
+	 * - each run sees the rows of its group as input, the script is evaluated in a new environment
+	 * - grouping columns are added to group results which do not contain them
+	 * </pre>
+	 * NOTE: the 'evaluate' package is not used in group-by mode
+	 * @param exec
+	 * @throws KnimeScriptingException
+	 */
+	protected void runScriptPerGroup(ExecutionMonitor exec) throws KnimeScriptingException {
+
+		assert m_con != null;
+
+		exec.setMessage("Evaluate R-script per group (cannot be cancelled)");
+
+		String script = prepareScript();
+		List<String> groupColumns = getGroupColumns();
+		boolean skipErrors = ((SettingsModelString) getModelSetting(CFG_GROUP_ERRORS)).getStringValue().equals(GROUP_ERRORS_SKIP);
+
+		try {
+			// parses and caches the script in the R session
+			parseScript(m_con, script);
+		} catch (RserveException | KnimeScriptingException | REXPMismatchException e) {
+			closeRConnection();
+			throw new KnimeScriptingException("Failed to parse the script:\n" + e.getMessage());
+		}
+
+		try {
+			String[] failed = evalScriptPerGroup(m_con, script, groupColumns, skipErrors);
+			if(failed.length > 0)
+				setWarningMessage("R-script failed for " + failed.length + " group(s), results are missing. First error:\n" + failed[0]);
+		} catch (RserveException | REXPMismatchException | KnimeScriptingException e) {
+			closeRConnection();
+			throw new KnimeScriptingException("Failed to evaluate the script:\n" + e.getMessage());
+		}
+	}
+
+	/**
+	 * runs the parsed script (see {@link #parseScript(RConnection, String)}) per group
+	 * @param connection
+	 * @param script		the parsed script
+	 * @param groupColumns
+	 * @param skipErrors	FALSE to stop at the first failing group
+	 * @return error messages of skipped groups
+	 * @throws RserveException
+	 * @throws REXPMismatchException
+	 * @throws KnimeScriptingException	the script failed (for a group)
+	 */
+	private static String[] evalScriptPerGroup(RConnection connection, String script, List<String> groupColumns, boolean skipErrors) 
+			throws RserveException, REXPMismatchException, KnimeScriptingException {
+		connection.assign(".knime.group.columns", new REXPString(groupColumns.toArray(new String[groupColumns.size()])));
+		REXP out = connection.eval(RScriptCache.getTryCall(createGroupByCall(R_INVAR_BASE_NAME, R_OUTVAR_BASE_NAME, RScriptCache.getKey(script), skipErrors)));
+		if(out.inherits("try-error"))
+			throw new KnimeScriptingException("Error : " + out.asString());
+		return out.asStrings();
+	}
+
+	/**
+	 * READABLE EXAMPLE:
+	 * <pre>
+	 * local({
+	 *   key <- do.call(paste, c(lapply(kIn[.knime.group.columns], function(x) as.integer(addNA(factor(x), ifany = TRUE))), sep = "\r"))
+	 *   groups <- split(seq_len(nrow(kIn)), factor(key, levels = unique(key)))
+	 *   res <- lapply(groups, function(idx) {
+	 *     env <- new.env(parent = globalenv()); env$kIn <- kIn[idx, , drop = FALSE]
+	 *     .knime.run(get(".knime.script.<hash>", envir = as.environment(".knime.cache")), env); env$rOut })
+	 *   rOut <<- do.call(rbind, res) })
+	 * </pre>
+	 * @param inName		R variable name of the input table
+	 * @param outName		R variable name of the result
+	 * @param scriptKey		key of the script in the script cache of the session (see {@link RScriptCache})
+	 * @param skipErrors	FALSE to stop at the first failing group
+	 * @return R call which runs the script per group, assigns the combined result and returns the error messages of skipped groups
+	 */
+	private static String createGroupByCall(String inName, String outName, String scriptKey, boolean skipErrors) {
+		return "local({ "
+				+ "g <- .knime.group.columns; in.df <- get(\"" + inName + "\", envir = globalenv()); "
+				+ "code <- " + RScriptCache.getCodeCall(scriptKey) + "; "
+				+ "key <- do.call(paste, c(lapply(in.df[g], function(x) as.integer(addNA(factor(x), ifany = TRUE))), sep = \"\\r\")); "
+				+ "groups <- split(seq_len(nrow(in.df)), factor(key, levels = unique(key))); "
+				+ "errors <- character(0); "
+				+ "res <- lapply(seq_along(groups), function(i) { "
+				+ "idx <- groups[[i]]; env <- new.env(parent = globalenv()); "
+				+ "assign(\"" + inName + "\", in.df[idx, , drop = FALSE], envir = env); "
+				+ "r <- try({ .knime.run(code, env); as.data.frame(get(\"" + outName + "\", envir = env, inherits = FALSE)) }, silent = TRUE); "
+				+ "if(inherits(r, \"try-error\")) { "
+				+ "msg <- paste0(\"group '\", do.call(paste, c(lapply(in.df[idx[1], g, drop = FALSE], as.character), sep = \", \")), \"': \", conditionMessage(attr(r, \"condition\"))); "
+				+ (skipErrors ? "errors <<- c(errors, msg); return(NULL) }; " : "stop(msg, call. = FALSE) }; ")
+				+ "miss <- setdiff(g, names(r)); "
+				+ "if(length(miss) > 0 && nrow(r) > 0) r <- cbind(in.df[rep(idx[1], nrow(r)), miss, drop = FALSE], r); "
+				+ "rownames(r) <- NULL; r }); "
+				+ "out <- do.call(rbind, res); "
+				+ "if(is.null(out)) out <- in.df[0, , drop = FALSE]; "
+				+ "assign(\"" + outName + "\", out, envir = globalenv()); "
+				+ "errors })";
+	}
+
+	/**
+	 * splits the input table into partitions, runs the script for each partition in its own R session
+	 * (at most 'parallelism' sessions concurrently) and merges the results into one table
+	 * <pre>
+	 * - partitions are contiguous row blocks or sets of whole groups (grouping columns)
+	 * - each session gets the input flow variables, the color/shape/size model and its partition as 'kIn'
+	 * - in group-by mode, the script runs per group within each partition
+	 * - partition results are appended in partition order or in order of completion (see settings)
+	 * </pre>
+	 * @param inTable
+	 * @param exec
+	 * @return merged result table
+	 * @throws KnimeScriptingException
+	 * @throws CanceledExecutionException
+	 */
+	private BufferedDataTable executeInParallel(BufferedDataTable inTable, ExecutionContext exec) 
+			throws KnimeScriptingException, CanceledExecutionException {
+
+		int parallelism = getParallelism();
+		boolean ordered = ((SettingsModelBoolean) getModelSetting(CFG_ORDERED)).getBooleanValue();
+		int chunkInSize = ((SettingsModelIntegerBounded) getModelSetting(CHUNK_IN)).getIntValue();
+		int chunkOutSize = ((SettingsModelIntegerBounded) getModelSetting(CHUNK_OUT)).getIntValue();
+		String script = prepareScript();
+		Map<String, FlowVariable> flowVariables = getAvailableFlowVariables();
+
+		exec.setMessage("Partition input table");
+		List<BufferedDataTable> partitions = partitionTable(inTable, parallelism, exec.createSubExecutionContext(0.1));
+		int nThreads = Math.min(parallelism, partitions.size());
+
+		ExecutorService executor = Executors.newFixedThreadPool(nThreads);
+		CompletionService<Integer> completion = new ExecutorCompletionService<Integer>(executor);
+		BufferedDataTable[] results = new BufferedDataTable[partitions.size()];
+		List<String> failedGroups = Collections.synchronizedList(new ArrayList<String>());
+
+		exec.setMessage("Run R-script on " + partitions.size() + " partitions (" + nThreads + " R sessions)");
+		long startTime = System.currentTimeMillis();
+		List<Integer> completionOrder = new ArrayList<Integer>();
+		try {
+			for(int i = 0; i < partitions.size(); i++) {
+				final int idx = i;
+				final ExecutionMonitor subExec = exec.createSubProgress(0.8 / partitions.size());
+				completion.submit(() -> {
+					results[idx] = runPartition(partitions.get(idx), script, flowVariables, chunkInSize, chunkOutSize, 
+							subExec, exec, failedGroups);
+					return idx;
+				});
+			}
+			for(int i = 0; i < partitions.size(); i++) {
+				while(true) {
+					exec.checkCanceled();
+					Future<Integer> f = completion.poll(200, TimeUnit.MILLISECONDS);
+					if(f != null) {
+						completionOrder.add(f.get());
+						break;
+					}
+				}
+			}
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if(cause instanceof CanceledExecutionException) throw (CanceledExecutionException) cause;
+			throw new KnimeScriptingException("Failed to evaluate the script" 
+					+ (cause instanceof KnimeScriptingException ? "" : " (" + cause.getClass().getSimpleName() + ")") 
+					+ ":\n" + cause.getMessage());
+		} catch (InterruptedException e) {
+			throw new CanceledExecutionException("Interrupted while waiting for R sessions");
+		} finally {
+			executor.shutdownNow();
+		}
+		logger.info("Parallel execution of " + partitions.size() + " partitions (" + nThreads + " R sessions): " 
+				+ (System.currentTimeMillis() - startTime) + " ms");
+
+		if(!failedGroups.isEmpty())
+			setWarningMessage("R-script failed for " + failedGroups.size() + " group(s), results are missing. First error:\n" + failedGroups.get(0));
+
+		List<BufferedDataTable> merge = new ArrayList<BufferedDataTable>();
+		if(ordered)
+			merge.addAll(Arrays.asList(results));
+		else
+			for(int idx : completionOrder)
+				merge.add(results[idx]);
+
+		exec.setMessage("Merge partition results");
+		return mergeTables(merge, exec.createSubExecutionContext(0.1));
+	}
+
+	/**
+	 * runs the script for one partition in an R session from the connection pool
+	 * @param partition		input table of the partition
+	 * @param script
+	 * @param flowVariables
+	 * @param chunkInSize
+	 * @param chunkOutSize
+	 * @param exec			progress of this partition
+	 * @param execM			to create the result table
+	 * @param failedGroups	collects error messages of skipped groups
+	 * @return result table of the partition
+	 * @throws KnimeScriptingException
+	 * @throws CanceledExecutionException
+	 */
+	private BufferedDataTable runPartition(BufferedDataTable partition, String script, Map<String, FlowVariable> flowVariables, 
+			int chunkInSize, int chunkOutSize, ExecutionMonitor exec, ExecutionContext execM, List<String> failedGroups) 
+					throws KnimeScriptingException, CanceledExecutionException {
+
+		RConnection connection = RConnectionPool.getInstance().borrow();
+		boolean success = false;
+		try {
+			DataTableSpec inSpec = partition.getSpec();
+			pushFlowVariablesToR(flowVariables, connection, exec);
+			pushColorModelToR(inSpec, connection, exec, R_INVAR_BASE_NAME);
+			pushShapeModelToR(inSpec, connection, exec, R_INVAR_BASE_NAME);
+			pushSizeModelToR(inSpec, connection, exec, R_INVAR_BASE_NAME);
+			transferRDataContainer(exec.createSubProgress(0.5), partition, chunkInSize, connection, R_INVAR_BASE_NAME);
+
+			parseScript(connection, script);
+			if(isGroupBy()) {
+				boolean skipErrors = ((SettingsModelString) getModelSetting(CFG_GROUP_ERRORS)).getStringValue().equals(GROUP_ERRORS_SKIP);
+				failedGroups.addAll(Arrays.asList(evalScriptPerGroup(connection, script, getGroupColumns(), skipErrors)));
+			} else
+				evalScript(connection, script);
+
+			BufferedDataTable result = pullTableFromR(connection, R_OUTVAR_BASE_NAME, exec.createSubProgress(0.5), execM, chunkOutSize);
+			success = true;
+			return result;
+		} catch (RserveException | REXPMismatchException e) {
+			throw new KnimeScriptingException(e.getMessage());
+		} finally {
+			if(success)
+				RConnectionPool.getInstance().release(connection);
+			else
+				RConnectionPool.getInstance().invalidate(connection);
+		}
+	}
+
+	/**
+	 * splits a table into at most n partitions of similar size;
+	 * partitions are contiguous row blocks or (if set) consist of whole groups in order of their first occurrence
+	 * @param table
+	 * @param n
+	 * @param exec
+	 * @return non-empty partitions
+	 * @throws CanceledExecutionException
+	 * @throws KnimeScriptingException
+	 */
+	private List<BufferedDataTable> partitionTable(BufferedDataTable table, int n, ExecutionContext exec) 
+			throws CanceledExecutionException, KnimeScriptingException {
+
+		int numRows = table.getRowCount();
+		DataTableSpec spec = table.getSpec();
+
+		// group => partition
+		Map<List<DataCell>, Integer> groupPartition = null;
+		int[] groupIdx = null;
+		if(isPartitionByGroups()) {
+			List<String> groupColumns = getGroupColumns();
+			groupIdx = new int[groupColumns.size()];
+			for(int i = 0; i < groupIdx.length; i++) {
+				groupIdx[i] = spec.findColumnIndex(groupColumns.get(i));
+				if(groupIdx[i] < 0)
+					throw new KnimeScriptingException("Grouping column '" + groupColumns.get(i) + "' is not available");
+			}
+
+			// count rows per group, assign groups to partitions in order of first occurrence
+			Map<List<DataCell>, Integer> groupSize = new LinkedHashMap<List<DataCell>, Integer>();
+			for(DataRow row : table) {
+				exec.checkCanceled();
+				List<DataCell> key = getGroupKey(row, groupIdx);
+				Integer size = groupSize.get(key);
+				groupSize.put(key, size == null ? 1 : size + 1);
+			}
+			groupPartition = new HashMap<List<DataCell>, Integer>();
+			long assigned = 0;
+			for(Map.Entry<List<DataCell>, Integer> e : groupSize.entrySet()) {
+				groupPartition.put(e.getKey(), (int) Math.min(n - 1, assigned * n / Math.max(1, numRows)));
+				assigned += e.getValue();
+			}
+		}
+
+		BufferedDataContainer[] containers = new BufferedDataContainer[n];
+		for(int i = 0; i < n; i++)
+			containers[i] = exec.createDataContainer(spec);
+
+		int rowIdx = 0;
+		for(DataRow row : table) {
+			exec.checkCanceled();
+			exec.setProgress((double) (rowIdx + 1) / numRows);
+			int p = groupPartition != null ? groupPartition.get(getGroupKey(row, groupIdx)) : (int) ((long) rowIdx * n / numRows);
+			containers[p].addRowToTable(row);
+			rowIdx++;
+		}
+
+		List<BufferedDataTable> partitions = new ArrayList<BufferedDataTable>();
+		for(BufferedDataContainer c : containers) {
+			c.close();
+			if(c.getTable().getRowCount() > 0)
+				partitions.add(c.getTable());
+		}
+		// empty input: run the script once
+		if(partitions.isEmpty())
+			partitions.add(containers[0].getTable());
+		return partitions;
+	}
+
+	/**
+	 * @param row
+	 * @param groupIdx
+	 * @return values of the grouping columns
+	 */
+	private static List<DataCell> getGroupKey(DataRow row, int[] groupIdx) {
+		List<DataCell> key = new ArrayList<DataCell>(groupIdx.length);
+		for(int idx : groupIdx)
+			key.add(row.getCell(idx));
+		return key;
+	}
+
+	/**
+	 * concatenates partition results; columns need to match by name, 
+	 * column types are the common super types, domains are merged (properties are taken from the first partition),
+	 * duplicate row keys get the partition index as suffix
+	 * @param tables
+	 * @param exec
+	 * @return merged table
+	 * @throws KnimeScriptingException
+	 * @throws CanceledExecutionException
+	 */
+	private static BufferedDataTable mergeTables(List<BufferedDataTable> tables, ExecutionContext exec) 
+			throws KnimeScriptingException, CanceledExecutionException {
+
+		DataTableSpec first = tables.get(0).getSpec();
+		DataColumnSpec[] cSpecs = new DataColumnSpec[first.getNumColumns()];
+		long numRows = 0;
+		// domains of empty partitions (no bounds) are only used if all partitions are empty
+		boolean emptyDomains = true;
+		for(BufferedDataTable table : tables) {
+			DataTableSpec spec = table.getSpec();
+			if(!Arrays.equals(spec.getColumnNames(), first.getColumnNames()))
+				throw new KnimeScriptingException("Results of the partitions differ in their columns: " 
+						+ Arrays.toString(first.getColumnNames()) + " / " + Arrays.toString(spec.getColumnNames()));
+			boolean empty = table.getRowCount() == 0;
+			for(int i = 0; i < cSpecs.length; i++) {
+				DataColumnSpec cSpec = spec.getColumnSpec(i);
+				if(cSpecs[i] == null) {
+					cSpecs[i] = cSpec;
+					continue;
+				}
+				DataType type = DataType.getCommonSuperType(cSpecs[i].getType(), cSpec.getType());
+				DataColumnSpecCreator creator = new DataColumnSpecCreator(cSpecs[i]);
+				creator.setType(type);
+				if(emptyDomains && !empty)
+					creator.setDomain(cSpec.getDomain());
+				else if(!empty)
+					creator.setDomain(mergeDomains(cSpecs[i].getDomain(), cSpec.getDomain(), type));
+				cSpecs[i] = creator.createSpec();
+			}
+			emptyDomains &= empty;
+			numRows += table.getRowCount();
+		}
+
+		BufferedDataContainer out = exec.createDataContainer(new DataTableSpec(cSpecs));
+		Set<String> rowKeys = new HashSet<String>();
+		long rowIdx = 0;
+		for(int p = 0; p < tables.size(); p++) {
+			for(DataRow row : tables.get(p)) {
+				exec.checkCanceled();
+				exec.setProgress((double) ++rowIdx / numRows);
+				String key = row.getKey().getString();
+				if(rowKeys.add(key))
+					out.addRowToTable(row);
+				else {
+					// suffixed key might exist as well
+					String base = key + "_p" + (p + 1);
+					key = base;
+					for(int i = 2; !rowKeys.add(key); i++)
+						key = base + "_" + i;
+					List<DataCell> cells = new ArrayList<DataCell>(row.getNumCells());
+					for(DataCell cell : row)
+						cells.add(cell);
+					out.addRowToTable(new DefaultRow(new RowKey(key), cells));
+				}
+			}
+		}
+		out.close();
+		return out.getTable();
+	}
+
+	/**
+	 * @param d1
+	 * @param d2
+	 * @param type	common type of both columns
+	 * @return union of the possible values and the outer bounds, 
+	 * values / bounds are unknown if they are unknown for one of the domains
+	 */
+	private static DataColumnDomain mergeDomains(DataColumnDomain d1, DataColumnDomain d2, DataType type) {
+		DataColumnDomainCreator creator = new DataColumnDomainCreator();
+		if(d1.hasValues() && d2.hasValues()) {
+			Set<DataCell> values = new LinkedHashSet<DataCell>(d1.getValues());
+			values.addAll(d2.getValues());
+			creator.setValues(values);
+		}
+		if(d1.hasLowerBound() && d2.hasLowerBound()) {
+			DataCell l1 = d1.getLowerBound();
+			DataCell l2 = d2.getLowerBound();
+			creator.setLowerBound(type.getComparator().compare(l1, l2) <= 0 ? l1 : l2);
+		}
+		if(d1.hasUpperBound() && d2.hasUpperBound()) {
+			DataCell u1 = d1.getUpperBound();
+			DataCell u2 = d2.getUpperBound();
+			creator.setUpperBound(type.getComparator().compare(u1, u2) >= 0 ? u1 : u2);
+		}
+		return creator.createDomain();
+	}
+}
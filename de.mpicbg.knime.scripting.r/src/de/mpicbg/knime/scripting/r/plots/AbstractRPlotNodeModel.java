@@ -11,9 +11,19 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 
 import javax.imageio.ImageIO;
 import javax.swing.ImageIcon;
@@ -56,9 +66,13 @@ public abstract class AbstractRPlotNodeModel extends AbstractRScriptingNodeModel
 	
 	protected static final ImagePortObjectSpec IM_PORT_SPEC = new ImagePortObjectSpec(PNGImageContent.TYPE);
 
-    public BufferedImage m_image;						// image created by R
+    public BufferedImage m_image;						// image created by R (decoded on demand)
+    protected byte[] m_imageBytes;				// image file content as created by R
+    protected String m_imageFormat;				// format of the image file content (device)
+    protected List<Figure> m_figures;			// all figures rendered in batch mode
     public File m_nodeImageFile;				// image file (internals)
     protected File m_rWorkspaceFile;			// workspace file (internals)
+    private boolean m_imageCached = false;		// image at node size has been added to the plot cache
     private boolean isImageIcon = false;
     
     /**
@@ -80,6 +94,12 @@ public abstract class AbstractRPlotNodeModel extends AbstractRScriptingNodeModel
     
     public static final String CFG_IMGTYPE = "figure.ouput.type";
     public static final String CFG_IMGTYPE_DFT = "png";
+    
+    public static final String CFG_VARIANTS = "figure.batch.variants";
+    public static final String CFG_VARIANTS_DFT = "";
+    
+    public static final String CFG_ALL_PAGES = "figure.batch.all.pages";
+    public static final boolean CFG_ALL_PAGES_DFT = false;
    
 
     public static final String DEFAULT_R_PLOTCMD = "plot(1:10)";
@@ -99,6 +119,8 @@ public abstract class AbstractRPlotNodeModel extends AbstractRScriptingNodeModel
         this.addModelSetting(CFG_OUTFILE, createOutputFileSM());
         this.addModelSetting(CFG_OVERWRITE, createOverwriteSM());
         this.addModelSetting(CFG_WRITE, createWriteFileSM());
+        this.addModelSetting(CFG_VARIANTS, createVariantsSM());
+        this.addModelSetting(CFG_ALL_PAGES, createAllPagesSM());
 	}
 
     /**
@@ -125,13 +147,12 @@ public abstract class AbstractRPlotNodeModel extends AbstractRScriptingNodeModel
 			
 			// create image for image port
 			if(pType.equals(ImagePortObject.TYPE)) {
-				ByteArrayOutputStream baos = new ByteArrayOutputStream();
+				PNGImageContent content;
 				try {
-					ImageIO.write(m_image, "png", baos);
+					content = new PNGImageContent(getPNGBytes());
 				} catch (IOException e) {
 					throw new KnimeScriptingException(e.getMessage());
 				}
-				PNGImageContent content = new PNGImageContent(baos.toByteArray());
 		        
 		        outPorts[i] = new ImagePortObject(content, IM_PORT_SPEC);
 			}
@@ -149,7 +170,7 @@ public abstract class AbstractRPlotNodeModel extends AbstractRScriptingNodeModel
         // no need to save image to file ?
         if(!enableFileOutput) return;
         
-        assert m_image != null;
+        assert m_imageBytes != null;
         
         String fileName = ((SettingsModelString) getModelSetting(CFG_OUTFILE)).getStringValue();
         boolean overwriteFileOutput = ((SettingsModelBoolean) getModelSetting(CFG_OVERWRITE)).getBooleanValue();
@@ -162,6 +183,12 @@ public abstract class AbstractRPlotNodeModel extends AbstractRScriptingNodeModel
         // the plot should be written to file
         if (!fileName.isEmpty()) {
         	File imageFile = new File(fileName);
+        	boolean batchFiles = m_figures != null && m_figures.size() > 1;
+        	if(batchFiles && !fileName.toLowerCase().endsWith(".zip")) {
+        		// the file name is only used as base name
+        		saveFiguresAsFiles(imageFile, overwriteFileOutput);
+        		return;
+        	}
         	// check if the file already exists but should not be overwritten
         	if(imageFile.exists()) {
         		if(!overwriteFileOutput)
@@ -174,11 +201,11 @@ public abstract class AbstractRPlotNodeModel extends AbstractRScriptingNodeModel
         		}
         	}
 
-        	FileOutputStream fsOut = null;
         	try {
-	            fsOut = new FileOutputStream(new File(fileName));
-	            ImageIO.write(m_image, "png", fsOut);
-	            fsOut.close();
+        		if(batchFiles)
+        			saveFiguresAsZip(imageFile);
+        		else
+        			Files.write(imageFile.toPath(), getPNGBytes());
         	} catch (IOException e) {
         		throw new KnimeScriptingException("Failed to sava image to file:\n" + e.getMessage());
         	}
@@ -186,6 +213,62 @@ public abstract class AbstractRPlotNodeModel extends AbstractRScriptingNodeModel
         }
 	}
 
+	/**
+	 * writes all figures of batch mode into one zip archive
+	 * @param file
+	 * @throws IOException
+	 */
+	private void saveFiguresAsZip(File file) throws IOException {
+		try (ZipOutputStream zip = new ZipOutputStream(new FileOutputStream(file))) {
+			// images are compressed already
+			zip.setLevel(Deflater.NO_COMPRESSION);
+			for(Figure f : m_figures) {
+				zip.putNextEntry(new ZipEntry("rplot" + f.getSuffix()));
+				zip.write(f.getBytes());
+				zip.closeEntry();
+			}
+		}
+	}
+
+	/**
+	 * writes all figures of batch mode concurrently, one file per figure named by the given file name
+	 * with suffix '_&lt;width&gt;x&lt;height&gt;[_p&lt;page&gt;]'
+	 * @param file
+	 * @param overwrite
+	 * @throws KnimeScriptingException
+	 */
+	private void saveFiguresAsFiles(File file, boolean overwrite) throws KnimeScriptingException {
+		String name = file.getName();
+		int dot = name.lastIndexOf('.');
+		String baseName = dot > 0 ? name.substring(0, dot) : name;
+		List<File> files = new ArrayList<File>();
+		for(Figure f : m_figures) {
+			File figureFile = new File(file.getAbsoluteFile().getParentFile(), baseName + f.getSuffix());
+			if(figureFile.exists() && !overwrite)
+				throw new KnimeScriptingException("Overwrite file is disabled but image file '" + figureFile.getAbsolutePath() + "' already exsists.");
+			files.add(figureFile);
+		}
+
+		ExecutorService writer = Executors.newFixedThreadPool(Math.min(files.size(), Runtime.getRuntime().availableProcessors()));
+		try {
+			List<Future<Path>> written = new ArrayList<Future<Path>>();
+			for(int i = 0; i < files.size(); i++) {
+				final Path path = files.get(i).toPath();
+				final byte[] bytes = m_figures.get(i).getBytes();
+				written.add(writer.submit(() -> Files.write(path, bytes)));
+			}
+			for(Future<Path> f : written)
+				f.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new KnimeScriptingException("Interrupted while writing images");
+		} catch (ExecutionException e) {
+			throw new KnimeScriptingException("Failed to save image to file:\n" + e.getCause().getMessage());
+		} finally {
+			writer.shutdownNow();
+		}
+	}
+
 	/**
      * create settings model: enable output to file yes/no
      * @return
@@ -218,6 +301,22 @@ public abstract class AbstractRPlotNodeModel extends AbstractRScriptingNodeModel
 		return new SettingsModelString(CFG_IMGTYPE, CFG_IMGTYPE_DFT);
 	}
 
+    /**
+     * create settings model: additional figure variants (batch mode)
+     * @return
+     */
+	public static SettingsModelString createVariantsSM() {
+		return new SettingsModelString(CFG_VARIANTS, CFG_VARIANTS_DFT);
+	}
+
+    /**
+     * create settings model: render all pages of a multi-page plot (batch mode)
+     * @return
+     */
+	public static SettingsModelBoolean createAllPagesSM() {
+		return new SettingsModelBoolean(CFG_ALL_PAGES, CFG_ALL_PAGES_DFT);
+	}
+
     /**
      * create settings model: image width in pixels
      * @return
@@ -251,7 +350,73 @@ public abstract class AbstractRPlotNodeModel extends AbstractRScriptingNodeModel
 
         // create the image the script
         String script = prepareScript();
-        m_image = createImage(connection, script, getDefWidth(), getDefHeight(), getDevice());
+        m_image = null;
+        if(isBatchMode()) {
+        	// node size first (image port and view)
+        	List<RFigureVariant> variants = new ArrayList<RFigureVariant>();
+        	variants.add(new RFigureVariant(getDefWidth(), getDefHeight(), getDevice()));
+        	try {
+        		variants.addAll(RFigureVariant.parse(((SettingsModelString) getModelSetting(CFG_VARIANTS)).getStringValue(), getDevice()));
+        	} catch (InvalidSettingsException e) {
+        		throw new KnimeScriptingException(e.getMessage());
+        	}
+        	m_figures = createFigures(connection, script, variants, ((SettingsModelBoolean) getModelSetting(CFG_ALL_PAGES)).getBooleanValue());
+        	m_imageFormat = m_figures.get(0).getVariant().getDevice();
+        	m_imageBytes = m_figures.get(0).getBytes();
+        } else {
+        	m_figures = null;
+        	m_imageFormat = getDevice();
+        	m_imageBytes = createImageBytes(connection, script, getDefWidth(), getDefHeight(), m_imageFormat);
+        }
+        m_imageCached = false;
+    }
+
+    /**
+     * adds the image at node size to the plot cache when a view needs it first
+     * (avoids hashing the workspace on each execution)
+     */
+    public synchronized void addImageToCache() {
+    	if(m_imageCached || m_imageBytes == null || !RPlotCache.isEnabled()) return;
+    	RPlotCache cache = RPlotCache.getInstance();
+    	cache.put(cache.createKey(prepareScript(), m_rWorkspaceFile, m_imageFormat, getDefWidth(), getDefHeight()), m_imageBytes);
+    	m_imageCached = true;
+    }
+
+    /**
+     * @return TRUE if figure variants or all pages should be rendered
+     */
+    protected boolean isBatchMode() {
+    	String variants = ((SettingsModelString) getModelSetting(CFG_VARIANTS)).getStringValue();
+    	return (variants != null && !variants.trim().isEmpty())
+    			|| ((SettingsModelBoolean) getModelSetting(CFG_ALL_PAGES)).getBooleanValue();
+    }
+
+    /**
+     * @return figures rendered in batch mode, null if not executed in batch mode
+     */
+    public List<Figure> getFigures() {
+    	return m_figures;
+    }
+
+    /**
+     * run R script to create the plot and decode the image
+     * note: connection is not closed when exceptions occur
+     * @param connection
+     * @param script
+     * @param width
+     * @param height
+     * @param device
+     * @return image
+     * @throws KnimeScriptingException
+     */
+    public static BufferedImage createImage(RConnection connection, String script, int width, int height, String device) 
+			throws KnimeScriptingException {
+    	byte[] image = createImageBytes(connection, script, width, height, device);
+		try {
+			return ImageIO.read(new ByteArrayInputStream(image));
+		} catch (IOException e) {
+			throw new KnimeScriptingException(e.getMessage());
+		}
     }
     
     /**
@@ -262,23 +427,123 @@ public abstract class AbstractRPlotNodeModel extends AbstractRScriptingNodeModel
      * @param width
      * @param height
      * @param device
-     * @return
+     * @return content of the image file (format of the device)
      * @throws KnimeScriptingException
      */
-    public static BufferedImage createImage(RConnection connection, String script, int width, int height, String device) 
+    public static byte[] createImageBytes(RConnection connection, String script, int width, int height, String device) 
 			throws KnimeScriptingException {
 
-		// check preferences
-		boolean useEvaluate = R4KnimeBundleActivator.getDefault().getPreferenceStore().getBoolean(RPreferenceInitializer.USE_EVALUATE_PACKAGE);
-
 		String tempFileName = "rmPlotFile." + device;
 
 		// create plot device on R side
-		String deviceArgs = device.equals("jpeg") ? "quality=97," : "";
-		REXP xp = null;
-		String openDevice = "try(" + device + "('" + tempFileName + "'," + deviceArgs + " width = " + width + ", height = " + height + "))";
+		openDevice(connection, getOpenDeviceCommand(tempFileName, width, height, device), device);
+		// the device should be fine
+
+		runPlotScript(connection, script);
+
+		// close the image
 		try {
-			xp = connection.eval(openDevice);
+			connection.eval("dev.off();");
+			// check if the plot file has been written
+			int xpInt = connection.eval("file.access('" + tempFileName + "',0)").asInteger();
+			if(xpInt == -1) throw new KnimeScriptingException("Plot could not be created. Please check your script");
+		} catch (RserveException | REXPMismatchException e) {
+			throw new KnimeScriptingException("Failed to close image device:\n" + e.getMessage());
+		}
+
+		return readPlotFile(connection, tempFileName);
+	}
+
+    /**
+     * run R script once and render all figure variants from the recorded plot(s)
+     * <pre>
+     * - the script is evaluated on a null PDF device with display list (size of the first variant)
+     * - each page is recorded before a new page is started (base graphics and grid)
+     * - each recorded page is replayed on the image device of each variant
+     * </pre>
+     * note: connection is not closed when exceptions occur
+     * @param connection
+     * @param script
+     * @param variants	at least one variant
+     * @param allPages	FALSE to render the last page only (like a single image device)
+     * @return figures ordered by page and variant
+     * @throws KnimeScriptingException
+     */
+    public static List<Figure> createFigures(RConnection connection, String script, List<RFigureVariant> variants, boolean allPages) 
+    		throws KnimeScriptingException {
+    	assert !variants.isEmpty();
+    	RFigureVariant first = variants.get(0);
+
+    	// READABLE EXAMPLE:
+    	// .knime.pages <- list()
+    	// .knime.record <- function(...) { p <- recordPlot(); if(length(p[[1]]) > 0) .knime.pages[[length(.knime.pages) + 1]] <<- p }
+    	// setHook("before.plot.new", .knime.record); setHook("before.grid.newpage", .knime.record)
+    	// pdf(NULL, width = 1000/72, height = 700/72); dev.control(displaylist = "enable")
+    	String record = ".knime.pages <- list(); "
+    			+ ".knime.record <- function(...) { p <- recordPlot(); if(length(p[[1]]) > 0) .knime.pages[[length(.knime.pages) + 1]] <<- p }; "
+    			+ "local(for(h in c(\"before.plot.new\", \"before.grid.newpage\")) setHook(h, .knime.record))";
+    	// loop variables within 'local' (a workspace object 'h' must not be overwritten)
+    	String removeHooks = "local(for(h in c(\"before.plot.new\", \"before.grid.newpage\")) "
+    			+ "setHook(h, Filter(function(f) !identical(f, .knime.record), getHook(h)), \"replace\"))";
+    	int nPages;
+    	try {
+    		connection.voidEval(record);
+    		openDevice(connection, "try({ pdf(NULL, width = " + first.getWidth() + "/72, height = " + first.getHeight() + "/72); "
+    				+ "dev.control(displaylist = \"enable\") })", "pdf");
+    		try {
+    			runPlotScript(connection, script);
+    			connection.voidEval(".knime.record(); dev.off()");
+    		} finally {
+    			connection.voidEval(removeHooks);
+    		}
+    		nPages = connection.eval("length(.knime.pages)").asInteger();
+    	} catch (RserveException | REXPMismatchException e) {
+    		throw new KnimeScriptingException("Failed to record the plot:\n" + e.getMessage());
+    	}
+    	if(nPages == 0) throw new KnimeScriptingException("Plot could not be created. Please check your script");
+
+    	List<Figure> figures = new ArrayList<Figure>();
+    	try {
+    		for(int page = allPages ? 1 : nPages; page <= nPages; page++) {
+    			for(RFigureVariant v : variants) {
+    				String tempFileName = "rmPlotFile" + page + "_" + figures.size() + "." + v.getDevice();
+    				openDevice(connection, getOpenDeviceCommand(tempFileName, v.getWidth(), v.getHeight(), v.getDevice()), v.getDevice());
+    				try {
+    					connection.voidEval("replayPlot(.knime.pages[[" + page + "]])");
+    				} finally {
+    					connection.voidEval("dev.off()");
+    				}
+    				figures.add(new Figure(v, allPages ? page : 0, readPlotFile(connection, tempFileName)));
+    			}
+    		}
+    		connection.voidEval("rm(.knime.pages, .knime.record)");
+    	} catch (RserveException e) {
+    		throw new KnimeScriptingException("Failed to render the recorded plot:\n" + e.getMessage());
+    	}
+    	return figures;
+    }
+
+    /**
+     * @param fileName	server side file
+     * @param width
+     * @param height
+     * @param device	'png' or 'jpeg'
+     * @return R command to open an image device (wrapped in try)
+     */
+    private static String getOpenDeviceCommand(String fileName, int width, int height, String device) {
+    	String deviceArgs = device.equals("jpeg") ? "quality=97," : "";
+    	return "try(" + device + "('" + fileName + "'," + deviceArgs + " width = " + width + ", height = " + height + "))";
+    }
+
+    /**
+     * @param connection
+     * @param openDevice	R command to open the device (wrapped in try)
+     * @param device
+     * @throws KnimeScriptingException
+     */
+    private static void openDevice(RConnection connection, String openDevice, String device) throws KnimeScriptingException {
+		try {
+			REXP xp = connection.eval(openDevice);
 			if (xp.inherits("try-error")) { // if the result is of the class try-error then there was a problem
 				// this is analogous to 'warnings', but for us it's sufficient to get just the 1st warning
 				REXP w = connection.eval("if (exists('last.warning') && length(last.warning)>0) names(last.warning)[1] else 0");
@@ -289,7 +554,17 @@ public abstract class AbstractRPlotNodeModel extends AbstractRScriptingNodeModel
 		} catch (RserveException | REXPMismatchException e) {
 			throw new KnimeScriptingException("Failed to open image device from R:\n" + openDevice);
 		}
-		// the device should be fine
+    }
+
+    /**
+     * parse and evaluate the plot script on the current device
+     * @param connection
+     * @param script
+     * @throws KnimeScriptingException
+     */
+    private static void runPlotScript(RConnection connection, String script) throws KnimeScriptingException {
+		// check preferences
+		boolean useEvaluate = R4KnimeBundleActivator.getDefault().getPreferenceStore().getBoolean(RPreferenceInitializer.USE_EVALUATE_PACKAGE);
 
 		// parse script
 		String preparedScript = AbstractScriptingNodeModel.fixEncoding(script);
@@ -312,38 +587,47 @@ public abstract class AbstractRPlotNodeModel extends AbstractRScriptingNodeModel
 		} catch (RserveException | REXPMismatchException | KnimeScriptingException e) {
         	throw new KnimeScriptingException("Failed to evaluate the script:\n" + e.getMessage());
         }
+    }
 
-		// close the image
-		byte[] image = null;
-		try {
-			connection.eval("dev.off();");
-			// check if the plot file has been written
-			int xpInt = connection.eval("file.access('" + tempFileName + "',0)").asInteger();
-			if(xpInt == -1) throw new KnimeScriptingException("Plot could not be created. Please check your script");
-	
-			// we limit the file size to 1MB which should be sufficient and we delete the file as well
-			xp = connection.eval("try({ binImage <- readBin('" + tempFileName + "','raw',2024*2024); unlink('" + tempFileName + "'); binImage })");
-	
-			if (xp.inherits("try-error")) { // if the result is of the class try-error then there was a problem
-				throw new KnimeScriptingException(xp.asString());
-			}			
-			image = xp.asBytes();
-	
-		} catch (RserveException | REXPMismatchException e) {
-			throw new KnimeScriptingException("Failed to close image device and to read in plot as binary:+\n" + e.getMessage());
-		}
-		
-		// create image object from bytes
-		BufferedImage img = null;
+    /**
+     * read a plot file (any size) and delete it
+     * @param connection
+     * @param tempFileName	server side file
+     * @return file content
+     * @throws KnimeScriptingException
+     */
+    private static byte[] readPlotFile(RConnection connection, String tempFileName) throws KnimeScriptingException {
 		try {
-			img = ImageIO.read(new ByteArrayInputStream(image));
-		} catch (IOException e) {
-			throw new KnimeScriptingException(e.getMessage());
+			if(RUtils.isLocalHost(RUtils.getHost())) {
+				String path = connection.eval("normalizePath('" + tempFileName + "', winslash = '/')").asString();
+				return Files.readAllBytes(new File(path).toPath());
+			}
+			return RUtils.readFileFromServer(tempFileName, connection);
+		} catch (RserveException | REXPMismatchException | IOException e) {
+			throw new KnimeScriptingException("Failed to read in plot as binary:\n" + e.getMessage());
+		} finally {
+			try {
+				connection.voidEval("unlink('" + tempFileName + "')");
+			} catch (RserveException e) {
+				// plot file remains
+			}
 		}
-
-		return img;
 	}
 
+    /**
+     * @return image as PNG (no re-encoding if the plot has been created with the png device)
+     * @throws IOException
+     */
+    protected byte[] getPNGBytes() throws IOException {
+    	if(m_imageBytes != null && "png".equals(m_imageFormat))
+    		return m_imageBytes;
+    	BufferedImage image = getImage();
+    	if(image == null) throw new IOException("No plot image available");
+    	ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    	ImageIO.write(image, "png", baos);
+    	return baos.toByteArray();
+    }
+
     /**
      * replace placeholders in filename with appropriate values
      * @param fileName
@@ -392,6 +676,8 @@ public abstract class AbstractRPlotNodeModel extends AbstractRScriptingNodeModel
 	protected PortObjectSpec[] configure(PortObjectSpec[] inSpecs) throws InvalidSettingsException {
 		PortObjectSpec[] portSpecs = super.configure(inSpecs);
 		
+		RFigureVariant.parse(((SettingsModelString) getModelSetting(CFG_VARIANTS)).getStringValue(), getDevice());
+		
 		try {
 			removeTempWorkspace();
 		} catch (IOException e) {
@@ -449,9 +735,14 @@ public abstract class AbstractRPlotNodeModel extends AbstractRScriptingNodeModel
     }
 
 
-    public BufferedImage getImage() {
+    /**
+     * @return image created by R, decoded on first access
+     */
+    public synchronized BufferedImage getImage() {
         try {
-            if (m_image == null && m_nodeImageFile != null && m_nodeImageFile.isFile()) {
+        	if (m_image == null && m_imageBytes != null) {
+        		m_image = ImageIO.read(new ByteArrayInputStream(m_imageBytes));
+        	} else if (m_image == null && m_nodeImageFile != null && m_nodeImageFile.isFile()) {
                 logger.warn("Restoring image from disk. This might take a few seconds...");
                 deserializeImage();
             }
@@ -476,10 +767,10 @@ public abstract class AbstractRPlotNodeModel extends AbstractRScriptingNodeModel
             Files.copy(m_rWorkspaceFile.toPath(), f.toPath());
         }
 
-        if (m_image != null) {
+        if (m_imageBytes != null) {
             File imageFile = new File(nodeDir, "image.png");
             
-            ImageIO.write(m_image, "png", imageFile);
+            Files.write(imageFile.toPath(), getPNGBytes());
         }
     }
 
@@ -514,6 +805,10 @@ public abstract class AbstractRPlotNodeModel extends AbstractRScriptingNodeModel
 	protected void reset() {
 		super.reset();
 		m_image = null;
+		m_imageBytes = null;
+		m_imageFormat = null;
+		m_figures = null;
+		m_imageCached = false;
 	}
 
 	@Override
@@ -571,4 +866,43 @@ public abstract class AbstractRPlotNodeModel extends AbstractRScriptingNodeModel
 
     	return bi;
     }
+
+    /**
+     * figure rendered in batch mode
+     */
+    public static class Figure {
+    	private final RFigureVariant m_variant;
+    	private final int m_page;
+    	private final byte[] m_bytes;
+
+    	/**
+    	 * @param variant
+    	 * @param page		one-based page number, 0 if only the last page has been rendered
+    	 * @param bytes		image file content
+    	 */
+    	public Figure(RFigureVariant variant, int page, byte[] bytes) {
+    		m_variant = variant;
+    		m_page = page;
+    		m_bytes = bytes;
+    	}
+
+    	public RFigureVariant getVariant() {
+    		return m_variant;
+    	}
+
+    	public int getPage() {
+    		return m_page;
+    	}
+
+    	public byte[] getBytes() {
+    		return m_bytes;
+    	}
+
+    	/**
+    	 * @return file name suffix like '_1600x1200_p2.png'
+    	 */
+    	public String getSuffix() {
+    		return "_" + m_variant.getWidth() + "x" + m_variant.getHeight() + (m_page > 0 ? "_p" + m_page : "") + "." + m_variant.getDevice();
+    	}
+    }
 }
@@ -0,0 +1,96 @@
+package de.mpicbg.knime.scripting.r.plots;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.knime.core.node.InvalidSettingsException;
+
+/**
+ * <p>
+ * size and image device of a figure rendered in batch mode
+ * </p>
+ * variants are configured as list like '1600x1200 png, 400x300 jpeg' (device is optional)
+ *
+ * @author Antje Janosch
+ *
+ */
+public class RFigureVariant {
+
+	/** supported image devices */
+	public static final List<String> DEVICES = Arrays.asList("png", "jpeg");
+
+	/** maximum width / height in pixels */
+	public static final int MAX_SIZE = 20000;
+
+	private static final Pattern VARIANT_PATTERN = Pattern.compile("(\\d+)\\s*x\\s*(\\d+)(?:\\s+(\\w+))?");
+
+	private final int m_width;
+	private final int m_height;
+	private final String m_device;
+
+	/**
+	 * constructor
+	 * @param width		pixels
+	 * @param height	pixels
+	 * @param device	'png' or 'jpeg'
+	 */
+	public RFigureVariant(int width, int height, String device) {
+		m_width = width;
+		m_height = height;
+		m_device = device;
+	}
+
+	public int getWidth() {
+		return m_width;
+	}
+
+	public int getHeight() {
+		return m_height;
+	}
+
+	public String getDevice() {
+		return m_device;
+	}
+
+	/**
+	 * @param variants		comma or semicolon separated list, might be empty
+	 * @param defaultDevice	device of variants without device
+	 * @return variants in the given order
+	 * @throws InvalidSettingsException if an entry cannot be parsed
+	 */
+	public static List<RFigureVariant> parse(String variants, String defaultDevice) throws InvalidSettingsException {
+		List<RFigureVariant> result = new ArrayList<RFigureVariant>();
+		if(variants == null) return result;
+		for(String entry : variants.split("[,;]")) {
+			entry = entry.trim();
+			if(entry.isEmpty()) continue;
+			Matcher m = VARIANT_PATTERN.matcher(entry);
+			if(!m.matches())
+				throw new InvalidSettingsException("Invalid figure variant '" + entry + "' (expected <width>x<height> [png|jpeg])");
+			String device = m.group(3) != null ? m.group(3).toLowerCase() : defaultDevice;
+			if(!DEVICES.contains(device))
+				throw new InvalidSettingsException("Unsupported image type '" + device + "' in figure variant '" + entry + "'");
+			int width;
+			int height;
+			try {
+				width = Integer.parseInt(m.group(1));
+				height = Integer.parseInt(m.group(2));
+			} catch (NumberFormatException e) {
+				width = -1;
+				height = -1;
+			}
+			if(width <= 0 || height <= 0 || width > MAX_SIZE || height > MAX_SIZE)
+				throw new InvalidSettingsException("Figure variant '" + entry + "' needs a width and height between 1 and " + MAX_SIZE + " pixels");
+			result.add(new RFigureVariant(width, height, device));
+		}
+		return result;
+	}
+
+	@Override
+	public String toString() {
+		return m_width + "x" + m_height + " " + m_device;
+	}
+}
@@ -0,0 +1,270 @@
+package de.mpicbg.knime.scripting.r.plots;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.knime.core.node.NodeLogger;
+
+import de.mpicbg.knime.scripting.r.R4KnimeBundleActivator;
+import de.mpicbg.knime.scripting.r.prefs.RPreferenceInitializer;
+
+/**
+ * <p>
+ * cache of rendered plot images shared by all plot views
+ * </p>
+ * <pre>
+ * - images are stored as created by R (png or jpeg file content), keyed by the hash of the script,
+ *   the workspace file content, the device and the dimensions
+ * - memory tier: most recently used images, up to a quarter of the size limit
+ * - disk tier: all cached images as files in a temporary cache folder (deleted when the plugin is stopped),
+ *   least recently used files are deleted if the cache exceeds its size limit
+ * </pre>
+ * the size limit is taken from the R-scripting preferences, a limit of 0 disables the cache
+ *
+ * @author Antje Janosch
+ *
+ */
+public class RPlotCache {
+
+	/** keep one single class instance */
+	private static RPlotCache instance;
+
+	/** cache folder, null if it cannot be created */
+	private final File m_dir;
+
+	/** memory tier (key => image), access ordered */
+	private final LinkedHashMap<String, byte[]> m_memory = new LinkedHashMap<String, byte[]>(16, 0.75f, true);
+	private long m_memoryBytes = 0;
+
+	/** disk tier (key => file size), access ordered */
+	private final LinkedHashMap<String, Long> m_disk = new LinkedHashMap<String, Long>(16, 0.75f, true);
+	private long m_diskBytes = 0;
+
+	/** hashes of already hashed workspace files (path => last modified, length, hash) */
+	private final Map<String, String[]> m_wsHashes = new HashMap<String, String[]>();
+
+	private final NodeLogger logger = NodeLogger.getLogger(RPlotCache.class);
+
+	/**
+	 * constructor
+	 */
+	private RPlotCache() {
+		File dir = null;
+		try {
+			dir = Files.createTempDirectory("knime-rplot-cache").toFile();
+		} catch (IOException e) {
+			logger.warn("Failed to create plot cache folder, plots are not cached: " + e.getMessage());
+		}
+		m_dir = dir;
+	}
+
+	/**
+	 * @return the plot cache singleton
+	 */
+	public static synchronized RPlotCache getInstance() {
+		if(instance == null)
+			instance = new RPlotCache();
+		return instance;
+	}
+
+	/**
+	 * delete the cache folder (if the cache has been created)
+	 */
+	public static synchronized void dispose() {
+		if(instance != null) {
+			if(instance.m_dir != null) {
+				File[] files = instance.m_dir.listFiles();
+				if(files != null)
+					for(File f : files) f.delete();
+				instance.m_dir.delete();
+			}
+			instance = null;
+		}
+	}
+
+	/**
+	 * @return TRUE if the cache is enabled in the R-scripting preferences
+	 */
+	public static boolean isEnabled() {
+		return getMaxBytes() > 0;
+	}
+
+	/**
+	 * @param script		plot script as evaluated
+	 * @param wsFile		workspace file the script is evaluated on, might be null
+	 * @param device
+	 * @param width
+	 * @param height
+	 * @return hex encoded cache key, null if the workspace file cannot be read
+	 */
+	public String createKey(String script, File wsFile, String device, int width, int height) {
+		MessageDigest md = createDigest();
+		update(md, script);
+		try {
+			update(md, wsFile != null ? hashFile(wsFile) : "");
+		} catch (IOException e) {
+			logger.debug("Failed to hash R workspace file: " + e.getMessage());
+			return null;
+		}
+		update(md, device);
+		md.update(ByteBuffer.allocate(8).putInt(width).putInt(height).array());
+		return toHex(md.digest());
+	}
+
+	/**
+	 * @param key
+	 * @return cached image file content, null if not cached
+	 */
+	public byte[] get(String key) {
+		if(key == null || !isEnabled()) return null;
+		File file;
+		synchronized (this) {
+			byte[] image = m_memory.get(key);
+			if(image != null) return image;
+			if(m_disk.get(key) == null) return null;
+			file = getFile(key);
+		}
+		byte[] image;
+		try {
+			image = Files.readAllBytes(file.toPath());
+		} catch (IOException e) {
+			// file has been removed
+			synchronized (this) {
+				Long size = m_disk.remove(key);
+				if(size != null) m_diskBytes -= size;
+			}
+			return null;
+		}
+		synchronized (this) {
+			putMemory(key, image, getMaxBytes());
+		}
+		return image;
+	}
+
+	/**
+	 * adds an image to both tiers, evicts least recently used images if the size limit is exceeded
+	 * @param key
+	 * @param image		image file content
+	 */
+	public void put(String key, byte[] image) {
+		long maxBytes = getMaxBytes();
+		if(key == null || m_dir == null || maxBytes <= 0 || image.length > maxBytes) return;
+
+		try {
+			Files.write(getFile(key).toPath(), image);
+		} catch (IOException e) {
+			logger.debug("Failed to cache plot: " + e.getMessage());
+			return;
+		}
+
+		List<String> evicted = new ArrayList<String>();
+		synchronized (this) {
+			Long old = m_disk.put(key, (long) image.length);
+			m_diskBytes += image.length - (old != null ? old : 0);
+			Iterator<Map.Entry<String, Long>> it = m_disk.entrySet().iterator();
+			while(m_diskBytes > maxBytes && it.hasNext()) {
+				Map.Entry<String, Long> e = it.next();
+				if(e.getKey().equals(key)) continue;
+				m_diskBytes -= e.getValue();
+				evicted.add(e.getKey());
+				it.remove();
+				byte[] inMemory = m_memory.remove(e.getKey());
+				if(inMemory != null) m_memoryBytes -= inMemory.length;
+			}
+			putMemory(key, image, maxBytes);
+		}
+		for(String k : evicted)
+			getFile(k).delete();
+	}
+
+	/**
+	 * adds an image to the memory tier (caller holds the lock)
+	 */
+	private void putMemory(String key, byte[] image, long maxBytes) {
+		long maxMemory = maxBytes / 4;
+		if(image.length > maxMemory) return;
+		byte[] old = m_memory.put(key, image);
+		m_memoryBytes += image.length - (old != null ? old.length : 0);
+		Iterator<Map.Entry<String, byte[]>> it = m_memory.entrySet().iterator();
+		while(m_memoryBytes > maxMemory && it.hasNext()) {
+			Map.Entry<String, byte[]> e = it.next();
+			if(e.getKey().equals(key)) continue;
+			m_memoryBytes -= e.getValue().length;
+			it.remove();
+		}
+	}
+
+	/**
+	 * hash of the file content, remembered as long as the file is not modified
+	 * @param file
+	 * @return hex encoded hash
+	 * @throws IOException
+	 */
+	private String hashFile(File file) throws IOException {
+		String path = file.getAbsolutePath();
+		String stamp = file.lastModified() + ":" + file.length();
+		synchronized (m_wsHashes) {
+			String[] known = m_wsHashes.get(path);
+			if(known != null && known[0].equals(stamp)) return known[1];
+		}
+		MessageDigest md = createDigest();
+		byte[] buf = new byte[1 << 16];
+		try (InputStream is = Files.newInputStream(file.toPath())) {
+			int len;
+			while((len = is.read(buf)) > 0)
+				md.update(buf, 0, len);
+		}
+		String hash = toHex(md.digest());
+		synchronized (m_wsHashes) {
+			m_wsHashes.put(path, new String[]{stamp, hash});
+		}
+		return hash;
+	}
+
+	private File getFile(String key) {
+		return new File(m_dir, key + ".img");
+	}
+
+	private static MessageDigest createDigest() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * length prefixed UTF-8 string (keeps boundaries between values)
+	 */
+	private static void update(MessageDigest md, String value) {
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		md.update(ByteBuffer.allocate(4).putInt(bytes.length).array());
+		md.update(bytes);
+	}
+
+	private static String toHex(byte[] bytes) {
+		StringBuilder hex = new StringBuilder();
+		for(byte b : bytes)
+			hex.append(String.format("%02x", b));
+		return hex.toString();
+	}
+
+	/**
+	 * @return cache size limit in bytes from R-scripting preferences
+	 */
+	private static long getMaxBytes() {
+		return (long) R4KnimeBundleActivator.getDefault().getPreferenceStore().getInt(RPreferenceInitializer.R_PLOT_CACHE_MB) << 20;
+	}
+}
@@ -0,0 +1,98 @@
+package de.mpicbg.knime.scripting.r.port;
+
+import de.mpicbg.knime.scripting.r.R4KnimeBundleActivator;
+import de.mpicbg.knime.scripting.r.prefs.RPreferenceInitializer;
+
+/**
+ * <p>
+ * compression of R workspaces / serialized R objects
+ * </p>
+ * <pre>
+ * - R supports gzip, bzip2 and xz; no compression is the fastest option for local R servers
+ * - files written with any of these options are read by 'load' and 'readRDS' without further arguments
+ * - the port zip stores the written files without compressing them again
+ * </pre>
+ *
+ * @author Antje Janosch
+ *
+ */
+public enum RCompression {
+
+	NONE("Uncompressed (fastest)", null, 0),
+	GZIP_FAST("gzip, level 1", "gzip", 1),
+	GZIP("gzip, level 6 (R default)", "gzip", 6),
+	BZIP2("bzip2, level 9", "bzip2", 9),
+	XZ("xz, level 6 (smallest)", "xz", 6);
+
+	private final String m_label;
+
+	/** R compression type, null for no compression */
+	private final String m_type;
+	private final int m_level;
+
+	private RCompression(String label, String type, int level) {
+		m_label = label;
+		m_type = type;
+		m_level = level;
+	}
+
+	/**
+	 * @return label for the preference page
+	 */
+	public String getLabel() {
+		return m_label;
+	}
+
+	/**
+	 * 'save.image' does not support a compression level, the global environment is saved with 'save' instead
+	 * <br/>
+	 * READABLE EXAMPLE: save(list = ls(globalenv(), all.names = TRUE), envir = globalenv(), file = f, compress = "gzip", compression_level = 1)
+	 * @param fileExpr	R expression evaluating to the file name
+	 * @return R call saving all objects of the global environment (like 'save.image')
+	 */
+	public String getSaveWorkspaceCall(String fileExpr) {
+		return "save(list = ls(globalenv(), all.names = TRUE), envir = globalenv(), file = " + fileExpr + ", "
+				+ (m_type == null ? "compress = FALSE" : "compress = \"" + m_type + "\", compression_level = " + m_level) + ")";
+	}
+
+	/**
+	 * READABLE EXAMPLE: gzfile(f, "wb", compression = 1)
+	 * @param fileExpr	R expression evaluating to the file name
+	 * @return R expression opening a connection to write the file (to be used with 'saveRDS')
+	 */
+	public String getWriteConnection(String fileExpr) {
+		switch(this) {
+		case NONE:
+			return "file(" + fileExpr + ", \"wb\")";
+		case BZIP2:
+			return "bzfile(" + fileExpr + ", \"wb\", compression = " + m_level + ")";
+		case XZ:
+			return "xzfile(" + fileExpr + ", \"wb\", compression = " + m_level + ")";
+		default:
+		}
+		return "gzfile(" + fileExpr + ", \"wb\", compression = " + m_level + ")";
+	}
+
+	/**
+	 * @return compression option from the R-scripting preferences (fast gzip if not set)
+	 */
+	public static RCompression fromPreferences() {
+		String name = R4KnimeBundleActivator.getDefault().getPreferenceStore().getString(RPreferenceInitializer.R_WORKSPACE_COMPRESSION);
+		try {
+			return RCompression.valueOf(name);
+		} catch (IllegalArgumentException e) {
+			return GZIP_FAST;
+		}
+	}
+
+	/**
+	 * @return label / name pairs for a combo field editor
+	 */
+	public static String[][] getComboOptions() {
+		RCompression[] values = values();
+		String[][] options = new String[values.length][];
+		for(int i = 0; i < values.length; i++)
+			options[i] = new String[]{values[i].getLabel(), values[i].name()};
+		return options;
+	}
+}
@@ -0,0 +1,176 @@
+package de.mpicbg.knime.scripting.r.port;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+/**
+ * <p>
+ * local content-addressed store of serialized R objects (RDS files named by their MD5 hash)
+ * </p>
+ * <pre>
+ * - R workspace ports only reference the objects by hash, identical objects are stored once
+ *   and shared between all ports
+ * - the store lives in a temporary folder and is deleted when the plugin is stopped
+ * - objects which are not referenced by any live workspace are removed when new objects are added
+ *   (at most once per {@link #COLLECT_INTERVAL}); objects added or accessed within the last
+ *   {@link #GRACE_PERIOD} are kept, as their workspace might not yet exist
+ * </pre>
+ *
+ * @author Antje Janosch
+ *
+ */
+public class RObjectStore {
+
+	/** minimum time between two removals of unreferenced objects (ms) */
+	private static final long COLLECT_INTERVAL = 60 * 1000;
+
+	/** minimum age of an unreferenced object to be removed (ms) */
+	private static final long GRACE_PERIOD = 10 * 60 * 1000;
+
+	/** keep one single class instance */
+	private static RObjectStore instance;
+
+	/** all workspaces which are still in use (weakly referenced) */
+	private static final Set<RWorkspace> s_workspaces = Collections.newSetFromMap(new WeakHashMap<RWorkspace, Boolean>());
+
+	/** store folder */
+	private final File m_dir;
+
+	/** time of the last removal of unreferenced objects */
+	private long m_lastCollect = System.currentTimeMillis();
+
+	/**
+	 * constructor
+	 * @throws IOException
+	 */
+	private RObjectStore() throws IOException {
+		m_dir = Files.createTempDirectory("knime-r-objects").toFile();
+	}
+
+	/**
+	 * @return the object store singleton
+	 * @throws IOException if the store folder cannot be created
+	 */
+	public static synchronized RObjectStore getInstance() throws IOException {
+		if(instance == null)
+			instance = new RObjectStore();
+		return instance;
+	}
+
+	/**
+	 * delete the store (if it has been created)
+	 */
+	public static synchronized void dispose() {
+		if(instance != null) {
+			File[] files = instance.m_dir.listFiles();
+			if(files != null)
+				for(File f : files) f.delete();
+			instance.m_dir.delete();
+			instance = null;
+		}
+	}
+
+	/**
+	 * registers a workspace, its objects are kept as long as the workspace is in use
+	 * @param workspace
+	 */
+	static void reference(RWorkspace workspace) {
+		synchronized (s_workspaces) {
+			s_workspaces.add(workspace);
+		}
+	}
+
+	/**
+	 * @return store folder (R may write new objects directly into this folder)
+	 */
+	public File getFolder() {
+		return m_dir;
+	}
+
+	/**
+	 * @param hash
+	 * @return file of a stored object
+	 */
+	public File getFile(String hash) {
+		return new File(m_dir, hash + ".rds");
+	}
+
+	/**
+	 * an available object is kept for at least the grace period (it might be reused by a new workspace)
+	 * @param hash
+	 * @return TRUE if an object with this hash is available
+	 */
+	public boolean contains(String hash) {
+		File file = getFile(hash);
+		return file.isFile() && file.setLastModified(System.currentTimeMillis());
+	}
+
+	/**
+	 * move a serialized object file into the store, the file is deleted if the object is already stored
+	 * @param hash
+	 * @param file
+	 * @throws IOException
+	 */
+	public void add(String hash, File file) throws IOException {
+		if(contains(hash)) {
+			Files.deleteIfExists(file.toPath());
+			return;
+		}
+		try {
+			Files.move(file.toPath(), getFile(hash).toPath(), StandardCopyOption.ATOMIC_MOVE);
+		} catch (FileAlreadyExistsException e) {
+			// added concurrently
+			Files.deleteIfExists(file.toPath());
+		}
+		collect();
+	}
+
+	/**
+	 * write a serialized object into the store (if not yet available)
+	 * @param hash
+	 * @param in	stream is not closed
+	 * @throws IOException
+	 */
+	public void add(String hash, InputStream in) throws IOException {
+		if(contains(hash)) return;
+		File tempFile = File.createTempFile("obj-", ".tmp", m_dir);
+		Files.copy(in, tempFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		add(hash, tempFile);
+	}
+
+	/**
+	 * removes all objects (and leftover temporary files) which are not referenced by a live workspace
+	 * and have not been added or accessed within the grace period
+	 */
+	private void collect() {
+		long now = System.currentTimeMillis();
+		synchronized (this) {
+			if(now - m_lastCollect < COLLECT_INTERVAL) return;
+			m_lastCollect = now;
+		}
+
+		Set<String> referenced = new HashSet<String>();
+		synchronized (s_workspaces) {
+			for(RWorkspace workspace : s_workspaces)
+				referenced.addAll(workspace.getHashes().values());
+		}
+
+		File[] files = m_dir.listFiles();
+		if(files == null) return;
+		for(File f : files) {
+			String name = f.getName();
+			int idx = name.lastIndexOf('.');
+			String hash = idx > 0 ? name.substring(0, idx) : name;
+			if(!referenced.contains(hash) && now - f.lastModified() > GRACE_PERIOD)
+				f.delete();
+		}
+	}
+}
@@ -3,10 +3,14 @@ package de.mpicbg.knime.scripting.r.port;
 import java.awt.BorderLayout;
 import java.awt.Font;
 import java.io.File;
-import java.nio.file.Path;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
-import java.util.List;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
 
 import javax.swing.JComponent;
 import javax.swing.JPanel;
@@ -14,40 +18,80 @@ import javax.swing.JScrollPane;
 import javax.swing.JTextArea;
 import javax.swing.text.DefaultCaret;
 
-import org.apache.commons.lang3.StringUtils;
 import org.knime.core.node.port.PortObject;
 import org.knime.core.node.port.PortObjectSpec;
 import org.knime.core.node.port.PortType;
 import org.knime.core.node.port.PortTypeRegistry;
+import org.rosuda.REngine.REXPMismatchException;
 import org.rosuda.REngine.REXPString;
 import org.rosuda.REngine.Rserve.RConnection;
 import org.rosuda.REngine.Rserve.RserveException;
 
 import de.mpicbg.knime.scripting.core.exceptions.KnimeScriptingException;
+import de.mpicbg.knime.scripting.r.RConnectionPool;
 import de.mpicbg.knime.scripting.r.RUtils;
 
 public class RPortObject2 implements PortObject {
 	
     public static final PortType TYPE = PortTypeRegistry.getInstance().getPortType(RPortObject2.class);
 	
+	/** legacy format: workspace file created with save.image (null for object-wise workspaces) */
 	private final File m_WorkspaceFile;
+	/** R objects serialized separately (null for legacy workspace files) */
+	private final RWorkspace m_workspace;
+	/** object name => R class; null until first access for workspace files without index */
 	private HashMap<String, String> m_rObjects;
+	/** object name => structure summary (bounded 'str' output); null until created */
+	private LinkedHashMap<String, String> m_summaries = null;
 
+	/** READABLE EXAMPLE: str(x, max.level = 3, list.len = 20, vec.len = 4, nchar.max = 128, give.attr = FALSE) */
+	private static final String R_STR_ARGS = "max.level = 3, list.len = 20, vec.len = 4, nchar.max = 128, give.attr = FALSE";
+	/** maximum number of summary lines per object */
+	private static final int MAX_SUMMARY_LINES = 200;
+
+	/**
+	 * the object index is created on first access (requires R to load the workspace file)
+	 * @param workspaceFile
+	 */
 	public RPortObject2(File workspaceFile) {
-		this.m_WorkspaceFile = workspaceFile;
-		this.m_rObjects = getRObjects();
+		this(workspaceFile, null);
 	}
 
-	public RPortObject2(RConnection connection, File workspaceFile) {
+	/**
+	 * @param workspaceFile
+	 * @param rObjects		object name => R class, created on first access if null
+	 */
+	public RPortObject2(File workspaceFile, HashMap<String, String> rObjects) {
 		this.m_WorkspaceFile = workspaceFile;
-		this.m_rObjects = getRObjects(connection);
+		this.m_workspace = null;
+		this.m_rObjects = rObjects;
+	}
+
+	public RPortObject2(RWorkspace workspace) {
+		this.m_WorkspaceFile = null;
+		this.m_workspace = workspace;
+		this.m_rObjects = workspace.getClasses();
 	}
 
 	@Override
 	public RPortObjectSpec2 getSpec() {
-		final RPortObjectSpec2 spec = new RPortObjectSpec2(m_rObjects);
+		final RPortObjectSpec2 spec = new RPortObjectSpec2(getRObjectIndex());
 		return spec;
 	}
+
+	/**
+	 * @return object name => R class; workspace files without index are loaded into R on first access
+	 */
+	public synchronized HashMap<String, String> getRObjectIndex() {
+		if(m_rObjects == null) {
+			HashMap<String, String> rObjects = getRObjects();
+			// retry on next access if R is not available
+			if(rObjects == null) 
+				return new HashMap<String, String>();
+			m_rObjects = rObjects;
+		}
+		return m_rObjects;
+	}
 	
 	/**
 	 * retrieve all R objects and their type from an existing connection
@@ -84,14 +128,14 @@ public class RPortObject2 implements PortObject {
 		RConnection connection = null;
 		HashMap<String, String> rObjects = null;
 		try {
-			connection = RUtils.createConnection();	
-			RUtils.loadWorkspace(m_WorkspaceFile, connection);
+			connection = RConnectionPool.getInstance().borrow();
+			loadWorkspace(connection, null);
 			rObjects = getRObjects(connection);
 		} catch (KnimeScriptingException e) {
 			e.printStackTrace();
 		}
 		
-		if(connection != null) connection.close();
+		RConnectionPool.getInstance().release(connection);
 		return rObjects;
 	}
 
@@ -116,56 +160,164 @@ public class RPortObject2 implements PortObject {
         caret.setUpdatePolicy(DefaultCaret.NEVER_UPDATE);
         jep.setEditable(false);
 
-        RConnection connection ;
-		try {
-			connection = RUtils.createConnection();
-		} catch (KnimeScriptingException e) {
-			jep.setText(e.getMessage());
-			panel.add(new JScrollPane(jep));	        
-			e.printStackTrace();
-			return new JComponent[]{panel};
-		}
         jep.setFont(new Font("Monospaced", Font.PLAIN, 14));
 
         try {
-            RUtils.loadWorkspace(m_WorkspaceFile, connection);
-                        
-            // to get structure information about the output object, one needs to use capture the output
-            // str(...) does not provide any return value
-            connection.voidEval("tempfile <- tempfile(pattern = 'structure_', fileext = '.txt')");
-            List<String> objects = Arrays.asList(connection.eval("ls()").asStrings());
-            for(String obj : objects) {
-            	// exclude files which where created temporary TODO: it is too dependent on how temporary file variables are named... other solution?
-            	if(!(obj.equals("tempfile") || obj.equals("tmpwfile")))
-            		connection.voidEval("capture.output(print(\"" + obj + "\"), str(" + obj + "), file = tempfile, append = TRUE)");
-            }         
-            
-            String[] structure = connection.eval("readLines(tempfile)").asStrings();
-            connection.voidEval("unlink(tempfile)");
-              
-            String summary = StringUtils.join(structure, '\n');
-            
-            jep.setText(summary);
-
+        	StringBuilder summary = new StringBuilder();
+        	for(Map.Entry<String, String> e : getSummaries().entrySet()) {
+        		summary.append("[1] \"" + e.getKey() + "\"\n");
+        		summary.append(e.getValue()).append('\n');
+        	}
+            jep.setText(summary.toString());
         } catch (Exception e) {
-            jep.setText("Failed to retrieve the structure of R objects from port file " + getFilePath());
+            jep.setText("Failed to retrieve the structure of R objects from port file " + getFilePath() + "\n" + e.getMessage());
         }
-        
-        connection.close();
 
         panel.add(new JScrollPane(jep));
         return new JComponent[]{panel};
 	}
 
+	/**
+	 * @return object name => structure summary; missing summaries are created by loading the workspace into R (only once)
+	 * @throws KnimeScriptingException
+	 */
+	public synchronized LinkedHashMap<String, String> getSummaries() throws KnimeScriptingException {
+		Set<String> names = m_workspace != null ? m_workspace.getHashes().keySet() : getRObjectIndex().keySet();
+		if(m_summaries != null && m_summaries.keySet().containsAll(names))
+			return m_summaries;
+
+		RConnection connection = RConnectionPool.getInstance().borrow();
+		boolean success = false;
+		try {
+			loadWorkspace(connection, null);
+			Set<String> missing = new LinkedHashSet<String>(names);
+			if(m_summaries != null) missing.removeAll(m_summaries.keySet());
+			Map<String, String> created = createSummaries(connection, missing);
+			LinkedHashMap<String, String> summaries = new LinkedHashMap<String, String>();
+			for(String name : names)
+				summaries.put(name, m_summaries != null && m_summaries.containsKey(name) ? m_summaries.get(name) : created.get(name));
+			m_summaries = summaries;
+			success = true;
+		} finally {
+			if(success)
+				RConnectionPool.getInstance().release(connection);
+			else
+				RConnectionPool.getInstance().invalidate(connection);
+		}
+		return m_summaries;
+	}
+
+	/**
+	 * @return object name => structure summary, null if not yet created
+	 */
+	synchronized LinkedHashMap<String, String> getCachedSummaries() {
+		return m_summaries;
+	}
+
+	/**
+	 * @param summaries	object name => structure summary (e.g. stored with the port)
+	 */
+	synchronized void setSummaries(LinkedHashMap<String, String> summaries) {
+		m_summaries = summaries;
+	}
+
+	/**
+	 * creates the structure summaries of an object-wise workspace while its objects are still available in R;
+	 * summaries of objects which are unchanged compared to the input workspace are taken over
+	 * @param connection	R session the workspace has been saved from
+	 * @param input			input port, might be null
+	 * @throws KnimeScriptingException
+	 */
+	public void createSummaries(RConnection connection, RPortObject2 input) throws KnimeScriptingException {
+		if(m_workspace == null) return;
+
+		LinkedHashMap<String, String> hashes = m_workspace.getHashes();
+		Map<String, String> inSummaries = input != null ? input.getCachedSummaries() : null;
+		RWorkspace inWorkspace = input != null ? input.getWorkspace() : null;
+
+		Set<String> changed = new LinkedHashSet<String>();
+		for(String name : hashes.keySet())
+			if(inSummaries == null || inWorkspace == null || !inSummaries.containsKey(name) 
+					|| !hashes.get(name).equals(inWorkspace.getHashes().get(name)))
+				changed.add(name);
+
+		Map<String, String> created;
+		try {
+			// objects which have not been loaded from the input are not available in R
+			Set<String> available = new HashSet<String>(Arrays.asList(connection.eval("ls(globalenv(), all.names = TRUE)").asStrings()));
+			changed.retainAll(available);
+			created = createSummaries(connection, changed);
+		} catch (RserveException | REXPMismatchException e) {
+			throw new KnimeScriptingException("Failed to create structure summary of R objects: " + e.getMessage());
+		}
+
+		LinkedHashMap<String, String> summaries = new LinkedHashMap<String, String>();
+		for(String name : hashes.keySet()) {
+			if(created.containsKey(name))
+				summaries.put(name, created.get(name));
+			else if(inSummaries != null && inSummaries.containsKey(name))
+				summaries.put(name, inSummaries.get(name));
+		}
+		setSummaries(summaries);
+	}
+
+	/**
+	 * bounded structure summary of R objects (depth, list length, vector length and number of lines are limited)
+	 * @param connection
+	 * @param names		objects in the global environment
+	 * @return object name => summary
+	 * @throws KnimeScriptingException
+	 */
+	private static Map<String, String> createSummaries(RConnection connection, Collection<String> names) throws KnimeScriptingException {
+		Map<String, String> summaries = new HashMap<String, String>();
+		if(names.isEmpty()) return summaries;
+		try {
+			// READABLE EXAMPLE (per object):
+			// paste(head(capture.output(str(get("x", envir = globalenv()), max.level = 3, ...)), 200), collapse = "\n")
+			connection.assign(".knime.summary.names", new REXPString(names.toArray(new String[names.size()])));
+			String[] result = connection.eval("local({ n <- .knime.summary.names; rm(.knime.summary.names, envir = globalenv()); "
+					+ "vapply(n, function(x) tryCatch(paste(head(capture.output(str(get(x, envir = globalenv()), " + R_STR_ARGS + ")), " 
+					+ MAX_SUMMARY_LINES + "), collapse = \"\\n\"), error = function(e) conditionMessage(e)), character(1), USE.NAMES = FALSE) })").asStrings();
+			int i = 0;
+			for(String name : names)
+				summaries.put(name, result[i++]);
+		} catch (RserveException | REXPMismatchException e) {
+			throw new KnimeScriptingException("Failed to create structure summary of R objects: " + e.getMessage());
+		}
+		return summaries;
+	}
+
 	private String getFilePath() {
-		assert m_WorkspaceFile != null;
-		return m_WorkspaceFile.getAbsolutePath();
+		return m_WorkspaceFile != null ? m_WorkspaceFile.getAbsolutePath() : "object store";
 	}
 
+	/**
+	 * @return workspace file (legacy format), null for object-wise workspaces
+	 */
 	public File getFile() {
 		return m_WorkspaceFile;
 	}
 
+	/**
+	 * @return object-wise workspace, null for legacy workspace files
+	 */
+	public RWorkspace getWorkspace() {
+		return m_workspace;
+	}
+
+	/**
+	 * load the workspace into R
+	 * @param connection
+	 * @param script		only objects needed by this script are loaded (object-wise workspaces only); all if null
+	 * @throws KnimeScriptingException
+	 */
+	public void loadWorkspace(RConnection connection, String script) throws KnimeScriptingException {
+		if(m_workspace != null)
+			m_workspace.load(connection, script);
+		else
+			RUtils.loadWorkspace(m_WorkspaceFile, connection);
+	}
+
 
 
 }
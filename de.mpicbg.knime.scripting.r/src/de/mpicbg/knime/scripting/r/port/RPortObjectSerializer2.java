@@ -1,9 +1,20 @@
 package de.mpicbg.knime.scripting.r.port;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.zip.CRC32;
 import java.util.zip.ZipEntry;
 
 import org.knime.core.node.CanceledExecutionException;
@@ -15,22 +26,96 @@ import org.knime.core.node.port.PortObjectZipOutputStream;
 
 public final class RPortObjectSerializer2 extends PortObjectSerializer<RPortObject2> {
 	
+	/** legacy format: single workspace file */
 	private static final String ZIP_ENTRY_WS = "Rworkspace.RData";
+	/** legacy format: object name => class index, avoids loading the workspace into R to create the spec */
+	private static final String ZIP_ENTRY_INDEX = "Rworkspace.index";
+	
+	/** object-wise format: name => hash mapping, followed by one entry per serialized object */
+	private static final String ZIP_ENTRY_MANIFEST = "Rworkspace.manifest";
+	private static final String ZIP_ENTRY_OBJECT_PREFIX = "objects/";
+
+	/** both formats: object name => structure summary for the port view (last entry, optional) */
+	private static final String ZIP_ENTRY_SUMMARY = "Rworkspace.summary";
+
+	private static final int BUFFER_SIZE = 1 << 16;
 
 	@Override
 	public void savePortObject(RPortObject2 portObject, PortObjectZipOutputStream out, ExecutionMonitor exec)
 			throws IOException, CanceledExecutionException {
-		out.putNextEntry(new ZipEntry(ZIP_ENTRY_WS));
-		Files.copy(portObject.getFile().toPath(), out);
+		RWorkspace workspace = portObject.getWorkspace();
+		if(workspace == null) {
+			putStoredEntry(out, ZIP_ENTRY_WS, portObject.getFile());
+			out.closeEntry();
+			out.putNextEntry(new ZipEntry(ZIP_ENTRY_INDEX));
+			writeIndex(out, portObject.getRObjectIndex());
+		} else {
+			out.putNextEntry(new ZipEntry(ZIP_ENTRY_MANIFEST));
+			workspace.write(out);
+			RObjectStore store = RObjectStore.getInstance();
+			for(String hash : new LinkedHashSet<String>(workspace.getHashes().values())) {
+				exec.checkCanceled();
+				out.closeEntry();
+				putStoredEntry(out, ZIP_ENTRY_OBJECT_PREFIX + hash, store.getFile(hash));
+			}
+		}
+		LinkedHashMap<String, String> summaries = portObject.getCachedSummaries();
+		if(summaries != null) {
+			out.closeEntry();
+			out.putNextEntry(new ZipEntry(ZIP_ENTRY_SUMMARY));
+			writeSummaries(out, summaries);
+		}
 		out.flush();
 		out.closeEntry();
 		out.close();
 	}
 
+	/**
+	 * writes a file as uncompressed zip entry (the file is already compressed by R)
+	 * @param out
+	 * @param name
+	 * @param file
+	 * @throws IOException
+	 */
+	private static void putStoredEntry(PortObjectZipOutputStream out, String name, File file) throws IOException {
+		// stored entries need size and checksum before the data is written
+		CRC32 crc = new CRC32();
+		byte[] buffer = new byte[BUFFER_SIZE];
+		try (InputStream in = new FileInputStream(file)) {
+			int n;
+			while((n = in.read(buffer)) != -1)
+				crc.update(buffer, 0, n);
+		}
+		ZipEntry entry = new ZipEntry(name);
+		entry.setMethod(ZipEntry.STORED);
+		entry.setSize(file.length());
+		entry.setCompressedSize(file.length());
+		entry.setCrc(crc.getValue());
+		out.putNextEntry(entry);
+		Files.copy(file.toPath(), out);
+	}
+
 	@Override
 	public RPortObject2 loadPortObject(PortObjectZipInputStream in, PortObjectSpec spec, ExecutionMonitor exec)
 			throws IOException, CanceledExecutionException {
 		ZipEntry nextEntry = in.getNextEntry();
+		if (nextEntry != null && nextEntry.getName().equals(ZIP_ENTRY_MANIFEST)) {
+			RWorkspace workspace = RWorkspace.read(in);
+			// objects which are already available are shared with other ports
+			RObjectStore store = RObjectStore.getInstance();
+			LinkedHashMap<String, String> summaries = null;
+			while((nextEntry = in.getNextEntry()) != null) {
+				exec.checkCanceled();
+				if(nextEntry.getName().startsWith(ZIP_ENTRY_OBJECT_PREFIX))
+					store.add(nextEntry.getName().substring(ZIP_ENTRY_OBJECT_PREFIX.length()), in);
+				else if(nextEntry.getName().equals(ZIP_ENTRY_SUMMARY))
+					summaries = readSummaries(in);
+			}
+			in.close();
+			RPortObject2 port = new RPortObject2(workspace);
+			port.setSummaries(summaries);
+			return port;
+		}
 		if ((nextEntry == null) || !nextEntry.getName().equals(ZIP_ENTRY_WS)) {
 			throw new IOException("Expected zip entry '" + ZIP_ENTRY_WS + "' not present");
 		}
@@ -38,8 +123,92 @@ public final class RPortObjectSerializer2 extends PortObjectSerializer<RPortObje
 		File tempFile = File.createTempFile("genericR", ".RData");
 		Files.copy(in, tempFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
 		
+		// object index (not available for ports saved by former versions)
+		HashMap<String, String> rObjects = null;
+		LinkedHashMap<String, String> summaries = null;
+		while((nextEntry = in.getNextEntry()) != null) {
+			if(nextEntry.getName().equals(ZIP_ENTRY_INDEX))
+				rObjects = readIndex(in);
+			else if(nextEntry.getName().equals(ZIP_ENTRY_SUMMARY))
+				summaries = readSummaries(in);
+		}
+		if(rObjects == null && spec instanceof RPortObjectSpec2 && !((RPortObjectSpec2) spec).getRObjects().isEmpty())
+			rObjects = new HashMap<String, String>(((RPortObjectSpec2) spec).getRObjects());
+		
 		in.close();
-		return new RPortObject2(tempFile);
+		RPortObject2 port = new RPortObject2(tempFile, rObjects);
+		port.setSummaries(summaries);
+		return port;
+	}
+
+	/**
+	 * write object name => structure summary (summaries might exceed the length limit of 'writeUTF')
+	 * @param out	stream is not closed
+	 * @param summaries
+	 * @throws IOException
+	 */
+	private static void writeSummaries(OutputStream out, Map<String, String> summaries) throws IOException {
+		DataOutputStream dout = new DataOutputStream(out);
+		dout.writeInt(summaries.size());
+		for(Map.Entry<String, String> e : summaries.entrySet()) {
+			dout.writeUTF(e.getKey());
+			byte[] bytes = e.getValue().getBytes(StandardCharsets.UTF_8);
+			dout.writeInt(bytes.length);
+			dout.write(bytes);
+		}
+		dout.flush();
+	}
+
+	/**
+	 * read object name => structure summary
+	 * @param in	stream is not closed
+	 * @return summaries
+	 * @throws IOException
+	 */
+	private static LinkedHashMap<String, String> readSummaries(InputStream in) throws IOException {
+		DataInputStream din = new DataInputStream(in);
+		int n = din.readInt();
+		LinkedHashMap<String, String> summaries = new LinkedHashMap<String, String>();
+		for(int i = 0; i < n; i++) {
+			String name = din.readUTF();
+			byte[] bytes = new byte[din.readInt()];
+			din.readFully(bytes);
+			summaries.put(name, new String(bytes, StandardCharsets.UTF_8));
+		}
+		return summaries;
+	}
+
+	/**
+	 * write object name => class index
+	 * @param out	stream is not closed
+	 * @param rObjects
+	 * @throws IOException
+	 */
+	private static void writeIndex(OutputStream out, Map<String, String> rObjects) throws IOException {
+		DataOutputStream dout = new DataOutputStream(out);
+		dout.writeInt(rObjects.size());
+		for(Map.Entry<String, String> e : rObjects.entrySet()) {
+			dout.writeUTF(e.getKey());
+			dout.writeUTF(e.getValue());
+		}
+		dout.flush();
+	}
+
+	/**
+	 * read object name => class index
+	 * @param in	stream is not closed
+	 * @return index
+	 * @throws IOException
+	 */
+	private static HashMap<String, String> readIndex(InputStream in) throws IOException {
+		DataInputStream din = new DataInputStream(in);
+		int n = din.readInt();
+		HashMap<String, String> rObjects = new HashMap<String, String>();
+		for(int i = 0; i < n; i++) {
+			String name = din.readUTF();
+			rObjects.put(name, din.readUTF());
+		}
+		return rObjects;
 	}
 
 }
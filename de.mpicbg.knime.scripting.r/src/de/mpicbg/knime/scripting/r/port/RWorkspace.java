@@ -0,0 +1,306 @@
+package de.mpicbg.knime.scripting.r.port;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import org.rosuda.REngine.REXPLogical;
+import org.rosuda.REngine.REXPMismatchException;
+import org.rosuda.REngine.REXPString;
+import org.rosuda.REngine.RList;
+import org.rosuda.REngine.Rserve.RConnection;
+import org.rosuda.REngine.Rserve.RserveException;
+
+import de.mpicbg.knime.scripting.core.exceptions.KnimeScriptingException;
+import de.mpicbg.knime.scripting.r.RUtils;
+
+/**
+ * <p>
+ * R workspace as a set of separately serialized R objects, keyed by name with a content hash
+ * (serialized objects are kept in the {@link RObjectStore})
+ * </p>
+ * <pre>
+ * - load: only the objects referenced by the script (and by the functions loaded for it) are loaded into R;
+ *   scripts with dynamic access to the workspace (get, ls, eval, ...) load all objects
+ * - save: objects which have been loaded and are still identical are not serialized again,
+ *   objects which have not been loaded are taken over from the input workspace
+ * </pre>
+ * NOTE: objects which have not been loaded cannot be removed by the script
+ *
+ * @author Antje Janosch
+ *
+ */
+public class RWorkspace {
+
+	/** prefix of temporary R variables used for loading/saving */
+	private static final String R_VAR_PREFIX = ".knime.ws.";
+
+	/** R environment which keeps the loaded objects to detect unchanged objects on save */
+	private static final String R_VAR_LOADED = R_VAR_PREFIX + "loaded";
+
+	/** functions which access objects by name or the whole workspace (also passed as function, e.g. lapply(n, get)) */
+	private static final Pattern DYNAMIC_ACCESS = Pattern.compile(
+			"(?<![\\w.])(get|get0|mget|exists|ls|objects|eval|evalq|environment|globalenv|as\\.list|sys\\.function|"
+			+ "sys\\.frames?|parent\\.frame|load|attach|source|do\\.call|match\\.fun|save|save\\.image)(?![\\w.])|\\.GlobalEnv");
+
+	/** object name => hash */
+	private final LinkedHashMap<String, String> m_hashes;
+
+	/** object name => R class */
+	private final LinkedHashMap<String, String> m_classes;
+
+	/**
+	 * constructor
+	 * @param hashes	object name => hash
+	 * @param classes	object name => R class
+	 */
+	public RWorkspace(LinkedHashMap<String, String> hashes, LinkedHashMap<String, String> classes) {
+		m_hashes = hashes;
+		m_classes = classes;
+		RObjectStore.reference(this);
+	}
+
+	/**
+	 * @return object name => R class
+	 */
+	public HashMap<String, String> getClasses() {
+		return new HashMap<String, String>(m_classes);
+	}
+
+	/**
+	 * @return object name => hash
+	 */
+	public LinkedHashMap<String, String> getHashes() {
+		return m_hashes;
+	}
+
+	/**
+	 * loads the objects needed by a script into the global environment of R
+	 * @param connection
+	 * @param script		script to be run, load all objects if null
+	 * @return names of the loaded objects
+	 * @throws KnimeScriptingException
+	 */
+	public Set<String> load(RConnection connection, String script) throws KnimeScriptingException {
+
+		Set<String> loaded = new HashSet<String>();
+		Set<String> next = getReferencedObjects(script, m_hashes.keySet());
+		boolean local = RUtils.isLocalHost(RUtils.getHost());
+		RObjectStore store = getStore();
+
+		try {
+			while(!next.isEmpty()) {
+				String[] names = next.toArray(new String[next.size()]);
+				String[] files = new String[names.length];
+				for(int i = 0; i < names.length; i++) {
+					File f = store.getFile(m_hashes.get(names[i]));
+					files[i] = local ? f.getAbsolutePath().replace("\\", "/") : RUtils.copyFileToServer(f, connection);
+				}
+
+				connection.assign(R_VAR_PREFIX + "names", new REXPString(names));
+				connection.assign(R_VAR_PREFIX + "files", new REXPString(files));
+				// load the objects and keep a second reference to detect changes;
+				// returns the code of all loaded functions to find objects referenced by them
+				String functionCode = connection.eval("local({"
+						+ "if(!exists(\"" + R_VAR_LOADED + "\", envir = globalenv(), inherits = FALSE)) "
+						+ "assign(\"" + R_VAR_LOADED + "\", new.env(), envir = globalenv()); "
+						+ "n <- " + R_VAR_PREFIX + "names; f <- " + R_VAR_PREFIX + "files; "
+						+ "for(i in seq_along(n)) { v <- readRDS(f[i]); assign(n[i], v, envir = globalenv()); assign(n[i], v, envir = " + R_VAR_LOADED + ") }; "
+						+ (local ? "" : "unlink(f); ")
+						+ "fun <- Filter(is.function, mget(n, envir = globalenv())); "
+						+ "paste(unlist(lapply(fun, deparse)), collapse = \"\\n\") })").asString();
+				connection.voidEval("rm(" + R_VAR_PREFIX + "names, " + R_VAR_PREFIX + "files)");
+
+				loaded.addAll(next);
+				next = getReferencedObjects(functionCode, m_hashes.keySet());
+				next.removeAll(loaded);
+			}
+		} catch (RserveException | REXPMismatchException e) {
+			throw new KnimeScriptingException("Failed to load R objects: " + e.getMessage());
+		}
+
+		return loaded;
+	}
+
+	/**
+	 * saves the global environment of R as new workspace
+	 * @param connection
+	 * @param input		workspace which has been loaded before, might be null
+	 * @return workspace of the current R session
+	 * @throws KnimeScriptingException
+	 */
+	public static RWorkspace save(RConnection connection, RWorkspace input) throws KnimeScriptingException {
+
+		LinkedHashMap<String, String> hashes = new LinkedHashMap<String, String>();
+		LinkedHashMap<String, String> classes = new LinkedHashMap<String, String>();
+		Set<String> loaded = new HashSet<String>();
+		boolean local = RUtils.isLocalHost(RUtils.getHost());
+		RObjectStore store = getStore();
+
+		try {
+			// READABLE EXAMPLE (per object):
+			// identical(get("x", envir = globalenv()), get("x", envir = .knime.ws.loaded))
+			RList state = connection.eval("local({"
+					+ "n <- ls(globalenv(), all.names = TRUE); n <- n[substr(n, 1, " + R_VAR_PREFIX.length() + ") != \"" + R_VAR_PREFIX + "\"]; "
+					+ "old <- if(exists(\"" + R_VAR_LOADED + "\", envir = globalenv(), inherits = FALSE)) " + R_VAR_LOADED + " else emptyenv(); "
+					+ "list(names = n, "
+					+ "unchanged = vapply(n, function(x) exists(x, envir = old, inherits = FALSE) && identical(get(x, envir = globalenv()), get(x, envir = old)), logical(1), USE.NAMES = FALSE), "
+					+ "classes = vapply(n, function(x) class(get(x, envir = globalenv()))[1], character(1), USE.NAMES = FALSE), "
+					+ "loaded = ls(old, all.names = TRUE)) })").asList();
+
+			String[] names = state.at("names").asStrings();
+			boolean[] unchanged = ((REXPLogical) state.at("unchanged")).isTRUE();
+			String[] rClasses = state.at("classes").asStrings();
+			loaded.addAll(Arrays.asList(state.at("loaded").asStrings()));
+
+			// objects which are new or have been modified
+			List<String> changed = new ArrayList<String>();
+			for(int i = 0; i < names.length; i++) {
+				classes.put(names[i], rClasses[i]);
+				if(unchanged[i] && input != null && input.m_hashes.containsKey(names[i]))
+					hashes.put(names[i], input.m_hashes.get(names[i]));
+				else {
+					hashes.put(names[i], null);
+					changed.add(names[i]);
+				}
+			}
+
+			if(!changed.isEmpty()) {
+				RCompression compression = RCompression.fromPreferences();
+				String folder = local ? "\"" + store.getFolder().getAbsolutePath().replace("\\", "/") + "\"" : "tempdir()";
+				connection.assign(R_VAR_PREFIX + "names", new REXPString(changed.toArray(new String[changed.size()])));
+				// READABLE EXAMPLE (per object):
+				// con <- gzfile(f[i], "wb", compression = 1); saveRDS(get("x", envir = globalenv()), file = con); close(con)
+				// tools::md5sum(f)
+				RList saved = connection.eval("local({"
+						+ "n <- " + R_VAR_PREFIX + "names; "
+						+ "f <- tempfile(rep(\"obj-\", length(n)), tmpdir = " + folder + ", fileext = \".rds\"); "
+						+ "for(i in seq_along(n)) { con <- " + compression.getWriteConnection("f[i]") + "; saveRDS(get(n[i], envir = globalenv()), file = con); close(con) }; "
+						+ "list(files = f, hashes = unname(tools::md5sum(f))) })").asList();
+				connection.voidEval("rm(" + R_VAR_PREFIX + "names)");
+
+				String[] files = saved.at("files").asStrings();
+				String[] savedHashes = saved.at("hashes").asStrings();
+				for(int i = 0; i < files.length; i++) {
+					hashes.put(changed.get(i), savedHashes[i]);
+					if(local)
+						store.add(savedHashes[i], new File(files[i]));
+					else if(!store.contains(savedHashes[i])) {
+						File tempFile = File.createTempFile("obj-", ".tmp", store.getFolder());
+						RUtils.copyFileFromServer(files[i], tempFile, connection);
+						store.add(savedHashes[i], tempFile);
+					}
+				}
+				if(!local)
+					connection.voidEval("unlink(c(\"" + String.join("\", \"", files) + "\"))");
+			}
+		} catch (RserveException | REXPMismatchException | IOException e) {
+			throw new KnimeScriptingException("Failed to save R objects: " + e.getMessage());
+		}
+
+		// objects of the input workspace which have not been loaded
+		if(input != null) {
+			for(String name : input.m_hashes.keySet()) {
+				if(!hashes.containsKey(name) && !loaded.contains(name)) {
+					hashes.put(name, input.m_hashes.get(name));
+					classes.put(name, input.m_classes.get(name));
+				}
+			}
+		}
+
+		return new RWorkspace(hashes, classes);
+	}
+
+	/**
+	 * @param text		R code
+	 * @param names		available object names
+	 * @return object names which occur in the given code, all if the code accesses objects dynamically or is null
+	 */
+	static Set<String> getReferencedObjects(String text, Collection<String> names) {
+		Set<String> referenced = new LinkedHashSet<String>();
+		if(text == null || DYNAMIC_ACCESS.matcher(text).find()) {
+			referenced.addAll(names);
+			return referenced;
+		}
+		for(String name : names)
+			if(containsName(text, name))
+				referenced.add(name);
+		return referenced;
+	}
+
+	/**
+	 * @param text
+	 * @param name
+	 * @return TRUE if the name occurs in the text and is not part of a longer R name
+	 */
+	private static boolean containsName(String text, String name) {
+		int idx = text.indexOf(name);
+		while(idx >= 0) {
+			int end = idx + name.length();
+			if((idx == 0 || !isNameChar(text.charAt(idx - 1))) && (end == text.length() || !isNameChar(text.charAt(end))))
+				return true;
+			idx = text.indexOf(name, idx + 1);
+		}
+		return false;
+	}
+
+	private static boolean isNameChar(char c) {
+		return Character.isLetterOrDigit(c) || c == '.' || c == '_';
+	}
+
+	/**
+	 * write the name => hash/class mapping
+	 * @param out	stream is not closed
+	 * @throws IOException
+	 */
+	public void write(OutputStream out) throws IOException {
+		DataOutputStream dout = new DataOutputStream(out);
+		dout.writeInt(m_hashes.size());
+		for(String name : m_hashes.keySet()) {
+			dout.writeUTF(name);
+			dout.writeUTF(m_hashes.get(name));
+			dout.writeUTF(m_classes.get(name));
+		}
+		dout.flush();
+	}
+
+	/**
+	 * read the name => hash/class mapping
+	 * @param in	stream is not closed
+	 * @return workspace
+	 * @throws IOException
+	 */
+	public static RWorkspace read(InputStream in) throws IOException {
+		DataInputStream din = new DataInputStream(in);
+		int n = din.readInt();
+		LinkedHashMap<String, String> hashes = new LinkedHashMap<String, String>();
+		LinkedHashMap<String, String> classes = new LinkedHashMap<String, String>();
+		for(int i = 0; i < n; i++) {
+			String name = din.readUTF();
+			hashes.put(name, din.readUTF());
+			classes.put(name, din.readUTF());
+		}
+		return new RWorkspace(hashes, classes);
+	}
+
+	private static RObjectStore getStore() throws KnimeScriptingException {
+		try {
+			return RObjectStore.getInstance();
+		} catch (IOException e) {
+			throw new KnimeScriptingException("Failed to create local store for R objects: " + e.getMessage());
+		}
+	}
+}
@@ -27,6 +27,8 @@ package de.mpicbg.knime.scripting.r.prefs;
 
 import de.mpicbg.knime.knutils.Utils;
 import de.mpicbg.knime.scripting.r.R4KnimeBundleActivator;
+import de.mpicbg.knime.scripting.r.data.RDataFrameContainer.MissingStringMode;
+import de.mpicbg.knime.scripting.r.port.RCompression;
 
 import org.eclipse.core.runtime.preferences.AbstractPreferenceInitializer;
 import org.eclipse.jface.preference.IPreferenceStore;
@@ -58,6 +60,48 @@ public class RPreferenceInitializer extends AbstractPreferenceInitializer {
 
     public static final String LOCAL_R_PATH = "local.r.path";
 
+    /** transfer mode for missing string values, one of {@link MissingStringMode} */
+    public static final String R_MISSING_STRINGS = "r.missing.strings";
+
+    /** number of rows per tile for the transfer of KNIME tables to R, chosen automatically if 0 */
+    public static final String R_TRANSFER_TILE_ROWS = "r.transfer.tile.rows";
+
+    /** memory budget (MB) used to choose chunk sizes of KNIME <-> R transfers */
+    public static final String R_TRANSFER_MEMORY_MB = "r.transfer.memory.mb";
+
+    /** maximum number of idle connections kept by the R connection pool, no pooling if 0 */
+    public static final String R_POOL_SIZE = "r.pool.size";
+
+    /** idle connections of the R connection pool are closed after this number of seconds */
+    public static final String R_POOL_IDLE_TIMEOUT = "r.pool.idle.timeout";
+
+    /** maximum number of open R connections (borrowed, idle and session-resident), no limit if 0 */
+    public static final String R_POOL_MAX_CONNECTIONS = "r.pool.max.connections";
+
+    /** seconds to wait for a free R connection if the maximum number of connections is reached, no limit if 0 */
+    public static final String R_POOL_BORROW_TIMEOUT = "r.pool.borrow.timeout";
+
+    /** convert multiple input tables concurrently while pushing them to R */
+    public static final String R_PARALLEL_PUSH = "r.parallel.push";
+
+    /** compression of saved R workspaces and objects, one of {@link RCompression} */
+    public static final String R_WORKSPACE_COMPRESSION = "r.workspace.compression";
+
+    /** pass table data through local files if the R server runs on localhost */
+    public static final String R_LOCAL_FILE_TRANSFER = "r.local.file.transfer";
+
+    /** keep output data frames in the R session for downstream R nodes (session-resident mode) */
+    public static final String R_SESSION_RESIDENT = "r.session.resident";
+
+    /** size limit (MB) of the input table cache on the R server side, no caching if 0 */
+    public static final String R_TABLE_CACHE_MB = "r.table.cache.mb";
+
+    /** size limit (MB) of the rendered plot cache of the plot views, no caching if 0 */
+    public static final String R_PLOT_CACHE_MB = "r.plot.cache.mb";
+
+    /** comma separated R packages attached to new R connections (kept attached in pooled connections) */
+    public static final String R_PRELOAD_PACKAGES = "r.preload.packages";
+
 
     @Override
     public void initializeDefaultPreferences() {
@@ -67,6 +111,20 @@ public class RPreferenceInitializer extends AbstractPreferenceInitializer {
         store.setDefault(USE_EVALUATE_PACKAGE, false);
         store.setDefault(R_HOST, "localhost");
         store.setDefault(R_PORT, 6311);
+        store.setDefault(R_MISSING_STRINGS, MissingStringMode.NA_STRING.name());
+        store.setDefault(R_TRANSFER_TILE_ROWS, 0);
+        store.setDefault(R_TRANSFER_MEMORY_MB, 256);
+        store.setDefault(R_POOL_SIZE, 4);
+        store.setDefault(R_POOL_IDLE_TIMEOUT, 300);
+        store.setDefault(R_POOL_MAX_CONNECTIONS, 16);
+        store.setDefault(R_POOL_BORROW_TIMEOUT, 600);
+        store.setDefault(R_PARALLEL_PUSH, false);
+        store.setDefault(R_WORKSPACE_COMPRESSION, RCompression.GZIP_FAST.name());
+        store.setDefault(R_LOCAL_FILE_TRANSFER, true);
+        store.setDefault(R_SESSION_RESIDENT, false);
+        store.setDefault(R_TABLE_CACHE_MB, 0);
+        store.setDefault(R_PLOT_CACHE_MB, 64);
+        store.setDefault(R_PRELOAD_PACKAGES, "");
 
 
         store.setDefault(R_PLOT_TEMPLATES, "(\"https://raw.githubusercontent.com/knime-mpicbg/scripting-templates/master/knime-scripting-templates/R/figure-templates.txt\",true)");
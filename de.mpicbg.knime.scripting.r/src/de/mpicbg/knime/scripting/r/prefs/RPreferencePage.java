@@ -28,6 +28,8 @@ package de.mpicbg.knime.scripting.r.prefs;
 import de.mpicbg.knime.scripting.core.prefs.TemplateTableEditor;
 import de.mpicbg.knime.scripting.core.utils.ScriptingUtils;
 import de.mpicbg.knime.scripting.r.R4KnimeBundleActivator;
+import de.mpicbg.knime.scripting.r.data.RDataFrameContainer.MissingStringMode;
+import de.mpicbg.knime.scripting.r.port.RCompression;
 
 import java.nio.file.Path;
 import java.nio.file.Paths;
@@ -35,6 +37,7 @@ import java.nio.file.Paths;
 import org.eclipse.core.runtime.IPath;
 import org.eclipse.core.runtime.Platform;
 import org.eclipse.jface.preference.BooleanFieldEditor;
+import org.eclipse.jface.preference.ComboFieldEditor;
 import org.eclipse.jface.preference.FieldEditorPreferencePage;
 import org.eclipse.jface.preference.IntegerFieldEditor;
 import org.eclipse.jface.preference.StringFieldEditor;
@@ -77,6 +80,23 @@ public class RPreferencePage extends FieldEditorPreferencePage implements IWorkb
         addField(new BooleanFieldEditor(RPreferenceInitializer.REPAINT_ON_RESIZE, "Repaint on resize", parent));
         
         addField(new BooleanFieldEditor(RPreferenceInitializer.USE_EVALUATE_PACKAGE, "Enable R-console view (requires 'evaluate' package)", parent));
+        
+        addField(new ComboFieldEditor(RPreferenceInitializer.R_MISSING_STRINGS, "Transfer of missing strings to R", new String[][]{
+        	{"NA strings", MissingStringMode.NA_STRING.name()},
+        	{"Logical mask (old Rserve versions)", MissingStringMode.LOGICAL_MASK.name()}}, parent));
+        addField(new IntegerFieldEditor(RPreferenceInitializer.R_TRANSFER_TILE_ROWS, "Rows per transfer tile (0 = automatic)", parent));
+        addField(new IntegerFieldEditor(RPreferenceInitializer.R_TRANSFER_MEMORY_MB, "Memory budget for automatic transfer chunks (MB)", parent));
+        addField(new IntegerFieldEditor(RPreferenceInitializer.R_POOL_SIZE, "Maximum number of idle R connections to reuse (0 = no reuse)", parent));
+        addField(new IntegerFieldEditor(RPreferenceInitializer.R_POOL_IDLE_TIMEOUT, "Close idle R connections after (seconds)", parent));
+        addField(new IntegerFieldEditor(RPreferenceInitializer.R_POOL_MAX_CONNECTIONS, "Maximum number of open R connections (0 = no limit)", parent));
+        addField(new IntegerFieldEditor(RPreferenceInitializer.R_POOL_BORROW_TIMEOUT, "Wait for a free R connection up to (seconds, 0 = no limit)", parent));
+        addField(new BooleanFieldEditor(RPreferenceInitializer.R_PARALLEL_PUSH, "Convert multiple input tables in parallel", parent));
+        addField(new ComboFieldEditor(RPreferenceInitializer.R_WORKSPACE_COMPRESSION, "Compression of R workspaces", RCompression.getComboOptions(), parent));
+        addField(new BooleanFieldEditor(RPreferenceInitializer.R_LOCAL_FILE_TRANSFER, "Pass tables through local files if R runs on localhost", parent));
+        addField(new BooleanFieldEditor(RPreferenceInitializer.R_SESSION_RESIDENT, "Keep output tables in R for downstream R nodes (session-resident mode)", parent));
+        addField(new IntegerFieldEditor(RPreferenceInitializer.R_TABLE_CACHE_MB, "Cache input tables on the R server up to (MB, 0 = no cache)", parent));
+        addField(new IntegerFieldEditor(RPreferenceInitializer.R_PLOT_CACHE_MB, "Cache rendered plots of the plot views up to (MB, 0 = no cache)", parent));
+        addField(new StringFieldEditor(RPreferenceInitializer.R_PRELOAD_PACKAGES, "Packages to attach to new R connections (comma separated)", parent));
 
         addField(new TemplateTableEditor(RPreferenceInitializer.R_SNIPPET_TEMPLATES, "Snippet template resource", cacheFolder, indexFile, parent));
         addField(new TemplateTableEditor(RPreferenceInitializer.R_PLOT_TEMPLATES, "Plot template resource", cacheFolder, indexFile, parent));
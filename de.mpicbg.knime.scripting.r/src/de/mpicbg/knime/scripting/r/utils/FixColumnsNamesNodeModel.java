@@ -4,7 +4,7 @@ import de.mpicbg.knime.knutils.AbstractNodeModel;
 import de.mpicbg.knime.knutils.Attribute;
 import de.mpicbg.knime.knutils.AttributeUtils;
 import de.mpicbg.knime.scripting.core.exceptions.KnimeScriptingException;
-import de.mpicbg.knime.scripting.r.RUtils;
+import de.mpicbg.knime.scripting.r.RConnectionPool;
 
 import org.apache.commons.lang3.StringEscapeUtils;
 import org.knime.core.data.*;
@@ -67,7 +67,7 @@ public class FixColumnsNamesNodeModel extends AbstractNodeModel {
         //establish connection if names should be fixed by R
         RConnection connection = null;
         if(useMakeNames.getBooleanValue())
-        	connection = RUtils.createConnection();
+        	connection = RConnectionPool.getInstance().borrow();
 
         try {
 	        for (Attribute attribute : inputAttributes) {
@@ -96,14 +96,14 @@ public class FixColumnsNamesNodeModel extends AbstractNodeModel {
 	            }
 	        }
         } catch(Exception e) {
-        	if(connection != null) connection.close();
+        	RConnectionPool.getInstance().invalidate(connection);
         	throw e;
         }
         
         // close connection to R
         if(useMakeNames.getBooleanValue()) {
         	assert(connection != null);
-        	connection.close();
+        	RConnectionPool.getInstance().release(connection);
         }
         	
 